@@ -0,0 +1,81 @@
+package org.littlebasic.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The benchmark programs, loaded from {@code src/bench/resources/corpus}.
+ */
+public class Corpus {
+
+    /**
+     * Swallows the program output.
+     */
+    public static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    public static byte[] load(String name) throws IOException {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+            if (in == null) {
+                throw new IOException("No such benchmark program: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Generates a program of about the given number of lines, made of blocks
+     * of assignments with long arithmetic and logic expressions, IF/ELSE IF
+     * chains and loops, the constructs that make parser prediction expensive.
+     */
+    public static String generate(int lines) {
+        StringBuilder program = new StringBuilder();
+        int written = 0;
+        for (int block = 0; written < lines; block++) {
+            String v = "v" + toLetters(block);
+            program.append("LET ").append(v).append(" = (").append(block).append(" + 3) * 2 - 7 MOD 4 + 2 ^ 3 / 2\n")
+                    .append("s").append(toLetters(block)).append("$ = \"item \" + LEN(\"abc\") + ").append(v).append("\n")
+                    .append("IF ").append(v).append(" > 10 AND ").append(v).append(" <= 1000 OR NOT ").append(v).append(" = 5 THEN\n")
+                    .append("    ").append(v).append(" = ").append(v).append(" + 1\n")
+                    .append("ELSE IF ").append(v).append(" <> 3 AND (").append(v).append(" < 2 OR ").append(v).append(" >= 9) THEN\n")
+                    .append("    ").append(v).append(" = ").append(v).append(" - 1\n")
+                    .append("ELSE\n")
+                    .append("    PRINT ").append(v).append("\n")
+                    .append("END\n")
+                    .append("FOR i = 1 TO 3 STEP 1\n")
+                    .append("    WHILE ").append(v).append(" < i * 2 + 1\n")
+                    .append("        ").append(v).append(" = ").append(v).append(" + i\n")
+                    .append("    END\n")
+                    .append("NEXT\n");
+            written += 14;
+        }
+        return program.toString();
+    }
+
+    /**
+     * Identifiers are letters only.
+     */
+    private static String toLetters(int n) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return letters.toString();
+    }
+}
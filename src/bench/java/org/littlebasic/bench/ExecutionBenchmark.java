@@ -0,0 +1,111 @@
+package org.littlebasic.bench;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.littlebasic.CompiledProgram;
+import org.littlebasic.Interpreter;
+import org.littlebasic.LittleBasicVisitor;
+import org.littlebasic.Memory;
+import org.littlebasic.ProgramCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of the corpus: the visitor over a parse tree built up front, a
+ * program compiled up front to nodes and to bytecode, and the whole pipeline through
+ * {@link Interpreter#run} in every mode, with and without a warm cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutionBenchmark {
+
+    @Param({"for_sum.bas", "while_sum.bas", "string_concat.bas", "string_build.bas", "if_chain.bas", "nested_loops.bas", "for_continue.bas", "print_loop.bas", "guards.bas", "powers.bas", "decimals.bas", "arrays.bas", "string_arrays.bas"})
+    public String program;
+
+    private byte[] source;
+    private LittleBasicParser.ProgContext tree;
+    private CompiledProgram compiled;
+    private CompiledProgram bytecode;
+    private ProgramCache cache;
+
+    @Setup
+    public void setup() throws IOException {
+        source = Corpus.load(program);
+        LittleBasicLexer lexer = new LittleBasicLexer(new ANTLRInputStream(new ByteArrayInputStream(source)));
+        tree = new LittleBasicParser(new CommonTokenStream(lexer)).prog();
+        cache = new ProgramCache();
+        compiled = interpreter(cache).compile(new ByteArrayInputStream(source));
+        Interpreter interpreter = interpreter(cache);
+        interpreter.setMode(Interpreter.Mode.BYTECODE);
+        bytecode = interpreter.compile(new ByteArrayInputStream(source));
+    }
+
+    @Benchmark
+    public Memory visit() {
+        Memory memory = new Memory();
+        PrintStream out = new PrintStream(Corpus.DISCARD);
+        new LittleBasicVisitor(memory, new ByteArrayInputStream(new byte[0]), out, out).visit(tree);
+        return memory;
+    }
+
+    @Benchmark
+    public Memory execute() {
+        return compiled.run(new ByteArrayInputStream(new byte[0]), Corpus.DISCARD);
+    }
+
+    @Benchmark
+    public Memory executeBytecode() {
+        return bytecode.run(new ByteArrayInputStream(new byte[0]), Corpus.DISCARD);
+    }
+
+    @Benchmark
+    public Memory runCompiled() throws IOException {
+        return run(Interpreter.Mode.COMPILED, new ProgramCache());
+    }
+
+    @Benchmark
+    public Memory runCached() throws IOException {
+        return run(Interpreter.Mode.COMPILED, cache);
+    }
+
+    @Benchmark
+    public Memory runBytecode() throws IOException {
+        return run(Interpreter.Mode.BYTECODE, new ProgramCache());
+    }
+
+    @Benchmark
+    public Memory runVisitor() throws IOException {
+        return run(Interpreter.Mode.VISITOR, cache);
+    }
+
+    private static Interpreter interpreter(ProgramCache cache) {
+        return new Interpreter(new ByteArrayInputStream(new byte[0]), Corpus.DISCARD, Corpus.DISCARD, cache);
+    }
+
+    private Memory run(Interpreter.Mode mode, ProgramCache cache) throws IOException {
+        Interpreter interpreter = interpreter(cache);
+        interpreter.setMode(mode);
+        interpreter.run(new ByteArrayInputStream(source));
+        return interpreter.getMemory();
+    }
+}
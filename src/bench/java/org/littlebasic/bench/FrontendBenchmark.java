@@ -0,0 +1,67 @@
+package org.littlebasic.bench;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing and parsing of the corpus, each stage on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontendBenchmark {
+
+    @Param({"for_sum.bas", "while_sum.bas", "string_concat.bas", "if_chain.bas", "nested_loops.bas", "for_continue.bas", "print_loop.bas"})
+    public String program;
+
+    private String source;
+    private List<? extends Token> tokens;
+
+    @Setup
+    public void setup() throws IOException {
+        source = new String(Corpus.load(program), StandardCharsets.UTF_8);
+        tokens = new LittleBasicLexer(new ANTLRInputStream(source)).getAllTokens();
+    }
+
+    @Benchmark
+    public int lex() {
+        LittleBasicLexer lexer = new LittleBasicLexer(new ANTLRInputStream(source));
+        int count = 0;
+        while (lexer.nextToken().getType() != Token.EOF) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public LittleBasicParser.ProgContext parse() {
+        LittleBasicParser parser = new LittleBasicParser(new CommonTokenStream(new ListTokenSource(tokens)));
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        return parser.prog();
+    }
+}
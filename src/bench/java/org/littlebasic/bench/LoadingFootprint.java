@@ -0,0 +1,101 @@
+package org.littlebasic.bench;
+
+import org.littlebasic.Interpreter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Time, peak heap and peak resident set size of running a large generated
+ * straight-line program in one mode, read through a stream like the command
+ * line used to or from a memory-mapped file like it does now. Not a JMH
+ * benchmark, run it once per way of loading in a fresh JVM, e.g.:
+ *
+ * <pre>
+ * java -Xmx4g -cp target/benchmarks.jar org.littlebasic.bench.LoadingFootprint stream STREAMING 200
+ * java -Xmx4g -cp target/benchmarks.jar org.littlebasic.bench.LoadingFootprint mapped STREAMING 200
+ * </pre>
+ *
+ * The resident set size is read from /proc, so it's only reported on Linux.
+ */
+public class LoadingFootprint {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 || !(args[0].equals("stream") || args[0].equals("mapped"))) {
+            System.out.println("Usage: LoadingFootprint stream|mapped <mode> <megabytes>");
+            System.exit(-1);
+        }
+        Interpreter.Mode mode = Interpreter.Mode.valueOf(args[1]);
+        File program = generate(Long.parseLong(args[2]) * 1024 * 1024);
+        try {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            long start = System.nanoTime();
+            Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                    Corpus.DISCARD, System.err);
+            interpreter.setMode(mode);
+            if (args[0].equals("mapped")) {
+                interpreter.run(program.toPath());
+            } else {
+                try (InputStream in = new FileInputStream(program)) {
+                    interpreter.run(in);
+                }
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            System.out.printf("%s %s: %d MB program, %d ms, peak heap %d MB, peak RSS %s%n",
+                    args[0], mode, program.length() / (1024 * 1024), elapsed, peak / (1024 * 1024), peakRss());
+        } finally {
+            program.delete();
+        }
+    }
+
+    private static String peakRss() throws IOException {
+        File status = new File("/proc/self/status");
+        if (status.exists()) {
+            for (String line : Files.readAllLines(Paths.get(status.getPath()), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmHWM:")) {
+                    return line.substring("VmHWM:".length()).trim();
+                }
+            }
+        }
+        return "unknown";
+    }
+
+    private static File generate(long bytes) throws IOException {
+        File file = File.createTempFile("loading", ".bas");
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            long written = 0;
+            for (int i = 0; written < bytes; i++) {
+                String line = i % 4 == 3
+                        ? "PRINT total + \" items\"\n"
+                        : "LET total = total + " + i + " * 2 - " + (i % 7) + "\n";
+                if (i == 0) {
+                    line = "total = 0\n";
+                }
+                out.write(line);
+                written += line.length();
+            }
+        }
+        return file;
+    }
+}
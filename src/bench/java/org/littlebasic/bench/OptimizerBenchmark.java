@@ -0,0 +1,68 @@
+package org.littlebasic.bench;
+
+import org.littlebasic.CompiledProgram;
+import org.littlebasic.Interpreter;
+import org.littlebasic.Memory;
+import org.littlebasic.ProgramCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of programs compiled to nodes without optimizations, with each
+ * of {@link Interpreter.Optimization} alone, and with all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerBenchmark {
+
+    @Param({"invariants.bas", "for_sum.bas", "if_chain.bas", "nested_loops.bas"})
+    public String program;
+
+    @Param({"NONE", "FOLD_CONSTANTS", "HOIST_INVARIANTS", "PRUNE_BRANCHES", "ALL"})
+    public String optimizations;
+
+    private CompiledProgram compiled;
+
+    @Setup
+    public void setup() throws IOException {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                Corpus.DISCARD, Corpus.DISCARD, new ProgramCache());
+        interpreter.setOptimizations(optimizations());
+        compiled = interpreter.compile(new ByteArrayInputStream(Corpus.load(program)));
+    }
+
+    private Set<Interpreter.Optimization> optimizations() {
+        switch (optimizations) {
+            case "NONE":
+                return EnumSet.noneOf(Interpreter.Optimization.class);
+            case "ALL":
+                return EnumSet.allOf(Interpreter.Optimization.class);
+            default:
+                return EnumSet.of(Interpreter.Optimization.valueOf(optimizations));
+        }
+    }
+
+    @Benchmark
+    public Memory execute() {
+        return compiled.run(new ByteArrayInputStream(new byte[0]), Corpus.DISCARD);
+    }
+}
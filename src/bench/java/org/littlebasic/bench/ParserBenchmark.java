@@ -0,0 +1,82 @@
+package org.littlebasic.bench;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of large generated programs (see {@link Corpus#generate(int)})
+ * with full LL prediction and with SLL falling back to LL, the way
+ * the interpreter parses. With {@code coldDfa} the shared prediction
+ * cache is dropped before every parse, which is what the first program
+ * after startup pays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"2000", "10000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean coldDfa;
+
+    private List<? extends Token> tokens;
+
+    @Setup
+    public void setup() {
+        tokens = new LittleBasicLexer(new ANTLRInputStream(Corpus.generate(lines))).getAllTokens();
+    }
+
+    private LittleBasicParser parser(PredictionMode mode) {
+        LittleBasicParser parser = new LittleBasicParser(new CommonTokenStream(new ListTokenSource(tokens)));
+        if (coldDfa) {
+            parser.getInterpreter().clearDFA();
+        }
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(mode);
+        return parser;
+    }
+
+    @Benchmark
+    public LittleBasicParser.ProgContext fullLL() {
+        return parser(PredictionMode.LL).prog();
+    }
+
+    @Benchmark
+    public LittleBasicParser.ProgContext sllThenLL() {
+        LittleBasicParser parser = parser(PredictionMode.SLL);
+        try {
+            return parser.prog();
+        } catch (ParseCancellationException e) {
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.prog();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.littlebasic.bench;
+
+import org.littlebasic.CompiledProgram;
+import org.littlebasic.Interpreter;
+import org.littlebasic.Memory;
+import org.littlebasic.ProgramCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Print-heavy programs writing to the null device, so every flush is a
+ * real write system call: buffered output against flushing every line.
+ * {@code autoflushStream} is how output was written before, through a
+ * PrintStream with autoflush on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrintBenchmark {
+
+    @Param({"print_loop.bas"})
+    public String program;
+
+    private CompiledProgram compiled;
+    private OutputStream devNull;
+
+    @Setup
+    public void setup() throws IOException {
+        compiled = new Interpreter(new ByteArrayInputStream(new byte[0]), Corpus.DISCARD, Corpus.DISCARD,
+                new ProgramCache()).compile(new ByteArrayInputStream(Corpus.load(program)));
+        devNull = new FileOutputStream(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        devNull.close();
+    }
+
+    private Memory run(OutputStream out, Interpreter.Flush flush) {
+        Memory memory = compiled.newMemory();
+        compiled.run(memory, new ByteArrayInputStream(new byte[0]), out, flush);
+        return memory;
+    }
+
+    @Benchmark
+    public Memory buffered() {
+        return run(devNull, Interpreter.Flush.BUFFERED);
+    }
+
+    @Benchmark
+    public Memory lineFlush() {
+        return run(devNull, Interpreter.Flush.LINE);
+    }
+
+    @Benchmark
+    public Memory autoflushStream() {
+        return run(new PrintStream(devNull, true), Interpreter.Flush.LINE);
+    }
+}
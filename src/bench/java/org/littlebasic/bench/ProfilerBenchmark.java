@@ -0,0 +1,56 @@
+package org.littlebasic.bench;
+
+import org.littlebasic.CompiledProgram;
+import org.littlebasic.Interpreter;
+import org.littlebasic.Memory;
+import org.littlebasic.ProgramCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of programs compiled with and without profiling. Without, it
+ * must match {@link ExecutionBenchmark#execute}: the profiler costs nothing
+ * when it's off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfilerBenchmark {
+
+    @Param({"for_sum.bas", "if_chain.bas", "string_concat.bas"})
+    public String program;
+
+    @Param({"false", "true"})
+    public boolean profiling;
+
+    private CompiledProgram compiled;
+
+    @Setup
+    public void setup() throws IOException {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                Corpus.DISCARD, Corpus.DISCARD, new ProgramCache());
+        interpreter.setProfiling(profiling);
+        compiled = interpreter.compile(new ByteArrayInputStream(Corpus.load(program)));
+    }
+
+    @Benchmark
+    public Memory execute() {
+        return compiled.run(new ByteArrayInputStream(new byte[0]), Corpus.DISCARD);
+    }
+}
@@ -0,0 +1,79 @@
+package org.littlebasic.bench;
+
+import org.littlebasic.Interpreter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Peak heap of running a large generated straight-line program (LET and
+ * PRINT only) in one mode. Not a JMH benchmark, run it once per mode in a
+ * fresh JVM, e.g. with a fixed heap so the collector behaves the same:
+ *
+ * <pre>
+ * java -Xmx2g -cp target/benchmarks.jar org.littlebasic.bench.StreamingFootprint STREAMING 100
+ * java -Xmx2g -cp target/benchmarks.jar org.littlebasic.bench.StreamingFootprint COMPILED 100
+ * </pre>
+ */
+public class StreamingFootprint {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: StreamingFootprint <mode> <megabytes>");
+            System.exit(-1);
+        }
+        Interpreter.Mode mode = Interpreter.Mode.valueOf(args[0]);
+        File program = generate(Long.parseLong(args[1]) * 1024 * 1024);
+        try {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            long start = System.nanoTime();
+            Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                    Corpus.DISCARD, System.err);
+            interpreter.setMode(mode);
+            try (InputStream in = new FileInputStream(program)) {
+                interpreter.run(in);
+            }
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            System.out.printf("%s: %d MB program, peak heap %d MB, %d ms%n",
+                    mode, program.length() / (1024 * 1024), peak / (1024 * 1024), elapsed);
+        } finally {
+            program.delete();
+        }
+    }
+
+    private static File generate(long bytes) throws IOException {
+        File file = File.createTempFile("streaming", ".bas");
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            long written = 0;
+            for (int i = 0; written < bytes; i++) {
+                String line = i % 4 == 3
+                        ? "PRINT total + \" items\"\n"
+                        : "LET total = total + " + i + " * 2 - " + (i % 7) + "\n";
+                if (i == 0) {
+                    line = "total = 0\n";
+                }
+                out.write(line);
+                written += line.length();
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,56 @@
+package org.littlebasic.bench;
+
+import org.littlebasic.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single {@link Value} operations. Run with {@code -prof gc} to see the
+ * allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueBenchmark {
+
+    public Value small = new Value(42);
+    public Value large = new Value(1_000_000);
+    public Value other = new Value(7);
+
+    @Benchmark
+    public Value addSmall() {
+        return small.add(other);
+    }
+
+    @Benchmark
+    public Value addLarge() {
+        return large.add(other);
+    }
+
+    @Benchmark
+    public Value mul() {
+        return large.mul(other);
+    }
+
+    @Benchmark
+    public Value lt() {
+        return large.lt(other);
+    }
+
+    @Benchmark
+    public Value eq() {
+        return large.eq(other);
+    }
+}
@@ -0,0 +1,15 @@
+REM Fills an array of a million integers, then sums it and scans it for its largest element
+DIM a(999999)
+FOR i = 0 TO 999999
+    a(i) = i MOD 1000 * 3 - 7
+NEXT
+sum = 0
+max = a(0)
+FOR i = 0 TO 999999
+    sum = sum + a(i)
+    IF a(i) > max THEN
+        max = a(i)
+    END
+NEXT
+PRINT sum
+PRINT max
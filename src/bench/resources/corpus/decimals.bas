@@ -0,0 +1,15 @@
+REM A ledger of prices in exact decimals, and a factorial that outgrows the longs
+total = 0
+tax = 0
+FOR i = 1 TO 20000
+    price = 19.99 + i MOD 7 * 0.25
+    total = total + price * 3
+    tax = tax + price * 0.08
+NEXT
+PRINT total
+PRINT tax
+f = 1
+FOR i = 1 TO 30
+    f = f * i
+NEXT
+PRINT f
@@ -0,0 +1,9 @@
+REM FOR loop that skips most iterations with CONTINUE
+count = 0
+FOR i = 1 TO 100000
+    IF i MOD 10 <> 0 THEN
+        CONTINUE
+    END
+    count = count + 1
+NEXT
+PRINT count
@@ -0,0 +1,6 @@
+REM Tight FOR loop with arithmetic in the body
+sum = 0
+FOR i = 1 TO 100000
+    sum = sum + i * 2 - 1
+NEXT
+PRINT sum
@@ -0,0 +1,17 @@
+REM IF and WHILE guards whose right side is expensive and rarely needed
+s = "abcdefghijklmnopqrstuvwxyz"
+hits = 0
+FOR i = 1 TO 100000
+    IF i MOD 16 = 0 AND LEN(s + i + s) > 50 THEN
+        hits = hits + 1
+    END
+    IF i MOD 4 > 0 OR LEN(s + s) = 0 THEN
+        hits = hits + 1
+    END
+NEXT
+n = 0
+WHILE n < 100000 AND LEN(s + n) > 0
+    n = n + 1
+END
+PRINT hits
+PRINT n
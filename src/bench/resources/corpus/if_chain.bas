@@ -0,0 +1,27 @@
+REM Classifies numbers through nested IF/ELSE IF chains
+small = 0
+medium = 0
+large = 0
+other = 0
+FOR i = 1 TO 20000
+    r = i MOD 100
+    IF r < 10 THEN
+        small = small + 1
+    ELSE IF r < 50 THEN
+        IF r MOD 2 = 0 THEN
+            medium = medium + 2
+        ELSE IF r MOD 3 = 0 THEN
+            medium = medium + 3
+        ELSE
+            medium = medium + 1
+        END
+    ELSE IF r < 90 THEN
+        large = large + 1
+    ELSE
+        other = other + 1
+    END
+NEXT
+PRINT small
+PRINT medium
+PRINT large
+PRINT other
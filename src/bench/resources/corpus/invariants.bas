@@ -0,0 +1,16 @@
+REM Nested loops whose bodies are full of constant and loop invariant expressions
+width = 640
+height = 480
+title = "little basic"
+total = 0
+FOR y = 1 TO 200
+    FOR x = 1 TO 200
+        total = total + x + width * height / 4 + LEN(title) * 2 ^ 4 - y * width
+        IF 0 THEN
+            PRINT total
+        ELSE IF 1 = 2 THEN
+            total = 0
+        END
+    NEXT
+NEXT
+PRINT total
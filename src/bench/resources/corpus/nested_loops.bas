@@ -0,0 +1,20 @@
+REM Deeply nested WHILE and REPEAT loops
+count = 0
+a = 0
+WHILE a < 20
+    b = 0
+    REPEAT
+        c = 0
+        WHILE c < 10
+            d = 0
+            REPEAT
+                count = count + 1
+                d = d + 1
+            UNTIL d >= 5
+            c = c + 1
+        END
+        b = b + 1
+    UNTIL b = 10
+    a = a + 1
+END
+PRINT count
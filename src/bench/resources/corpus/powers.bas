@@ -0,0 +1,12 @@
+REM Squares, powers of two and general powers in a tight loop
+sum = 0
+FOR i = 1 TO 100000
+    r = i MOD 1000
+    e = i MOD 20
+    a = r ^ 2
+    b = 2 ^ e
+    c = r ^ 5
+    d = 3 ^ e
+    sum = sum + a + b - c + d
+NEXT
+PRINT sum
@@ -0,0 +1,5 @@
+REM Prints a number and a line of text on every iteration
+FOR i = 1 TO 20000
+    PRINT i * 37
+    PRINT "line " + i
+NEXT
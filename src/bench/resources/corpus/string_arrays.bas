@@ -0,0 +1,27 @@
+REM Fills an array of a million strings from ten words, then counts one word and the characters of all
+DIM w$(9)
+w(0) = "zero"
+w(1) = "one"
+w(2) = "two"
+w(3) = "three"
+w(4) = "four"
+w(5) = "five"
+w(6) = "six"
+w(7) = "seven"
+w(8) = "eight"
+w(9) = "nine"
+DIM s$(999999)
+FOR i = 0 TO 999999
+    s(i) = w(i MOD 10)
+NEXT
+sevens = 0
+chars = 0
+FOR i = 0 TO 999999
+    word = s(i)
+    IF word = "seven" THEN
+        sevens = sevens + 1
+    END
+    chars = chars + LEN(word)
+NEXT
+PRINT sevens
+PRINT chars
@@ -0,0 +1,6 @@
+REM Appends one character at a time to a long string
+s = ""
+FOR i = 1 TO 20000
+    s = s + "x"
+NEXT
+PRINT LEN(s)
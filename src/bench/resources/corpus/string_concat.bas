@@ -0,0 +1,12 @@
+REM Builds a report line by line with string concatenation
+report = ""
+FOR i = 1 TO 2000
+    line = "row " + i + ": "
+    IF i MOD 3 = 0 THEN
+        line = line + "fizz"
+    ELSE
+        line = line + "-"
+    END
+    report = report + line + ";"
+NEXT
+PRINT LEN(report)
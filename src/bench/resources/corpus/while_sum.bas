@@ -0,0 +1,10 @@
+REM WHILE loop with a relational condition and MOD
+i = 0
+odd = 0
+WHILE i < 100000
+    IF i MOD 2 = 1 THEN
+        odd = odd + 1
+    END
+    i = i + 1
+END
+PRINT odd
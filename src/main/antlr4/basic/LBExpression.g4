@@ -12,6 +12,7 @@ expression
     : string                                    # StringExpr
     | number                                    # NumberExpr
     | func                                      # FuncExpr
+    | ID LPAREN expression RPAREN                # ElementExpr
     | id                                        # IdExpr
     | (LPAREN expression RPAREN)                # ParenExpr
     | expression op=(MUL|DIV|MOD) expression    # MulDivExpr
@@ -49,6 +49,7 @@ NEXT    : 'NEXT' | 'next' ;
 TO      : 'TO' | 'to' ;
 CONTINUE    : 'CONTINUE' | 'continue' ;
 EXIT    : 'EXIT' | 'EXIT' ;
+DIM     : 'DIM' | 'dim' ;
 
 // comments
 COMMENT : REM ~[\r\n]* ;
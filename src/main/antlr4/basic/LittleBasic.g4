@@ -5,6 +5,7 @@ prog: block EOF;
 
 statement
     : letstmt
+    | dimstmt
     | printstmt
     | inputstmt
     | ifstmt
@@ -20,7 +21,7 @@ block
     ;
 
 letstmt
-    : LET? vardecl EQ expression
+    : LET? vardecl subscript? EQ expression
     ;
 
 vardecl
@@ -35,6 +36,14 @@ varsuffix
     : DOLLAR
     ;
 
+dimstmt
+    : DIM vardecl LPAREN expression RPAREN
+    ;
+
+subscript
+    : LPAREN expression RPAREN
+    ;
+
 printstmt
     : PRINT expression;
 
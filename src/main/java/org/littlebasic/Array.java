@@ -0,0 +1,221 @@
+package org.littlebasic;
+
+/**
+ * An array created by DIM. {@code DIM a(10)} makes the elements a(0) to
+ * a(10), all 0, {@code DIM a$(10)} makes strings, all empty. Every access
+ * checks its index, and an element only takes what its kind needs.
+ *
+ * The numbers are a {@code long[]}, read and written without values. An
+ * element that gets a number too wide for a long, or NaN, keeps its value
+ * in a second array, created the first time, and raises a
+ * {@link Value.Overflow} when read as a long, same as a number variable.
+ * The strings keep the values they were stored as, empty ones as null,
+ * so that reading an element hands out the same value again instead of
+ * wrapping its string in a new one. What an element change adds or frees is told to
+ * the memory the array is dimensioned in, which keeps a running count.
+ */
+final class Array {
+
+    /**
+     * Arrays are limited to this many elements, so that a single DIM can't
+     * take all the memory.
+     */
+    static final int MAX_LENGTH = 100_000_000;
+
+    private static final Value EMPTY = new Value("");
+
+    private final String name;
+    private final int length;
+    private final long[] longs;
+    private Value[] wide;
+    private int wideCount;
+    private final Value[] strings;
+    /** What the non-empty strings take, as estimated by {@link Value#estimatedBytes}. */
+    private long stringBytes;
+    /** The memory the array is dimensioned in, set by {@link Memory#dim}. */
+    Memory memory;
+
+    Array(String name, int length, boolean strings) {
+        this.name = name;
+        this.length = length;
+        this.longs = strings ? null : new long[length];
+        this.strings = strings ? new Value[length] : null;
+    }
+
+    /**
+     * The number of elements of {@code DIM name(size)}.
+     *
+     * @throws TypeException if the size isn't a number from 0 to {@link #MAX_LENGTH} - 1
+     */
+    static int length(String name, Value size) {
+        if (!size.isNumber()) {
+            size.checkedNumber();
+        }
+        if (!size.isLong() || size.internalNumber() < 0 || size.internalNumber() >= MAX_LENGTH) {
+            throw new TypeException("Couldn't dimension " + name + "(" + size.text() + "). The size must be from 0 to "
+                    + (MAX_LENGTH - 1));
+        }
+        return (int) size.internalNumber() + 1;
+    }
+
+    /**
+     * About how many bytes an array of the given length takes when it's created.
+     */
+    static long estimatedBytes(int length) {
+        return 16 + 8L * length;
+    }
+
+    static TypeException notDimensioned(String name) {
+        return new TypeException("Array " + name + "() is not dimensioned");
+    }
+
+    boolean isStrings() {
+        return strings != null;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Checks an index.
+     *
+     * @throws TypeException if it's out of bounds
+     */
+    int index(long index) {
+        if (index < 0 || index >= length) {
+            throw outOfBounds(Long.toString(index));
+        }
+        return (int) index;
+    }
+
+    /**
+     * Checks an index that isn't known to be a long.
+     *
+     * @throws TypeException if it isn't a number or it's out of bounds
+     */
+    int index(Value index) {
+        if (index.isLong()) {
+            return index(index.internalNumber());
+        }
+        if (!index.isNumber()) {
+            index.checkedNumber();
+        }
+        throw outOfBounds(index.text());
+    }
+
+    private TypeException outOfBounds(String index) {
+        return new TypeException("Index " + index + " is out of bounds for " + name + "(" + (length - 1) + ")");
+    }
+
+    /**
+     * The number at a checked index.
+     *
+     * @throws Value.Overflow if it doesn't fit in a long
+     */
+    long number(int index) {
+        if (longs == null) {
+            throw notNumbers();
+        }
+        if (wide != null && wide[index] != null) {
+            throw Value.OVERFLOW;
+        }
+        return longs[index];
+    }
+
+    Value get(int index) {
+        if (strings != null) {
+            Value string = strings[index];
+            return string != null ? string : EMPTY;
+        }
+        if (wide != null && wide[index] != null) {
+            return wide[index];
+        }
+        return Value.of(longs[index]);
+    }
+
+    void set(int index, long number) {
+        if (longs == null) {
+            throw notStrings(Long.toString(number));
+        }
+        longs[index] = number;
+        if (wide != null && wide[index] != null) {
+            wide[index] = null;
+            wideCount--;
+            grew(-80);
+        }
+    }
+
+    /**
+     * @throws TypeException if the value isn't of the kind of the array
+     */
+    void set(int index, Value value) {
+        if (strings != null) {
+            if (!value.isString()) {
+                throw notStrings(value.text());
+            }
+            Value old = strings[index];
+            long bytes = 0;
+            if (old != null) {
+                bytes -= old.estimatedBytes();
+            }
+            if (value.stringLength() != 0) {
+                strings[index] = value;
+                bytes += value.estimatedBytes();
+            } else {
+                strings[index] = null;
+            }
+            stringBytes += bytes;
+            grew(bytes);
+            return;
+        }
+        if (value.isLong()) {
+            set(index, value.internalNumber());
+            return;
+        }
+        if (!value.isNumber() && !value.isNaN()) {
+            throw notNumbers(value.internalString());
+        }
+        if (wide == null) {
+            wide = new Value[length];
+            grew(estimatedBytes(length));
+        }
+        if (wide[index] == null) {
+            wideCount++;
+            grew(80);
+        }
+        wide[index] = value;
+    }
+
+    private void grew(long bytes) {
+        if (memory != null) {
+            memory.grew(bytes);
+        }
+    }
+
+    private TypeException notNumbers() {
+        return new TypeException("Couldn't evaluate numeric expression. " + name + "() holds strings");
+    }
+
+    private TypeException notNumbers(String value) {
+        return new TypeException("Couldn't assign to " + name + "(). Value \"" + value + "\" is not a number");
+    }
+
+    private TypeException notStrings(String value) {
+        return new TypeException("Couldn't assign to " + name + "(). Value " + value + " is not a string");
+    }
+
+    /**
+     * About how many bytes the array takes on the heap, its strings and wide numbers included.
+     */
+    long estimatedBytes() {
+        long bytes = estimatedBytes(length);
+        if (strings != null) {
+            return bytes + stringBytes;
+        }
+        if (wide != null) {
+            bytes += estimatedBytes(length) + 80L * wideCount;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,209 @@
+package org.littlebasic;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs many programs in one JVM on a pool of workers, for the batch mode of
+ * the command line. All of them share one {@link Interpreter}, so its cache
+ * and the warm parser are shared too.
+ *
+ * A program {@code a/b.bas} writes its output to {@code a/b.out} and its
+ * errors to {@code a/b.err} under the output directory, and reads INPUT
+ * from {@code b.in} next to it if there is one. A program fails if it
+ * writes to stderr, i.e. it can't be parsed or raises an error.
+ */
+final class BatchRunner {
+
+    /**
+     * How one program went.
+     */
+    static final class Result {
+        final Path program;
+        final long nanos;
+        final boolean failed;
+
+        Result(Path program, long nanos, boolean failed) {
+            this.program = program;
+            this.nanos = nanos;
+            this.failed = failed;
+        }
+    }
+
+    private final Interpreter interpreter;
+    private final int workers;
+    private final Path output;
+
+    BatchRunner(Interpreter interpreter, int workers, Path output) {
+        this.interpreter = interpreter;
+        this.workers = workers;
+        this.output = output;
+    }
+
+    /**
+     * The programs to run: every .bas file under the directory, or every file
+     * listed in the given text file, one per line, relative to the list.
+     * Paths are relative to the returned root.
+     */
+    static List<Path> programs(Path batch) throws IOException {
+        if (Files.isDirectory(batch)) {
+            try (Stream<Path> files = Files.walk(batch)) {
+                return files.filter(file -> file.toString().endsWith(".bas") && Files.isRegularFile(file))
+                        .map(batch::relativize)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        List<Path> programs = new ArrayList<>();
+        for (String line : Files.readAllLines(batch, StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) {
+                programs.add(batch.toAbsolutePath().getParent().resolve(line.trim()).normalize());
+            }
+        }
+        return programs;
+    }
+
+    /**
+     * The directory the programs returned by {@link #programs(Path)} are relative to.
+     */
+    static Path root(Path batch) {
+        return Files.isDirectory(batch) ? batch : batch.toAbsolutePath().getParent();
+    }
+
+    /**
+     * Runs the programs, which are relative to the root, and returns how each went, in the same order.
+     */
+    List<Result> run(Path root, List<Path> programs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path program : programs) {
+                futures.add(pool.submit(() -> run(root, program)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result run(Path root, Path program) throws IOException {
+        Path relative = program.isAbsolute() ? root.relativize(program) : program;
+        if (relative.startsWith("..")) {
+            // listed from outside the root, mirror the whole path
+            relative = program.getRoot().relativize(program);
+        }
+        Path file = root.resolve(program);
+        String base = relative.toString().endsWith(".bas")
+                ? relative.toString().substring(0, relative.toString().length() - 4)
+                : relative.toString();
+        Path out = output.resolve(base + ".out");
+        Path err = output.resolve(base + ".err");
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        Path in = file.resolveSibling(file.getFileName().toString().replaceFirst("\\.bas$", "") + ".in");
+
+        long start = System.nanoTime();
+        boolean failed;
+        try (OutputStream stdout = Files.newOutputStream(out);
+             CountingStream stderr = new CountingStream(Files.newOutputStream(err));
+             InputStream stdin = Files.isRegularFile(in) && !in.equals(file)
+                     ? Files.newInputStream(in)
+                     : new ByteArrayInputStream(new byte[0])) {
+            try {
+                interpreter.run(null, file, stdin, stdout, stderr);
+            } catch (IOException | RuntimeException e) {
+                new PrintStream(stderr, true).println("Error running program: " + e);
+            }
+            failed = stderr.count > 0;
+        }
+        return new Result(relative, System.nanoTime() - start, failed);
+    }
+
+    /**
+     * What the command line prints at the end of a batch.
+     */
+    static String summary(List<Result> results, long nanos, int workers) {
+        StringBuilder summary = new StringBuilder();
+        double seconds = nanos / 1e9;
+        List<Result> failed = results.stream().filter(result -> result.failed).collect(Collectors.toList());
+        summary.append(String.format(Locale.ROOT, "Ran %d programs in %.3f s (%.1f programs/s) on %d workers%n",
+                results.size(), seconds, seconds > 0 ? results.size() / seconds : 0, workers));
+        summary.append(String.format(Locale.ROOT, "Failed: %d%n", failed.size()));
+        for (Result result : failed) {
+            summary.append("  ").append(result.program).append(String.format("%n"));
+        }
+        if (results.isEmpty()) {
+            return summary.toString();
+        }
+        long[] times = new long[results.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = results.get(i).nanos;
+        }
+        Arrays.sort(times);
+        summary.append(String.format(Locale.ROOT,
+                "Time per program: min %.1f ms, median %.1f ms, p95 %.1f ms, max %.1f ms%n",
+                times[0] / 1e6, percentile(times, 50) / 1e6, percentile(times, 95) / 1e6,
+                times[times.length - 1] / 1e6));
+        List<Result> slowest = new ArrayList<>(results);
+        slowest.sort(Collections.reverseOrder(Comparator.comparingLong(result -> result.nanos)));
+        summary.append(String.format("Slowest:%n"));
+        for (Result result : slowest.subList(0, Math.min(5, slowest.size()))) {
+            summary.append(String.format(Locale.ROOT, "  %10.1f ms  %s%n", result.nanos / 1e6, result.program));
+        }
+        return summary.toString();
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Counts what goes through, to tell whether a program reported an error.
+     */
+    private static final class CountingStream extends FilterOutputStream {
+        long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.littlebasic;
+
+/**
+ * The {@link Limits} and the {@link Cancellation} of a single run. The
+ * executors count statements and loop iterations anyway and only call
+ * {@link #check} when a count passes its next threshold, so a run without
+ * a budget costs nothing but a comparison. Statement and iteration limits
+ * are exact; wall time and cancellation are looked at every
+ * {@link #CHECK_INTERVAL} statements or iterations. The memory limit is
+ * looked at after every statement, as a single statement can double the
+ * size of a string, and before every DIM, so that an array larger than
+ * the limit is never created. That only costs a comparison, as the
+ * {@link Memory} keeps a running count of its size once asked for it.
+ */
+final class Budget {
+
+    static final long CHECK_INTERVAL = 1024;
+
+    private final Limits limits;
+    private final Cancellation cancellation;
+    private final long deadline;
+    /** Checks left until the clock and the cancellation are looked at, with a check every statement. */
+    private long clock = CHECK_INTERVAL;
+    private final long interval;
+
+    private Budget(Limits limits, Cancellation cancellation) {
+        this.limits = limits;
+        this.cancellation = cancellation;
+        long wallTime = limits.getMaxWallTimeNanos();
+        this.deadline = System.nanoTime() + wallTime;
+        if (limits.getMaxMemoryBytes() != Long.MAX_VALUE) {
+            this.interval = 1;
+        } else if (cancellation != null || wallTime != Long.MAX_VALUE) {
+            this.interval = CHECK_INTERVAL;
+        } else {
+            this.interval = 0;
+        }
+    }
+
+    /**
+     * Starts the clock of a run, or returns null if it has nothing to check.
+     */
+    static Budget start(Limits limits, Cancellation cancellation) {
+        return limits.isUnlimited() && cancellation == null ? null : new Budget(limits, cancellation);
+    }
+
+    /**
+     * The statement count after which {@link #check} must be called again.
+     */
+    static long nextStatementCheck(Budget budget, long statements) {
+        return budget != null ? budget.next(statements, budget.limits.getMaxStatements()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * The iteration count after which {@link #check} must be called again.
+     */
+    static long nextIterationCheck(Budget budget, long iterations) {
+        return budget != null ? budget.next(iterations, budget.limits.getMaxIterations()) : Long.MAX_VALUE;
+    }
+
+    private long next(long count, long limit) {
+        return interval != 0 ? Math.min(count + interval - 1, limit) : limit;
+    }
+
+    /**
+     * @throws ExecutionLimitException located at the given position if the run must stop
+     */
+    void check(long statements, long iterations, Memory memory, int line, int posInLine) {
+        if (interval != 1 || --clock == 0) {
+            clock = CHECK_INTERVAL;
+            checkClock(line, posInLine);
+        }
+        if (statements > limits.getMaxStatements()) {
+            throw new ExecutionLimitException(ExecutionLimitException.Limit.STATEMENTS,
+                    "More than " + limits.getMaxStatements() + " statements executed", line, posInLine);
+        }
+        if (iterations > limits.getMaxIterations()) {
+            throw new ExecutionLimitException(ExecutionLimitException.Limit.ITERATIONS,
+                    "More than " + limits.getMaxIterations() + " loop iterations", line, posInLine);
+        }
+        checkMemory(memory, 0, line, posInLine);
+    }
+
+    private void checkClock(int line, int posInLine) {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new ExecutionLimitException(ExecutionLimitException.Limit.CANCELLED,
+                    "Run cancelled", line, posInLine);
+        }
+        if (limits.getMaxWallTimeNanos() != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw new ExecutionLimitException(ExecutionLimitException.Limit.WALL_TIME,
+                    "Ran longer than " + limits.getMaxWallTimeNanos() / 1000000 + " ms", line, posInLine);
+        }
+    }
+
+    /**
+     * @throws ExecutionLimitException located at the given position if the
+     *         memory would pass its limit with the given bytes more
+     */
+    void checkMemory(Memory memory, long more, int line, int posInLine) {
+        if (limits.getMaxMemoryBytes() != Long.MAX_VALUE
+                && memory.estimatedBytes() + more > limits.getMaxMemoryBytes()) {
+            throw new ExecutionLimitException(ExecutionLimitException.Limit.MEMORY,
+                    "Memory larger than " + limits.getMaxMemoryBytes() + " bytes", line, posInLine);
+        }
+    }
+}
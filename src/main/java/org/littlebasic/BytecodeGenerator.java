@@ -0,0 +1,1430 @@
+package org.littlebasic;
+
+import basic.LBExpressionParser;
+import basic.LittleBasicBaseVisitor;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.littlebasic.TypeInference.Type;
+
+/**
+ * Compiles a program into a JVM class extending {@link GeneratedProgram}, so
+ * HotSpot can JIT compile its loops like any Java code. Variables become
+ * locals of the generated method: the ones that only ever hold integers are
+ * {@code long}s and the rest are {@link Value}s (see {@link TypeInference}).
+ * String literals, and number literals that aren't longs, are {@link Value}s
+ * in static fields, so concatenations build ropes like in the other modes.
+ * Expressions on integers become {@code long} arithmetic and FOR, WHILE and
+ * REPEAT become JVM loops, with CONTINUE and EXIT as jumps.
+ *
+ * Arithmetic on longs is checked, unless the {@link Ranges} of its operands
+ * show that it always fits. When a number doesn't fit in a long, an
+ * {@link Value.Overflow} makes the statement start over with code working
+ * on values, emitted next to the one on longs. An integer variable then
+ * keeps its value in a second local, and a flag tells which one is set.
+ *
+ * Arrays stay in the memory and are reached by their slots through the
+ * helpers of {@link GeneratedProgram}, elements of integer arrays as longs.
+ *
+ * Runs the same as the other modes, with two exceptions: the program starts
+ * with empty variables whatever the memory holds, and the variables only
+ * reach the memory when the program ends or fails.
+ */
+final class BytecodeGenerator implements Opcodes {
+
+    private static final String CLASS_NAME = "littlebasic/generated/Program";
+    private static final String BASE = "org/littlebasic/GeneratedProgram";
+    private static final String VALUE = "org/littlebasic/Value";
+    private static final String VALUE_DESC = "L" + VALUE + ";";
+    private static final String STRING_DESC = "Ljava/lang/String;";
+    private static final String TYPE_EXCEPTION = "org/littlebasic/TypeException";
+    private static final String OVERFLOW = "org/littlebasic/Value$Overflow";
+    private static final String BINARY_DESC = "(" + VALUE_DESC + ")" + VALUE_DESC;
+
+    /**
+     * Where CONTINUE and EXIT jump to.
+     */
+    private static final class Loop {
+        final Label next;
+        final Label exit;
+
+        Loop(Label next, Label exit) {
+            this.next = next;
+            this.exit = exit;
+        }
+    }
+
+    private final Symbols symbols;
+    private final TypeInference types;
+    private final boolean shortCircuit;
+    private final boolean reduceStrength;
+    private final boolean doubles;
+    private final MethodNode mv;
+    private final ExpressionEmitter expressions = new ExpressionEmitter();
+    private final ValueEmitter values = new ValueEmitter();
+    private final Map<String, Integer> locals = new HashMap<>();
+    private final Map<String, Integer> assigned = new HashMap<>();
+    private final Map<String, Integer> wide = new HashMap<>();
+    private final Map<String, String> literals = new LinkedHashMap<>();
+    private final Map<String, String> numbers = new LinkedHashMap<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    private final Label programEnd = new Label();
+    private int nextLocal = 1;
+
+    private BytecodeGenerator(Symbols symbols, TypeInference types, Set<Interpreter.Optimization> optimizations,
+                              Interpreter.Fractions fractions) {
+        this.symbols = symbols;
+        this.types = types;
+        this.shortCircuit = optimizations.contains(Interpreter.Optimization.SHORT_CIRCUIT);
+        this.reduceStrength = optimizations.contains(Interpreter.Optimization.REDUCE_STRENGTH);
+        this.doubles = fractions == Interpreter.Fractions.DOUBLE;
+        this.mv = new MethodNode(ACC_PROTECTED, "execute", "()V", null, null);
+    }
+
+    /**
+     * Generates and loads the class of the program, whose variables must
+     * already have their slots in the given symbols and whose types are
+     * inferred. Of the optimizations, only short-circuiting and strength reduction
+     * apply. Returns null if the program is too large for a single JVM method.
+     */
+    static Class<? extends GeneratedProgram> generate(LittleBasicParser.ProgContext ctx, Symbols symbols,
+                                                      TypeInference types,
+                                                      Set<Interpreter.Optimization> optimizations,
+                                                      Interpreter.Fractions fractions) {
+        byte[] bytes;
+        try {
+            bytes = new BytecodeGenerator(symbols, types, optimizations, fractions).generateClass(ctx);
+        } catch (MethodTooLargeException e) {
+            return null;
+        }
+        return new Loader().define(CLASS_NAME.replace('/', '.'), bytes);
+    }
+
+    /**
+     * Every program gets a loader of its own, so its class goes away with it.
+     */
+    private static final class Loader extends ClassLoader {
+
+        Loader() {
+            super(GeneratedProgram.class.getClassLoader());
+        }
+
+        Class<? extends GeneratedProgram> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length).asSubclass(GeneratedProgram.class);
+        }
+    }
+
+    private byte[] generateClass(LittleBasicParser.ProgContext ctx) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected ClassLoader getClassLoader() {
+                return GeneratedProgram.class.getClassLoader();
+            }
+        };
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, null, BASE, null);
+
+        org.objectweb.asm.MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, BASE, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        generateExecute(ctx);
+        mv.accept(cw);
+        generateLiterals(cw);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * A static field for every string literal and every number literal that
+     * isn't a long, set once when the class loads.
+     */
+    private void generateLiterals(ClassWriter cw) {
+        if (literals.isEmpty() && numbers.isEmpty()) {
+            return;
+        }
+        org.objectweb.asm.MethodVisitor clinit = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        for (Map.Entry<String, String> literal : literals.entrySet()) {
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, literal.getValue(), VALUE_DESC, null, null).visitEnd();
+            clinit.visitLdcInsn(literal.getKey());
+            clinit.visitMethodInsn(INVOKESTATIC, BASE, "value", "(" + STRING_DESC + ")" + VALUE_DESC, false);
+            clinit.visitFieldInsn(PUTSTATIC, CLASS_NAME, literal.getValue(), VALUE_DESC);
+        }
+        for (Map.Entry<String, String> number : numbers.entrySet()) {
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, number.getValue(), VALUE_DESC, null, null).visitEnd();
+            clinit.visitLdcInsn(number.getKey());
+            clinit.visitInsn(doubles ? ICONST_1 : ICONST_0);
+            clinit.visitMethodInsn(INVOKESTATIC, BASE, "literal", "(" + STRING_DESC + "Z)" + VALUE_DESC, false);
+            clinit.visitFieldInsn(PUTSTATIC, CLASS_NAME, number.getValue(), VALUE_DESC);
+        }
+        clinit.visitInsn(RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+    }
+
+    private void generateExecute(LittleBasicParser.ProgContext ctx) {
+        mv.visitCode();
+        for (int slot = 0; slot < symbols.size(); slot++) {
+            if (!Symbols.isArray(symbols.name(slot))) {
+                declare(symbols.name(slot));
+            }
+        }
+
+        Label start = new Label();
+        Label handlers = new Label();
+        Label failed = new Label();
+        mv.visitLabel(start);
+        Deque<Runnable> locators = new ArrayDeque<>();
+        for (LittleBasicParser.StatementContext statement : ctx.block().statement()) {
+            Label from = new Label();
+            Label to = new Label();
+            mv.visitLabel(from);
+            int size = mv.instructions.size();
+            emitStatement(statement);
+            if (mv.instructions.size() > size) {
+                mv.visitLabel(to);
+                Label handler = new Label();
+                int line = statement.getStart().getLine();
+                int posInLine = statement.getStart().getCharPositionInLine();
+                locators.add(() -> {
+                    mv.visitLabel(handler);
+                    push(line);
+                    push(posInLine);
+                    mv.visitMethodInsn(INVOKESTATIC, BASE, "locate",
+                            "(L" + TYPE_EXCEPTION + ";II)L" + TYPE_EXCEPTION + ";", false);
+                    mv.visitInsn(ATHROW);
+                });
+                mv.visitTryCatchBlock(from, to, handler, TYPE_EXCEPTION);
+            }
+        }
+        mv.visitJumpInsn(GOTO, programEnd);
+        // type errors get the location of the top level statement, then fail the program
+        mv.visitLabel(handlers);
+        for (Runnable locator : locators) {
+            locator.run();
+        }
+        mv.visitLabel(programEnd);
+        storeVariables();
+        mv.visitInsn(RETURN);
+
+        mv.visitLabel(failed);
+        int exception = allocate(1);
+        mv.visitVarInsn(ASTORE, exception);
+        storeVariables();
+        mv.visitVarInsn(ALOAD, exception);
+        mv.visitInsn(ATHROW);
+        mv.visitTryCatchBlock(start, programEnd, failed, null);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // variables
+
+    private static boolean typed(Type type) {
+        return type == Type.NUMBER || type == Type.STRING;
+    }
+
+    private void declare(String name) {
+        Type type = types.typeOf(name);
+        int local = allocate(type == Type.NUMBER ? 2 : 1);
+        locals.put(name, local);
+        if (type == Type.NUMBER) {
+            mv.visitInsn(LCONST_0);
+            mv.visitVarInsn(LSTORE, local);
+            int wideLocal = allocate(1);
+            wide.put(name, wideLocal);
+            mv.visitInsn(ACONST_NULL);
+            mv.visitVarInsn(ASTORE, wideLocal);
+        } else {
+            mv.visitInsn(ACONST_NULL);
+            mv.visitVarInsn(ASTORE, local);
+        }
+        if (typed(type)) {
+            // 0 until assigned, then 1, or 2 for an integer too wide for the long
+            int flag = allocate(1);
+            assigned.put(name, flag);
+            mv.visitInsn(ICONST_0);
+            mv.visitVarInsn(ISTORE, flag);
+        }
+    }
+
+    /**
+     * Loads a variable, which has to be assigned already. An integer
+     * variable that doesn't hold a long raises an {@link Value.Overflow}.
+     */
+    private Type load(String name) {
+        Type type = types.typeOf(name);
+        Integer local = locals.get(name);
+        if (local == null) {
+            // only read, never assigned
+            mv.visitInsn(ACONST_NULL);
+            return Type.DYNAMIC;
+        }
+        if (type == Type.NUMBER) {
+            Label ok = new Label();
+            int flag = assigned.get(name);
+            mv.visitVarInsn(ILOAD, flag);
+            mv.visitInsn(ICONST_1);
+            mv.visitJumpInsn(IF_ICMPEQ, ok);
+            mv.visitVarInsn(ILOAD, flag);
+            mv.visitMethodInsn(INVOKESTATIC, BASE, "notLong", "(I)Ljava/lang/RuntimeException;", false);
+            mv.visitInsn(ATHROW);
+            mv.visitLabel(ok);
+        } else if (type == Type.STRING) {
+            Label ok = new Label();
+            mv.visitVarInsn(ILOAD, assigned.get(name));
+            mv.visitJumpInsn(IFNE, ok);
+            mv.visitMethodInsn(INVOKESTATIC, BASE, "unassigned", "()Ljava/lang/NullPointerException;", false);
+            mv.visitInsn(ATHROW);
+            mv.visitLabel(ok);
+        }
+        mv.visitVarInsn(type == Type.NUMBER ? LLOAD : ALOAD, local);
+        return type;
+    }
+
+    /**
+     * Loads a variable as a value, whatever its type.
+     */
+    private void loadValue(String name) {
+        if (types.typeOf(name) != Type.NUMBER || !locals.containsKey(name)) {
+            load(name);
+            return;
+        }
+        mv.visitVarInsn(ILOAD, assigned.get(name));
+        mv.visitVarInsn(LLOAD, locals.get(name));
+        mv.visitVarInsn(ALOAD, wide.get(name));
+        mv.visitMethodInsn(INVOKESTATIC, BASE, "variable", "(IJ" + VALUE_DESC + ")" + VALUE_DESC, false);
+    }
+
+    /**
+     * Stores the value on the stack, of the given type, into the variable.
+     */
+    private void store(String name, Type valueType) {
+        Type type = types.typeOf(name);
+        if (type == Type.NUMBER && valueType != Type.NUMBER) {
+            storeWide(name);
+            return;
+        }
+        if (type == Type.DYNAMIC) {
+            toValue(valueType);
+        }
+        mv.visitVarInsn(type == Type.NUMBER ? LSTORE : ASTORE, locals.get(name));
+        if (typed(type)) {
+            mv.visitInsn(ICONST_1);
+            mv.visitVarInsn(ISTORE, assigned.get(name));
+        }
+    }
+
+    /**
+     * Stores an integer value into an integer variable, as a long if it is one.
+     */
+    private void storeWide(String name) {
+        Label notLong = new Label();
+        Label end = new Label();
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isLong", "()Z", false);
+        mv.visitJumpInsn(IFEQ, notLong);
+        mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "internalNumber", "()J", false);
+        mv.visitVarInsn(LSTORE, locals.get(name));
+        mv.visitInsn(ICONST_1);
+        mv.visitVarInsn(ISTORE, assigned.get(name));
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(notLong);
+        mv.visitVarInsn(ASTORE, wide.get(name));
+        mv.visitInsn(ICONST_2);
+        mv.visitVarInsn(ISTORE, assigned.get(name));
+        mv.visitLabel(end);
+    }
+
+    private void storeVariables() {
+        for (Map.Entry<String, Integer> local : locals.entrySet()) {
+            String name = local.getKey();
+            Type type = types.typeOf(name);
+            Label skip = new Label();
+            if (typed(type)) {
+                mv.visitVarInsn(ILOAD, assigned.get(name));
+                mv.visitJumpInsn(IFEQ, skip);
+            }
+            mv.visitVarInsn(ALOAD, 0);
+            push(symbols.lookup(name));
+            loadValue(name);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "store", "(I" + VALUE_DESC + ")V", false);
+            mv.visitLabel(skip);
+        }
+    }
+
+    private int allocate(int size) {
+        int local = nextLocal;
+        nextLocal += size;
+        return local;
+    }
+
+    // statements
+
+    private void emitStatements(LittleBasicParser.BlockContext ctx) {
+        for (LittleBasicParser.StatementContext statement : ctx.statement()) {
+            emitStatement(statement);
+        }
+    }
+
+    private void emitStatement(LittleBasicParser.StatementContext ctx) {
+        if (ctx.letstmt() != null && ctx.letstmt().subscript() != null) {
+            emitStore(ctx.letstmt());
+        } else if (ctx.letstmt() != null) {
+            LittleBasicParser.LetstmtContext let = ctx.letstmt();
+            String name = let.vardecl().varname().ID().getText();
+            emitRetried(let.expression(),
+                    () -> store(name, emit(let.expression())),
+                    () -> {
+                        emitValue(let.expression());
+                        store(name, Type.DYNAMIC);
+                    });
+        } else if (ctx.dimstmt() != null) {
+            LittleBasicParser.DimstmtContext dim = ctx.dimstmt();
+            String name = dim.vardecl().varname().ID().getText();
+            mv.visitVarInsn(ALOAD, 0);
+            push(arraySlot(name));
+            mv.visitLdcInsn(name);
+            emitValue(dim.expression());
+            mv.visitInsn(dim.vardecl().varsuffix() != null ? ICONST_1 : ICONST_0);
+            mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "dim", "(I" + STRING_DESC + VALUE_DESC + "Z)V", false);
+        } else if (ctx.printstmt() != null) {
+            LittleBasicParser.ExpressionContext expression = ctx.printstmt().expression();
+            emitRetried(expression,
+                    () -> emitPrint(emit(expression)),
+                    () -> {
+                        emitValue(expression);
+                        emitPrint(Type.DYNAMIC);
+                    });
+        } else if (ctx.inputstmt() != null) {
+            LittleBasicParser.InputstmtContext input = ctx.inputstmt();
+            String prompt = input.string().getText();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitLdcInsn(prompt.substring(1, prompt.length() - 1));
+            push(ctx.getStart().getLine());
+            push(ctx.getStart().getCharPositionInLine());
+            mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "input", "(" + STRING_DESC + "II)" + VALUE_DESC, false);
+            store(input.vardecl().getText(), Type.DYNAMIC);
+        } else if (ctx.ifstmt() != null) {
+            emitIf(ctx.ifstmt());
+        } else if (ctx.forstmt() != null) {
+            emitFor(ctx.forstmt());
+        } else if (ctx.whilestmt() != null) {
+            emitWhile(ctx.whilestmt());
+        } else if (ctx.repeatstmt() != null) {
+            emitRepeat(ctx.repeatstmt());
+        } else if (ctx.continuestmt() != null) {
+            // outside of loops CONTINUE and EXIT end the program
+            mv.visitJumpInsn(GOTO, loops.isEmpty() ? programEnd : loops.peek().next);
+        } else if (ctx.exitstmt() != null) {
+            mv.visitJumpInsn(GOTO, loops.isEmpty() ? programEnd : loops.peek().exit);
+        }
+    }
+
+    private int arraySlot(String name) {
+        return symbols.lookup(Symbols.array(name));
+    }
+
+    /**
+     * Checks the index, then evaluates the value and stores it, a long
+     * into an array of integers without a value.
+     */
+    private void emitStore(LittleBasicParser.LetstmtContext ctx) {
+        int slot = arraySlot(ctx.vardecl().varname().ID().getText());
+        emitRetried(ctx,
+                () -> {
+                    mv.visitVarInsn(ALOAD, 0);
+                    push(slot);
+                    mv.visitVarInsn(ALOAD, 0);
+                    push(slot);
+                    Type index = emit(ctx.subscript().expression());
+                    mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "index",
+                            "(I" + (index == Type.NUMBER ? "J" : VALUE_DESC) + ")I", false);
+                    Type value = emit(ctx.expression());
+                    mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "store",
+                            "(II" + (value == Type.NUMBER ? "J" : VALUE_DESC) + ")V", false);
+                },
+                () -> {
+                    mv.visitVarInsn(ALOAD, 0);
+                    push(slot);
+                    mv.visitVarInsn(ALOAD, 0);
+                    push(slot);
+                    emitValue(ctx.subscript().expression());
+                    mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "index", "(I" + VALUE_DESC + ")I", false);
+                    emitValue(ctx.expression());
+                    mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "store", "(II" + VALUE_DESC + ")V", false);
+                });
+    }
+
+    private void emitPrint(Type type) {
+        int local = allocate(type == Type.NUMBER ? 2 : 1);
+        mv.visitVarInsn(type == Type.NUMBER ? LSTORE : ASTORE, local);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(type == Type.NUMBER ? LLOAD : ALOAD, local);
+        nextLocal = local;
+        String desc = type == Type.NUMBER ? "J" : VALUE_DESC;
+        mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "print", "(" + desc + ")V", false);
+    }
+
+    /**
+     * Emits the code on longs, then the same on values as the handler of the
+     * {@link Value.Overflow} it may raise, unless nothing in the expression
+     * is computed as a long. The expression has no side effect, so it can be
+     * evaluated again from the start. So does a store into an array, whose
+     * element is only written once both of its expressions are.
+     */
+    private void emitRetried(ParserRuleContext ctx, Runnable onLongs, Runnable onValues) {
+        if (!computesLongs(ctx)) {
+            onLongs.run();
+            return;
+        }
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        Label after = new Label();
+        mv.visitLabel(start);
+        onLongs.run();
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, after);
+        mv.visitLabel(handler);
+        mv.visitInsn(POP);
+        onValues.run();
+        mv.visitLabel(after);
+        mv.visitTryCatchBlock(start, end, handler, OVERFLOW);
+    }
+
+    /**
+     * Whether the expression or a part of it is an integer computed as a long,
+     * other than a literal.
+     */
+    private boolean computesLongs(ParserRuleContext ctx) {
+        if (ctx instanceof LittleBasicParser.ExpressionContext
+                && types.typeOf((LittleBasicParser.ExpressionContext) ctx) == Type.NUMBER
+                && !(ctx instanceof LittleBasicParser.NumberExprContext
+                        && expressions.literal((LittleBasicParser.ExpressionContext) ctx) != null)) {
+            return true;
+        }
+        for (int i = 0; i < ctx.getChildCount(); i++) {
+            if (ctx.getChild(i) instanceof ParserRuleContext && computesLongs((ParserRuleContext) ctx.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void emitIf(LittleBasicParser.IfstmtContext ctx) {
+        Label end = new Label();
+        Label next = new Label();
+        emitCondition(ctx.expression(), next);
+        emitStatements(ctx.block());
+        mv.visitJumpInsn(GOTO, end);
+        for (LittleBasicParser.ElifstmtContext elif : ctx.elifstmt()) {
+            mv.visitLabel(next);
+            next = new Label();
+            emitCondition(elif.expression(), next);
+            emitStatements(elif.block());
+            mv.visitJumpInsn(GOTO, end);
+        }
+        mv.visitLabel(next);
+        if (ctx.elsestmt() != null) {
+            emitStatements(ctx.elsestmt().block());
+        }
+        mv.visitLabel(end);
+    }
+
+    /**
+     * Start, end and step are evaluated once, the variable is set from the
+     * counter on every iteration. The counter is a long when it can't
+     * overflow, see {@link Value#countsInLongs}, and a value otherwise.
+     * Literal bounds are checked here, and get a loop on longs only.
+     */
+    private void emitFor(LittleBasicParser.ForstmtContext ctx) {
+        int mark = nextLocal;
+        int counter = allocate(2);
+        int last = allocate(2);
+        int step = allocate(2);
+        Long first = expressions.literal(ctx.expression(0));
+        Long to = expressions.literal(ctx.expression(1));
+        Long by = ctx.expression(2) != null ? expressions.literal(ctx.expression(2)) : Long.valueOf(1);
+        boolean counted = first != null && to != null && by != null && Value.countsInLongs(to, by);
+        int wideCounter = -1;
+        int wideLast = -1;
+        int wideStep = -1;
+        int counting = -1;
+        Label head = new Label();
+        if (counted) {
+            mv.visitLdcInsn(first);
+            mv.visitVarInsn(LSTORE, counter);
+            mv.visitLdcInsn(to);
+            mv.visitVarInsn(LSTORE, last);
+            mv.visitLdcInsn(by);
+            mv.visitVarInsn(LSTORE, step);
+        } else {
+            wideCounter = allocate(1);
+            wideLast = allocate(1);
+            wideStep = allocate(1);
+            counting = allocate(1);
+            emitBounds(ctx, counter, last, step, wideCounter, wideLast, wideStep, counting, head);
+        }
+
+        String name = ctx.vardecl().varname().ID().getText();
+        Label headOnValues = new Label();
+        Label body = new Label();
+        Label next = new Label();
+        Label nextOnValues = new Label();
+        Label exit = new Label();
+        mv.visitLabel(head);
+        if (!counted) {
+            mv.visitVarInsn(ILOAD, counting);
+            mv.visitJumpInsn(IFNE, headOnValues);
+        }
+        mv.visitVarInsn(LLOAD, counter);
+        mv.visitVarInsn(LLOAD, last);
+        mv.visitInsn(LCMP);
+        mv.visitJumpInsn(IFGT, exit);
+        mv.visitVarInsn(LLOAD, counter);
+        store(name, Type.NUMBER);
+        if (!counted) {
+            mv.visitJumpInsn(GOTO, body);
+            mv.visitLabel(headOnValues);
+            mv.visitVarInsn(ALOAD, wideCounter);
+            mv.visitVarInsn(ALOAD, wideLast);
+            mv.visitMethodInsn(INVOKESTATIC, BASE, "notAfter", "(" + VALUE_DESC + VALUE_DESC + ")Z", false);
+            mv.visitJumpInsn(IFEQ, exit);
+            mv.visitVarInsn(ALOAD, wideCounter);
+            store(name, Type.DYNAMIC);
+            mv.visitLabel(body);
+        }
+        loops.push(new Loop(next, exit));
+        emitStatements(ctx.block());
+        loops.pop();
+        mv.visitLabel(next);
+        if (!counted) {
+            mv.visitVarInsn(ILOAD, counting);
+            mv.visitJumpInsn(IFNE, nextOnValues);
+        }
+        mv.visitVarInsn(LLOAD, counter);
+        mv.visitVarInsn(LLOAD, step);
+        mv.visitInsn(LADD);
+        mv.visitVarInsn(LSTORE, counter);
+        mv.visitJumpInsn(GOTO, head);
+        if (!counted) {
+            mv.visitLabel(nextOnValues);
+            mv.visitVarInsn(ALOAD, wideCounter);
+            mv.visitVarInsn(ALOAD, wideStep);
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "add", BINARY_DESC, false);
+            mv.visitVarInsn(ASTORE, wideCounter);
+            mv.visitJumpInsn(GOTO, head);
+        }
+        mv.visitLabel(exit);
+        nextLocal = mark;
+    }
+
+    /**
+     * Evaluates the bounds of a FOR loop that aren't all literals into the
+     * value locals, and the long ones too with counting set to 0 when they
+     * let the loop count in longs, or to 1 to count with values.
+     */
+    private void emitBounds(LittleBasicParser.ForstmtContext ctx, int counter, int last, int step,
+                            int wideCounter, int wideLast, int wideStep, int counting, Label head) {
+        for (int local : new int[] {counter, last, step}) {
+            // set on both ways into the loop, for the verifier
+            mv.visitInsn(LCONST_0);
+            mv.visitVarInsn(LSTORE, local);
+        }
+        emitBound(ctx.expression(0), wideCounter);
+        emitBound(ctx.expression(1), wideLast);
+        if (ctx.expression(2) != null) {
+            emitBound(ctx.expression(2), wideStep);
+        } else {
+            mv.visitInsn(LCONST_1);
+            mv.visitMethodInsn(INVOKESTATIC, VALUE, "of", "(J)" + VALUE_DESC, false);
+            mv.visitVarInsn(ASTORE, wideStep);
+        }
+        Label onValues = new Label();
+        for (int bound : new int[] {wideCounter, wideLast, wideStep}) {
+            mv.visitVarInsn(ALOAD, bound);
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isLong", "()Z", false);
+            mv.visitJumpInsn(IFEQ, onValues);
+        }
+        int[][] longs = {{wideCounter, counter}, {wideLast, last}, {wideStep, step}};
+        for (int[] bound : longs) {
+            mv.visitVarInsn(ALOAD, bound[0]);
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "internalNumber", "()J", false);
+            mv.visitVarInsn(LSTORE, bound[1]);
+        }
+        mv.visitVarInsn(LLOAD, last);
+        mv.visitVarInsn(LLOAD, step);
+        mv.visitMethodInsn(INVOKESTATIC, BASE, "countsInLongs", "(JJ)Z", false);
+        mv.visitJumpInsn(IFEQ, onValues);
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, counting);
+        mv.visitJumpInsn(GOTO, head);
+        mv.visitLabel(onValues);
+        mv.visitInsn(ICONST_1);
+        mv.visitVarInsn(ISTORE, counting);
+    }
+
+    /**
+     * Evaluates a bound or the step of a FOR loop into a value local, see {@link Value#forBound}.
+     */
+    private void emitBound(LittleBasicParser.ExpressionContext ctx, int local) {
+        emitValue(ctx);
+        mv.visitMethodInsn(INVOKESTATIC, BASE, "forBound", "(" + VALUE_DESC + ")" + VALUE_DESC, false);
+        mv.visitVarInsn(ASTORE, local);
+    }
+
+    /**
+     * The condition is evaluated again after every run of the body, also
+     * when it exits or fails, same as the finally blocks of the other modes.
+     */
+    private void emitWhile(LittleBasicParser.WhilestmtContext ctx) {
+        Label body = new Label();
+        Label next = new Label();
+        Label exit = new Label();
+        Label end = new Label();
+        emitCondition(ctx.expression(), end);
+        mv.visitLabel(body);
+        emitLoopBody(ctx.block(), body, next, exit, ctx.expression());
+        mv.visitLabel(next);
+        emitCondition(ctx.expression(), end);
+        mv.visitJumpInsn(GOTO, body);
+        mv.visitLabel(exit);
+        emitDiscarded(ctx.expression());
+        mv.visitLabel(end);
+    }
+
+    private void emitRepeat(LittleBasicParser.RepeatstmtContext ctx) {
+        Label body = new Label();
+        Label next = new Label();
+        Label exit = new Label();
+        Label end = new Label();
+        mv.visitLabel(body);
+        emitLoopBody(ctx.block(), body, next, exit, ctx.expression());
+        mv.visitLabel(next);
+        emitCondition(ctx.expression(), body);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(exit);
+        emitDiscarded(ctx.expression());
+        mv.visitLabel(end);
+    }
+
+    /**
+     * Emits the body of a WHILE or REPEAT, which has started at the given
+     * label. A failure in the body evaluates the condition before it goes on.
+     */
+    private void emitLoopBody(LittleBasicParser.BlockContext block, Label start, Label next, Label exit,
+                              LittleBasicParser.ExpressionContext condition) {
+        int size = mv.instructions.size();
+        loops.push(new Loop(next, exit));
+        emitStatements(block);
+        loops.pop();
+        if (mv.instructions.size() == size) {
+            return;
+        }
+        Label bodyEnd = new Label();
+        Label handler = new Label();
+        Label after = new Label();
+        mv.visitLabel(bodyEnd);
+        mv.visitJumpInsn(GOTO, after);
+        mv.visitLabel(handler);
+        int exception = allocate(1);
+        mv.visitVarInsn(ASTORE, exception);
+        emitDiscarded(condition);
+        mv.visitVarInsn(ALOAD, exception);
+        mv.visitInsn(ATHROW);
+        nextLocal = exception;
+        mv.visitLabel(after);
+        // registered after the loops inside, so theirs come first in the exception table
+        mv.visitTryCatchBlock(start, bodyEnd, handler, null);
+    }
+
+    // expressions
+
+    private Type emit(LittleBasicParser.ExpressionContext ctx) {
+        return expressions.visit(ctx);
+    }
+
+    /**
+     * Emits the expression as a value, whatever its type, the way
+     * {@link LittleBasicVisitor} evaluates it.
+     */
+    private void emitValue(LittleBasicParser.ExpressionContext ctx) {
+        values.visit(ctx);
+    }
+
+    /**
+     * Evaluates the expression as a statement of its own, for its errors only.
+     */
+    private void emitDiscarded(LittleBasicParser.ExpressionContext ctx) {
+        emitRetried(ctx,
+                () -> pop(emit(ctx)),
+                () -> {
+                    emitValue(ctx);
+                    mv.visitInsn(POP);
+                });
+    }
+
+    private void pop(Type type) {
+        mv.visitInsn(type == Type.NUMBER ? POP2 : POP);
+    }
+
+    /**
+     * Emits the expression as a {@code long}, failing if it isn't a number.
+     */
+    private void emitNumber(LittleBasicParser.ExpressionContext ctx) {
+        toNumber(emit(ctx));
+    }
+
+    /**
+     * Emits both operands as {@code long}s. Both are evaluated before either
+     * is checked, left first, like {@link Value} does.
+     */
+    private void emitNumbers(LittleBasicParser.ExpressionContext left, LittleBasicParser.ExpressionContext right) {
+        Type leftType = emit(left);
+        if (leftType == Type.NUMBER) {
+            emitNumber(right);
+            return;
+        }
+        Type rightType = emit(right);
+        int local = allocate(rightType == Type.NUMBER ? 2 : 1);
+        mv.visitVarInsn(rightType == Type.NUMBER ? LSTORE : ASTORE, local);
+        toNumber(leftType);
+        mv.visitVarInsn(rightType == Type.NUMBER ? LLOAD : ALOAD, local);
+        toNumber(rightType);
+        nextLocal = local;
+    }
+
+    /**
+     * Emits both operands as values and the method of {@link Value} applied to them.
+     */
+    private Type emitOnValues(LittleBasicParser.ExpressionContext left, LittleBasicParser.ExpressionContext right,
+                              String method) {
+        toValue(emit(left));
+        toValue(emit(right));
+        mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, method, BINARY_DESC, false);
+        return Type.DYNAMIC;
+    }
+
+    /**
+     * Jumps to the given label if the condition of a statement is false.
+     * Fails if it isn't a number.
+     */
+    private void emitCondition(LittleBasicParser.ExpressionContext ctx, Label ifFalse) {
+        emitRetried(ctx, () -> emitTypedCondition(ctx, ifFalse), () -> emitValueCondition(ctx, ifFalse));
+    }
+
+    /**
+     * Same as {@link #emitCondition} with the numbers that can be as {@code long}s, inside an expression.
+     */
+    private void emitTypedCondition(LittleBasicParser.ExpressionContext ctx, Label ifFalse) {
+        while (ctx instanceof LittleBasicParser.ParenExprContext) {
+            ctx = ((LittleBasicParser.ParenExprContext) ctx).expression();
+        }
+        if (ctx instanceof LittleBasicParser.RelExprContext) {
+            LittleBasicParser.RelExprContext rel = (LittleBasicParser.RelExprContext) ctx;
+            int op = rel.op.getType();
+            Type left = types.typeOf(rel.expression(0));
+            Type right = types.typeOf(rel.expression(1));
+            if (op != LBExpressionParser.EQ && op != LBExpressionParser.NEQ) {
+                if (left == Type.DYNAMIC || right == Type.DYNAMIC) {
+                    emitOnValues(rel.expression(0), rel.expression(1), relation(op));
+                    mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isTrue", "()Z", false);
+                    mv.visitJumpInsn(IFEQ, ifFalse);
+                    return;
+                }
+                emitNumbers(rel.expression(0), rel.expression(1));
+                mv.visitInsn(LCMP);
+                mv.visitJumpInsn(falseJump(op), ifFalse);
+                return;
+            }
+            if (left == Type.NUMBER && right == Type.NUMBER) {
+                emit(rel.expression(0));
+                emit(rel.expression(1));
+                mv.visitInsn(LCMP);
+                mv.visitJumpInsn(falseJump(op), ifFalse);
+                return;
+            }
+        }
+        if (ctx instanceof LittleBasicParser.NotExprContext) {
+            Label ifTrue = new Label();
+            emitTypedCondition(((LittleBasicParser.NotExprContext) ctx).expression(), ifTrue);
+            mv.visitJumpInsn(GOTO, ifFalse);
+            mv.visitLabel(ifTrue);
+            return;
+        }
+        if (shortCircuit && ctx instanceof LittleBasicParser.AndExprContext) {
+            LittleBasicParser.AndExprContext and = (LittleBasicParser.AndExprContext) ctx;
+            emitTypedCondition(and.expression(0), ifFalse);
+            emitTypedCondition(and.expression(1), ifFalse);
+            return;
+        }
+        if (shortCircuit && ctx instanceof LittleBasicParser.OrExprContext) {
+            LittleBasicParser.OrExprContext or = (LittleBasicParser.OrExprContext) ctx;
+            Label right = new Label();
+            Label end = new Label();
+            emitTypedCondition(or.expression(0), right);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(right);
+            emitTypedCondition(or.expression(1), ifFalse);
+            mv.visitLabel(end);
+            return;
+        }
+        emitTruth(emit(ctx));
+        mv.visitJumpInsn(IFEQ, ifFalse);
+    }
+
+    /**
+     * Same as {@link #emitCondition} on values only.
+     */
+    private void emitValueCondition(LittleBasicParser.ExpressionContext ctx, Label ifFalse) {
+        while (ctx instanceof LittleBasicParser.ParenExprContext) {
+            ctx = ((LittleBasicParser.ParenExprContext) ctx).expression();
+        }
+        if (ctx instanceof LittleBasicParser.NotExprContext) {
+            Label ifTrue = new Label();
+            emitValueCondition(((LittleBasicParser.NotExprContext) ctx).expression(), ifTrue);
+            mv.visitJumpInsn(GOTO, ifFalse);
+            mv.visitLabel(ifTrue);
+            return;
+        }
+        if (shortCircuit && ctx instanceof LittleBasicParser.AndExprContext) {
+            LittleBasicParser.AndExprContext and = (LittleBasicParser.AndExprContext) ctx;
+            emitValueCondition(and.expression(0), ifFalse);
+            emitValueCondition(and.expression(1), ifFalse);
+            return;
+        }
+        if (shortCircuit && ctx instanceof LittleBasicParser.OrExprContext) {
+            LittleBasicParser.OrExprContext or = (LittleBasicParser.OrExprContext) ctx;
+            Label right = new Label();
+            Label end = new Label();
+            emitValueCondition(or.expression(0), right);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(right);
+            emitValueCondition(or.expression(1), ifFalse);
+            mv.visitLabel(end);
+            return;
+        }
+        emitValue(ctx);
+        mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isTrue", "()Z", false);
+        mv.visitJumpInsn(IFEQ, ifFalse);
+    }
+
+    /**
+     * Turns the number or value on the stack into an int that is 0 only if it's false.
+     * Fails if it isn't a number.
+     */
+    private void emitTruth(Type type) {
+        if (type == Type.NUMBER) {
+            mv.visitInsn(LCONST_0);
+            mv.visitInsn(LCMP);
+        } else {
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isTrue", "()Z", false);
+        }
+    }
+
+    /**
+     * The jump taken after LCMP when the comparison is false.
+     */
+    private static int falseJump(int op) {
+        switch (op) {
+            case LBExpressionParser.GT:
+                return IFLE;
+            case LBExpressionParser.GTE:
+                return IFLT;
+            case LBExpressionParser.LT:
+                return IFGE;
+            case LBExpressionParser.LTE:
+                return IFGT;
+            case LBExpressionParser.EQ:
+                return IFNE;
+            default:
+                return IFEQ;
+        }
+    }
+
+    /**
+     * The method of {@link Value} for a relational operator.
+     */
+    private static String relation(int op) {
+        switch (op) {
+            case LBExpressionParser.GT:
+                return "gt";
+            case LBExpressionParser.GTE:
+                return "gte";
+            case LBExpressionParser.LT:
+                return "lt";
+            case LBExpressionParser.LTE:
+                return "lte";
+            case LBExpressionParser.EQ:
+                return "eq";
+            default:
+                return "neq";
+        }
+    }
+
+    /**
+     * Pushes 1 or 0 for a condition.
+     */
+    private Type emitBoolean(LittleBasicParser.ExpressionContext ctx) {
+        Label isFalse = new Label();
+        Label end = new Label();
+        emitTypedCondition(ctx, isFalse);
+        mv.visitInsn(LCONST_1);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isFalse);
+        mv.visitInsn(LCONST_0);
+        mv.visitLabel(end);
+        return Type.NUMBER;
+    }
+
+    private void toNumber(Type type) {
+        if (type != Type.NUMBER) {
+            mv.visitMethodInsn(INVOKESTATIC, BASE, "number", "(" + VALUE_DESC + ")J", false);
+        }
+    }
+
+    private void toValue(Type type) {
+        if (type == Type.NUMBER) {
+            mv.visitMethodInsn(INVOKESTATIC, VALUE, "of", "(J)" + VALUE_DESC, false);
+        }
+    }
+
+    /**
+     * Applies an operation to the two longs on the stack, checked by the
+     * method of {@link GeneratedProgram} unless the result always fits.
+     */
+    private void arithmetic(LittleBasicParser.ExpressionContext ctx, String method, int opcode) {
+        if (types.fitsInLong(ctx)) {
+            mv.visitInsn(opcode);
+        } else {
+            mv.visitMethodInsn(INVOKESTATIC, BASE, method, "(JJ)J", false);
+        }
+    }
+
+    private void push(int value) {
+        mv.visitLdcInsn(value);
+    }
+
+    /**
+     * Pushes the static field of a number literal that isn't a long.
+     */
+    private void pushNumberLiteral(String text) {
+        String field = numbers.computeIfAbsent(text, number -> "N" + numbers.size());
+        mv.visitFieldInsn(GETSTATIC, CLASS_NAME, field, VALUE_DESC);
+    }
+
+    /**
+     * The value of a number literal if it's a long, or null.
+     */
+    private static Long longLiteral(String text) {
+        Value value = Value.parse(text, false);
+        return value.isLong() ? value.internalNumber() : null;
+    }
+
+    private class ExpressionEmitter extends LittleBasicBaseVisitor<Type> {
+
+        @Override
+        public Type visitString(LittleBasicParser.StringContext ctx) {
+            String literal = ctx.getText();
+            String field = literals.computeIfAbsent(literal.substring(1, literal.length() - 1),
+                    string -> "S" + literals.size());
+            mv.visitFieldInsn(GETSTATIC, CLASS_NAME, field, VALUE_DESC);
+            return Type.STRING;
+        }
+
+        @Override
+        public Type visitNumber(LittleBasicParser.NumberContext ctx) {
+            Long number = longLiteral(ctx.getText());
+            if (number != null) {
+                mv.visitLdcInsn(number);
+                return Type.NUMBER;
+            }
+            pushNumberLiteral(ctx.getText());
+            if (ctx.getText().indexOf('.') >= 0) {
+                return Type.DYNAMIC;
+            }
+            // an integer too large for a long, only ever computed on values
+            toNumber(Type.DYNAMIC);
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitId(LittleBasicParser.IdContext ctx) {
+            return load(ctx.getText());
+        }
+
+        @Override
+        public Type visitParenExpr(LittleBasicParser.ParenExprContext ctx) {
+            return visit(ctx.expression());
+        }
+
+        @Override
+        public Type visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+            Type type = types.typeOf(ctx);
+            mv.visitVarInsn(ALOAD, 0);
+            push(arraySlot(ctx.ID().getText()));
+            Type index = visit(ctx.expression());
+            if (type == Type.NUMBER) {
+                toNumber(index);
+                mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "elementNumber", "(IJ)J", false);
+                return Type.NUMBER;
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "element",
+                    "(I" + (index == Type.NUMBER ? "J" : VALUE_DESC) + ")" + VALUE_DESC, false);
+            return type;
+        }
+
+        @Override
+        public Type visitMulDivExpr(LittleBasicParser.MulDivExprContext ctx) {
+            int op = ctx.op.getType();
+            if (types.typeOf(ctx) == Type.DYNAMIC) {
+                return emitOnValues(ctx.expression(0), ctx.expression(1),
+                        op == LBExpressionParser.MUL ? "mul" : op == LBExpressionParser.DIV ? "div" : "mod");
+            }
+            emitNumbers(ctx.expression(0), ctx.expression(1));
+            if (op == LBExpressionParser.MUL) {
+                arithmetic(ctx, "mul", LMUL);
+            } else if (op == LBExpressionParser.DIV) {
+                mv.visitMethodInsn(INVOKESTATIC, BASE, "div", "(JJ)J", false);
+            } else {
+                mv.visitInsn(LREM);
+            }
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitAddSubExpr(LittleBasicParser.AddSubExprContext ctx) {
+            Type result = types.typeOf(ctx);
+            if (ctx.op.getType() == LBExpressionParser.SUB) {
+                if (result == Type.DYNAMIC) {
+                    return emitOnValues(ctx.expression(0), ctx.expression(1), "sub");
+                }
+                emitNumbers(ctx.expression(0), ctx.expression(1));
+                arithmetic(ctx, "sub", LSUB);
+                return Type.NUMBER;
+            }
+            if (result == Type.DYNAMIC) {
+                return emitOnValues(ctx.expression(0), ctx.expression(1), "add");
+            }
+            Type left = visit(ctx.expression(0));
+            Type right = visit(ctx.expression(1));
+            if (result == Type.NUMBER) {
+                arithmetic(ctx, "add", LADD);
+            } else {
+                String leftDesc = left == Type.NUMBER ? "J" : VALUE_DESC;
+                String rightDesc = right == Type.NUMBER ? "J" : VALUE_DESC;
+                mv.visitMethodInsn(INVOKESTATIC, BASE, "concat",
+                        "(" + leftDesc + rightDesc + ")" + VALUE_DESC, false);
+            }
+            return result;
+        }
+
+        @Override
+        public Type visitRelExpr(LittleBasicParser.RelExprContext ctx) {
+            int op = ctx.op.getType();
+            if (op != LBExpressionParser.EQ && op != LBExpressionParser.NEQ) {
+                return emitBoolean(ctx);
+            }
+            Type left = types.typeOf(ctx.expression(0));
+            Type right = types.typeOf(ctx.expression(1));
+            if (left == Type.NUMBER && right == Type.NUMBER) {
+                return emitBoolean(ctx);
+            }
+            if (left == Type.STRING && right == Type.STRING) {
+                visit(ctx.expression(0));
+                visit(ctx.expression(1));
+                mv.visitMethodInsn(INVOKESTATIC, BASE, "stringEquals", "(" + VALUE_DESC + VALUE_DESC + ")Z", false);
+            } else if (left != Type.DYNAMIC && right != Type.DYNAMIC) {
+                // a number and a string are never equal
+                pop(visit(ctx.expression(0)));
+                pop(visit(ctx.expression(1)));
+                mv.visitInsn(ICONST_0);
+            } else {
+                toValue(visit(ctx.expression(0)));
+                toValue(visit(ctx.expression(1)));
+                mv.visitMethodInsn(INVOKESTATIC, BASE, "eq", "(" + VALUE_DESC + VALUE_DESC + ")Z", false);
+            }
+            if (op == LBExpressionParser.NEQ) {
+                mv.visitInsn(ICONST_1);
+                mv.visitInsn(IXOR);
+            }
+            mv.visitInsn(I2L);
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitNotExpr(LittleBasicParser.NotExprContext ctx) {
+            return emitBoolean(ctx);
+        }
+
+        /**
+         * Both sides are evaluated, the right one is only checked when the left doesn't decide.
+         * Only used when not short-circuiting.
+         */
+        private Type emitLogic(LittleBasicParser.ExpressionContext left, LittleBasicParser.ExpressionContext right,
+                               boolean and) {
+            Type leftType = visit(left);
+            Type rightType = visit(right);
+            int local = allocate(rightType == Type.NUMBER ? 2 : 1);
+            mv.visitVarInsn(rightType == Type.NUMBER ? LSTORE : ASTORE, local);
+            Label decided = new Label();
+            Label end = new Label();
+            emitTruth(leftType);
+            mv.visitJumpInsn(and ? IFEQ : IFNE, decided);
+            mv.visitVarInsn(rightType == Type.NUMBER ? LLOAD : ALOAD, local);
+            emitTruth(rightType);
+            mv.visitJumpInsn(and ? IFEQ : IFNE, decided);
+            mv.visitInsn(and ? LCONST_1 : LCONST_0);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(decided);
+            mv.visitInsn(and ? LCONST_0 : LCONST_1);
+            mv.visitLabel(end);
+            nextLocal = local;
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitAndExpr(LittleBasicParser.AndExprContext ctx) {
+            if (shortCircuit) {
+                return emitBoolean(ctx);
+            }
+            return emitLogic(ctx.expression(0), ctx.expression(1), true);
+        }
+
+        @Override
+        public Type visitOrExpr(LittleBasicParser.OrExprContext ctx) {
+            if (shortCircuit) {
+                return emitBoolean(ctx);
+            }
+            return emitLogic(ctx.expression(0), ctx.expression(1), false);
+        }
+
+        @Override
+        public Type visitExpExpr(LittleBasicParser.ExpExprContext ctx) {
+            if (types.typeOf(ctx) == Type.DYNAMIC) {
+                return emitOnValues(ctx.expression(0), ctx.expression(1), "exp");
+            }
+            if (reduceStrength && types.typeOf(ctx.expression(0)) == Type.NUMBER
+                    && types.typeOf(ctx.expression(1)) == Type.NUMBER) {
+                Long exponent = literal(ctx.expression(1));
+                if (exponent != null && exponent == 2) {
+                    emit(ctx.expression(0));
+                    mv.visitMethodInsn(INVOKESTATIC, BASE, "square", "(J)J", false);
+                    return Type.NUMBER;
+                }
+                Long base = literal(ctx.expression(0));
+                if (base != null && base > 1 && Long.bitCount(base) == 1) {
+                    push(Long.numberOfTrailingZeros(base));
+                    emit(ctx.expression(1));
+                    mv.visitMethodInsn(INVOKESTATIC, BASE, "shiftPower", "(IJ)J", false);
+                    return Type.NUMBER;
+                }
+            }
+            emitNumbers(ctx.expression(0), ctx.expression(1));
+            mv.visitMethodInsn(INVOKESTATIC, BASE, "pow", "(JJ)J", false);
+            return Type.NUMBER;
+        }
+
+        /**
+         * The value of a number literal that is a long, in parentheses or not, or null for anything else.
+         */
+        Long literal(LittleBasicParser.ExpressionContext ctx) {
+            while (ctx instanceof LittleBasicParser.ParenExprContext) {
+                ctx = ((LittleBasicParser.ParenExprContext) ctx).expression();
+            }
+            return ctx instanceof LittleBasicParser.NumberExprContext ? longLiteral(ctx.getText()) : null;
+        }
+
+        @Override
+        public Type visitLenfunc(LittleBasicParser.LenfuncContext ctx) {
+            Type arg = visit(ctx.expression());
+            if (arg == Type.STRING) {
+                mv.visitMethodInsn(INVOKESTATIC, BASE, "length", "(" + VALUE_DESC + ")J", false);
+            } else {
+                toValue(arg);
+                mv.visitMethodInsn(INVOKESTATIC, BASE, "len", "(" + VALUE_DESC + ")J", false);
+            }
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitValfunc(LittleBasicParser.ValfuncContext ctx) {
+            Type arg = visit(ctx.expression());
+            if (arg == Type.NUMBER) {
+                return Type.NUMBER;
+            }
+            emitVal();
+            return Type.DYNAMIC;
+        }
+
+        @Override
+        public Type visitIsnanfunc(LittleBasicParser.IsnanfuncContext ctx) {
+            Type arg = visit(ctx.expression());
+            if (arg == Type.DYNAMIC) {
+                mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isNaN", "()Z", false);
+                mv.visitInsn(I2L);
+            } else {
+                // only dynamic values can be NaN
+                pop(arg);
+                mv.visitInsn(LCONST_0);
+            }
+            return Type.NUMBER;
+        }
+    }
+
+    private void emitVal() {
+        mv.visitInsn(doubles ? ICONST_1 : ICONST_0);
+        mv.visitMethodInsn(INVOKESTATIC, BASE, "val", "(" + VALUE_DESC + "Z)" + VALUE_DESC, false);
+    }
+
+    /**
+     * Emits expressions as values only, for statements that start over after
+     * an {@link Value.Overflow} and for the bounds of FOR loops.
+     */
+    private class ValueEmitter extends LittleBasicBaseVisitor<Void> {
+
+        @Override
+        public Void visitString(LittleBasicParser.StringContext ctx) {
+            expressions.visitString(ctx);
+            return null;
+        }
+
+        @Override
+        public Void visitNumber(LittleBasicParser.NumberContext ctx) {
+            Long number = longLiteral(ctx.getText());
+            if (number != null) {
+                mv.visitLdcInsn(number);
+                toValue(Type.NUMBER);
+            } else {
+                pushNumberLiteral(ctx.getText());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitId(LittleBasicParser.IdContext ctx) {
+            loadValue(ctx.getText());
+            return null;
+        }
+
+        @Override
+        public Void visitParenExpr(LittleBasicParser.ParenExprContext ctx) {
+            return visit(ctx.expression());
+        }
+
+        @Override
+        public Void visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+            mv.visitVarInsn(ALOAD, 0);
+            push(arraySlot(ctx.ID().getText()));
+            visit(ctx.expression());
+            mv.visitMethodInsn(INVOKEVIRTUAL, BASE, "element", "(I" + VALUE_DESC + ")" + VALUE_DESC, false);
+            return null;
+        }
+
+        private Void binary(LittleBasicParser.ExpressionContext left, LittleBasicParser.ExpressionContext right,
+                            String method) {
+            visit(left);
+            visit(right);
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, method, BINARY_DESC, false);
+            return null;
+        }
+
+        @Override
+        public Void visitMulDivExpr(LittleBasicParser.MulDivExprContext ctx) {
+            int op = ctx.op.getType();
+            return binary(ctx.expression(0), ctx.expression(1),
+                    op == LBExpressionParser.MUL ? "mul" : op == LBExpressionParser.DIV ? "div" : "mod");
+        }
+
+        @Override
+        public Void visitAddSubExpr(LittleBasicParser.AddSubExprContext ctx) {
+            return binary(ctx.expression(0), ctx.expression(1),
+                    ctx.op.getType() == LBExpressionParser.ADD ? "add" : "sub");
+        }
+
+        @Override
+        public Void visitRelExpr(LittleBasicParser.RelExprContext ctx) {
+            return binary(ctx.expression(0), ctx.expression(1), relation(ctx.op.getType()));
+        }
+
+        @Override
+        public Void visitExpExpr(LittleBasicParser.ExpExprContext ctx) {
+            return binary(ctx.expression(0), ctx.expression(1), "exp");
+        }
+
+        @Override
+        public Void visitNotExpr(LittleBasicParser.NotExprContext ctx) {
+            visit(ctx.expression());
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "not", "()" + VALUE_DESC, false);
+            return null;
+        }
+
+        private Void logic(LittleBasicParser.ExpressionContext ctx, LittleBasicParser.ExpressionContext left,
+                           LittleBasicParser.ExpressionContext right, String method) {
+            if (!shortCircuit) {
+                return binary(left, right, method);
+            }
+            Label isFalse = new Label();
+            Label end = new Label();
+            emitValueCondition(ctx, isFalse);
+            mv.visitFieldInsn(GETSTATIC, VALUE, "TRUE", VALUE_DESC);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isFalse);
+            mv.visitFieldInsn(GETSTATIC, VALUE, "FALSE", VALUE_DESC);
+            mv.visitLabel(end);
+            return null;
+        }
+
+        @Override
+        public Void visitAndExpr(LittleBasicParser.AndExprContext ctx) {
+            return logic(ctx, ctx.expression(0), ctx.expression(1), "and");
+        }
+
+        @Override
+        public Void visitOrExpr(LittleBasicParser.OrExprContext ctx) {
+            return logic(ctx, ctx.expression(0), ctx.expression(1), "or");
+        }
+
+        @Override
+        public Void visitLenfunc(LittleBasicParser.LenfuncContext ctx) {
+            visit(ctx.expression());
+            mv.visitMethodInsn(INVOKESTATIC, BASE, "len", "(" + VALUE_DESC + ")J", false);
+            toValue(Type.NUMBER);
+            return null;
+        }
+
+        @Override
+        public Void visitValfunc(LittleBasicParser.ValfuncContext ctx) {
+            visit(ctx.expression());
+            emitVal();
+            return null;
+        }
+
+        @Override
+        public Void visitIsnanfunc(LittleBasicParser.IsnanfuncContext ctx) {
+            visit(ctx.expression());
+            mv.visitMethodInsn(INVOKEVIRTUAL, VALUE, "isNaN", "()Z", false);
+            mv.visitInsn(I2L);
+            toValue(Type.NUMBER);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.littlebasic;
+
+/**
+ * Lets another thread stop a run, see
+ * {@link Interpreter#run(String, java.io.InputStream, java.io.InputStream, java.io.OutputStream,
+ * java.io.OutputStream, Cancellation)}. The run notices it the next time it
+ * checks its budget, between statements and loop iterations, and stops with
+ * an {@link ExecutionLimitException}. A run blocked on INPUT only notices
+ * it once the line was read.
+ *
+ * A handle can be cancelled once, and stops every run it is given to from then on.
+ */
+public final class Cancellation {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
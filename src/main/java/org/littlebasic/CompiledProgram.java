@@ -0,0 +1,131 @@
+package org.littlebasic;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A parsed and compiled program. It is immutable and can be run any number
+ * of times, also concurrently, each run with its own memory and streams.
+ */
+public final class CompiledProgram {
+
+    private final Nodes.Program program;
+    private final Constructor<? extends GeneratedProgram> generated;
+
+    CompiledProgram(Nodes.Program program) {
+        this(program, null);
+    }
+
+    /**
+     * A program that runs as the given generated class instead of the nodes,
+     * which are still needed for the memory layout.
+     */
+    CompiledProgram(Nodes.Program program, Class<? extends GeneratedProgram> generated) {
+        this.program = program;
+        try {
+            this.generated = generated != null ? generated.getConstructor() : null;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Whether the program records the cost of its statements, see {@link Interpreter#setProfiling}.
+     */
+    public boolean isProfiled() {
+        return program.profiled;
+    }
+
+    /**
+     * Whether the program runs as a generated JVM class.
+     */
+    public boolean isBytecode() {
+        return generated != null;
+    }
+
+    /**
+     * Creates an empty memory laid out for this program.
+     */
+    public Memory newMemory() {
+        return new Memory(program.symbols);
+    }
+
+    /**
+     * Clears the given memory and returns it if it was created for this
+     * program, otherwise returns a new one.
+     */
+    Memory newMemory(Memory reused) {
+        if (reused != null && reused.isLaidOutFor(program.symbols)) {
+            reused.clear();
+            return reused;
+        }
+        return newMemory();
+    }
+
+    /**
+     * Runs the program against a fresh memory and returns that memory.
+     *
+     * @throws InterpreterException on runtime errors
+     */
+    public Memory run(InputStream stdin, OutputStream stdout) {
+        Memory memory = newMemory();
+        run(memory, stdin, stdout);
+        return memory;
+    }
+
+    /**
+     * Runs the program against the given memory, which must come from {@link #newMemory()}.
+     * The output is buffered and flushed before INPUT and at the end.
+     *
+     * @throws InterpreterException on runtime errors
+     */
+    public void run(Memory memory, InputStream stdin, OutputStream stdout) {
+        run(memory, stdin, stdout, Interpreter.Flush.BUFFERED);
+    }
+
+    /**
+     * Runs the program against the given memory, which must come from {@link #newMemory()}.
+     *
+     * @throws InterpreterException on runtime errors
+     */
+    public void run(Memory memory, InputStream stdin, OutputStream stdout, Interpreter.Flush flush) {
+        run(memory, new LineReader(stdin), new Output(stdout, flush == Interpreter.Flush.LINE),
+                program.profiled ? new Profile() : null, new Metrics.Counts(), null);
+    }
+
+    /**
+     * Runs the program with the given input and output, which can be reused
+     * by the next run, recording into the given profile if it is profiled,
+     * and adds what it did to the counts. A program with a budget runs as
+     * nodes even if it was generated, the generated class doesn't check it.
+     */
+    void run(Memory memory, LineReader in, Output out, Profile profile, Metrics.Counts counts, Budget budget) {
+        if (!memory.isLaidOutFor(program.symbols)) {
+            throw new IllegalArgumentException("Memory wasn't created for this program");
+        }
+        ExecutionContext ctx = new ExecutionContext(memory, in, out, program.invariants,
+                program.profiled ? profile : null, budget);
+        try {
+            if (generated != null && budget == null) {
+                newGeneratedProgram().run(ctx);
+            } else {
+                program.exec(ctx);
+            }
+        } finally {
+            out.flush();
+            counts.statements += ctx.statements;
+            counts.iterations += ctx.iterations;
+            counts.printBytes += out.written();
+        }
+    }
+
+    private GeneratedProgram newGeneratedProgram() {
+        try {
+            return generated.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,636 @@
+package org.littlebasic;
+
+import basic.LBExpressionParser;
+import basic.LittleBasicBaseVisitor;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.littlebasic.TypeInference.Type;
+
+/**
+ * Lowers the ANTLR parse tree into a tree of executable nodes (see {@link Nodes}).
+ * Operators are picked, literals parsed and children resolved once here
+ * instead of on every evaluation. Every distinct variable gets a fixed
+ * slot in {@link Memory}, so variables are accessed by index at runtime.
+ *
+ * Whole programs are typed first (see {@link TypeInference}): operations on
+ * values known to be numbers or strings get nodes that don't check types,
+ * numbers in them are evaluated as longs. Only the rest gets the checked
+ * nodes that work on {@link Value}s.
+ *
+ * Then come the optimizations switched on (see {@link Interpreter.Optimization}).
+ * Folding evaluates every expression without variables right away, unless
+ * it fails, which it's left to do at runtime. Expressions that read no
+ * variable assigned in a loop are turned into {@link Nodes.Invariant}s of
+ * the outermost such loop. Pruning drops IF branches with constant numeric
+ * conditions, after compiling them so their variables keep their slots.
+ * Short-circuiting AND and OR skip their right side once the left decides.
+ * Strength reduction turns X ^ 2 into a multiplication and powers of a
+ * constant power of two into shifts.
+ *
+ * When profiling, every statement is wrapped in a {@link Nodes.Profiled}.
+ */
+class Compiler {
+
+    /**
+     * A loop being compiled: the variables assigned in it and its invariants.
+     */
+    private static final class Loop {
+        final Set<String> assigned;
+        final List<Integer> invariants = new ArrayList<>();
+
+        Loop(Set<String> assigned) {
+            this.assigned = assigned;
+        }
+
+        int[] invariants() {
+            int[] indexes = new int[invariants.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = invariants.get(i);
+            }
+            return indexes;
+        }
+    }
+
+    private final Symbols symbols = new Symbols();
+    private final ExpressionCompiler expressions = new ExpressionCompiler();
+    private final StatementCompiler statements = new StatementCompiler();
+    private final Set<Interpreter.Optimization> optimizations;
+    private final boolean doubles;
+    private final boolean profiled;
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    private TypeInference types;
+    private int invariants;
+
+    Compiler() {
+        this(EnumSet.allOf(Interpreter.Optimization.class), false);
+    }
+
+    Compiler(Set<Interpreter.Optimization> optimizations, boolean profiled) {
+        this(optimizations, Interpreter.Fractions.DECIMAL, profiled);
+    }
+
+    Compiler(Set<Interpreter.Optimization> optimizations, Interpreter.Fractions fractions, boolean profiled) {
+        this.optimizations = optimizations;
+        this.doubles = fractions == Interpreter.Fractions.DOUBLE;
+        this.profiled = profiled;
+    }
+
+    Nodes.Program compile(LittleBasicParser.ProgContext ctx) {
+        types = new TypeInference(ctx);
+        Nodes.Program program = new Nodes.Program(compileStatements(ctx.block()), symbols, invariants, profiled);
+        locate(program, ctx);
+        return program;
+    }
+
+    /**
+     * Compiles a single statement, returns null if it doesn't do anything.
+     * Variables it introduces get added to the symbols of this compiler.
+     * Without the whole program the types aren't known, so everything is
+     * checked at runtime.
+     */
+    StmtNode compileStatement(LittleBasicParser.StatementContext ctx) {
+        StmtNode node = statements.visit(ctx);
+        if (node != null) {
+            locate(node, ctx);
+            if (profiled) {
+                node = new Nodes.Profiled(node, kind(ctx));
+            }
+        }
+        return node;
+    }
+
+    Symbols symbols() {
+        return symbols;
+    }
+
+    /**
+     * The number of invariants compiled so far.
+     */
+    int invariants() {
+        return invariants;
+    }
+
+    /**
+     * The types of the last program compiled.
+     */
+    TypeInference types() {
+        return types;
+    }
+
+    private Type typeOf(LittleBasicParser.ExpressionContext ctx) {
+        return types != null ? types.typeOf(ctx) : Type.DYNAMIC;
+    }
+
+    private boolean fitsInLong(LittleBasicParser.ExpressionContext ctx) {
+        return types != null && types.fitsInLong(ctx);
+    }
+
+    private boolean numbers(LittleBasicParser.ExpressionContext left, LittleBasicParser.ExpressionContext right) {
+        return typeOf(left) == Type.NUMBER && typeOf(right) == Type.NUMBER;
+    }
+
+    private StmtNode[] compileStatements(LittleBasicParser.BlockContext ctx) {
+        List<StmtNode> nodes = new ArrayList<>();
+        for (LittleBasicParser.StatementContext statementCtx : ctx.statement()) {
+            StmtNode node = compileStatement(statementCtx);
+            if (node != null) {
+                nodes.add(node);
+            }
+        }
+        return nodes.toArray(new StmtNode[nodes.size()]);
+    }
+
+    private StmtNode compileBlock(LittleBasicParser.BlockContext ctx) {
+        Nodes.Block block = new Nodes.Block(compileStatements(ctx));
+        locate(block, ctx);
+        return block;
+    }
+
+    /**
+     * The kind of statement for profiles, e.g. LET for a letstmt.
+     */
+    private static String kind(LittleBasicParser.StatementContext ctx) {
+        String name = ctx.getChild(0).getClass().getSimpleName();
+        return name.substring(0, name.length() - "stmtContext".length()).toUpperCase(Locale.ROOT);
+    }
+
+    private static void locate(StmtNode node, ParserRuleContext ctx) {
+        node.line = ctx.getStart().getLine();
+        node.posInLine = ctx.getStart().getCharPositionInLine();
+    }
+
+    private int slot(LittleBasicParser.VarnameContext ctx) {
+        return symbols.slot(ctx.ID().getText());
+    }
+
+    private static String unquote(String literal) {
+        return literal.substring(1, literal.length() - 1);
+    }
+
+    private boolean enabled(Interpreter.Optimization optimization) {
+        return optimizations.contains(optimization);
+    }
+
+    /**
+     * The variables read by an expression.
+     */
+    private static Set<String> reads(ParseTree tree) {
+        Set<String> reads = new HashSet<>();
+        new LittleBasicBaseVisitor<Void>() {
+            @Override
+            public Void visitId(LittleBasicParser.IdContext ctx) {
+                reads.add(ctx.getText());
+                return null;
+            }
+
+            @Override
+            public Void visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+                reads.add(Symbols.array(ctx.ID().getText()));
+                return super.visitElementExpr(ctx);
+            }
+        }.visit(tree);
+        return reads;
+    }
+
+    /**
+     * The variables assigned anywhere in a statement.
+     */
+    private static Set<String> assigned(ParserRuleContext statement) {
+        Set<String> assigned = new HashSet<>();
+        new LittleBasicBaseVisitor<Void>() {
+            @Override
+            public Void visitLetstmt(LittleBasicParser.LetstmtContext ctx) {
+                String name = ctx.vardecl().varname().ID().getText();
+                assigned.add(ctx.subscript() != null ? Symbols.array(name) : name);
+                return null;
+            }
+
+            @Override
+            public Void visitInputstmt(LittleBasicParser.InputstmtContext ctx) {
+                assigned.add(ctx.vardecl().getText());
+                return null;
+            }
+
+            @Override
+            public Void visitDimstmt(LittleBasicParser.DimstmtContext ctx) {
+                assigned.add(Symbols.array(ctx.vardecl().varname().ID().getText()));
+                return null;
+            }
+
+            @Override
+            public Void visitForstmt(LittleBasicParser.ForstmtContext ctx) {
+                assigned.add(ctx.vardecl().varname().ID().getText());
+                return super.visitForstmt(ctx);
+            }
+        }.visit(statement);
+        return assigned;
+    }
+
+    private Loop enterLoop(ParserRuleContext ctx) {
+        Loop loop = new Loop(assigned(ctx));
+        loops.push(loop);
+        return loop;
+    }
+
+    private void exitLoop() {
+        loops.pop();
+    }
+
+    /**
+     * The outermost loop in which none of the variables is assigned, or null.
+     */
+    private Loop invariantLoop(Set<String> reads) {
+        Loop outermost = null;
+        for (Loop loop : loops) {
+            if (!Collections.disjoint(loop.assigned, reads)) {
+                break;
+            }
+            outermost = loop;
+        }
+        return outermost;
+    }
+
+    private class StatementCompiler extends LittleBasicBaseVisitor<StmtNode> {
+
+        @Override
+        public StmtNode visitLetstmt(LittleBasicParser.LetstmtContext ctx) {
+            if (ctx.subscript() != null) {
+                return store(ctx);
+            }
+            return new Nodes.Let(slot(ctx.vardecl().varname()), expressions.visit(ctx.expression()));
+        }
+
+        private StmtNode store(LittleBasicParser.LetstmtContext ctx) {
+            int slot = symbols.slot(Symbols.array(ctx.vardecl().varname().ID().getText()));
+            ExprNode index = expressions.visit(ctx.subscript().expression());
+            ExprNode expr = expressions.visit(ctx.expression());
+            return typeOf(ctx.expression()) == Type.NUMBER
+                    ? new Nodes.StoreNumber(slot, index, expr)
+                    : new Nodes.Store(slot, index, expr);
+        }
+
+        @Override
+        public StmtNode visitDimstmt(LittleBasicParser.DimstmtContext ctx) {
+            String name = ctx.vardecl().varname().ID().getText();
+            return new Nodes.Dim(symbols.slot(Symbols.array(name)), name, expressions.visit(ctx.expression()),
+                    ctx.vardecl().varsuffix() != null);
+        }
+
+        @Override
+        public StmtNode visitPrintstmt(LittleBasicParser.PrintstmtContext ctx) {
+            ExprNode expr = expressions.visit(ctx.expression());
+            return typeOf(ctx.expression()) == Type.NUMBER ? new Nodes.PrintNumber(expr) : new Nodes.Print(expr);
+        }
+
+        @Override
+        public StmtNode visitInputstmt(LittleBasicParser.InputstmtContext ctx) {
+            return new Nodes.Input(unquote(ctx.string().getText()), symbols.slot(ctx.vardecl().getText()));
+        }
+
+        @Override
+        public StmtNode visitIfstmt(LittleBasicParser.IfstmtContext ctx) {
+            int branches = 1 + ctx.elifstmt().size();
+            List<ExprNode> conditions = new ArrayList<>();
+            List<StmtNode> blocks = new ArrayList<>();
+            StmtNode elseBlock = null;
+            boolean taken = false;
+            for (int i = 0; i < branches; i++) {
+                LittleBasicParser.ExpressionContext conditionCtx =
+                        i == 0 ? ctx.expression() : ctx.elifstmt(i - 1).expression();
+                ExprNode condition = expressions.visit(conditionCtx);
+                StmtNode block = compileBlock(i == 0 ? ctx.block() : ctx.elifstmt(i - 1).block());
+                if (taken) {
+                    continue;
+                }
+                if (enabled(Interpreter.Optimization.PRUNE_BRANCHES) && condition.isConstant()) {
+                    Value value = condition.eval(null);
+                    if (value.isNumber()) {
+                        if (value.isTrue()) {
+                            // the rest is never reached
+                            elseBlock = block;
+                            taken = true;
+                        }
+                        continue;
+                    }
+                }
+                conditions.add(condition);
+                blocks.add(block);
+            }
+            if (ctx.elsestmt() != null) {
+                StmtNode block = compileBlock(ctx.elsestmt().block());
+                if (!taken) {
+                    elseBlock = block;
+                }
+            }
+            if (conditions.isEmpty()) {
+                return elseBlock;
+            }
+            return new Nodes.If(conditions.toArray(new ExprNode[conditions.size()]),
+                    blocks.toArray(new StmtNode[blocks.size()]), elseBlock);
+        }
+
+        @Override
+        public StmtNode visitForstmt(LittleBasicParser.ForstmtContext ctx) {
+            ExprNode step = ctx.expression(2) != null
+                    ? expressions.visit(ctx.expression(2))
+                    : new Nodes.Const(Value.of(1));
+            ExprNode start = expressions.visit(ctx.expression(0));
+            ExprNode end = expressions.visit(ctx.expression(1));
+            Loop loop = enterLoop(ctx);
+            try {
+                return new Nodes.For(slot(ctx.vardecl().varname()), start, end, step,
+                        compileBlock(ctx.block()), loop.invariants());
+            } finally {
+                exitLoop();
+            }
+        }
+
+        @Override
+        public StmtNode visitWhilestmt(LittleBasicParser.WhilestmtContext ctx) {
+            Loop loop = enterLoop(ctx);
+            try {
+                ExprNode condition = expressions.visit(ctx.expression());
+                return new Nodes.While(condition, compileBlock(ctx.block()), loop.invariants());
+            } finally {
+                exitLoop();
+            }
+        }
+
+        @Override
+        public StmtNode visitRepeatstmt(LittleBasicParser.RepeatstmtContext ctx) {
+            Loop loop = enterLoop(ctx);
+            try {
+                StmtNode body = compileBlock(ctx.block());
+                return new Nodes.Repeat(body, expressions.visit(ctx.expression()), loop.invariants());
+            } finally {
+                exitLoop();
+            }
+        }
+
+        @Override
+        public StmtNode visitContinuestmt(LittleBasicParser.ContinuestmtContext ctx) {
+            return new Nodes.Continue();
+        }
+
+        @Override
+        public StmtNode visitExitstmt(LittleBasicParser.ExitstmtContext ctx) {
+            return new Nodes.Exit();
+        }
+    }
+
+    private class ExpressionCompiler extends LittleBasicBaseVisitor<ExprNode> {
+
+        /** Inside an expression that is already an invariant. */
+        private boolean hoisting;
+
+        @Override
+        public ExprNode visit(ParseTree tree) {
+            if (!(tree instanceof LittleBasicParser.ExpressionContext)
+                    || tree instanceof LittleBasicParser.IdContext
+                    || tree instanceof LittleBasicParser.NumberContext
+                    || tree instanceof LittleBasicParser.StringContext
+                    || tree instanceof LittleBasicParser.ParenExprContext) {
+                return super.visit(tree);
+            }
+            Set<String> reads = reads(tree);
+            if (reads.isEmpty()) {
+                return fold(super.visit(tree));
+            }
+            Loop loop = !hoisting && enabled(Interpreter.Optimization.HOIST_INVARIANTS) ? invariantLoop(reads) : null;
+            if (loop == null) {
+                return super.visit(tree);
+            }
+            ExprNode node;
+            hoisting = true;
+            try {
+                node = super.visit(tree);
+            } finally {
+                hoisting = false;
+            }
+            int index = invariants++;
+            loop.invariants.add(index);
+            return new Nodes.Invariant(node, index);
+        }
+
+        private ExprNode fold(ExprNode node) {
+            if (!enabled(Interpreter.Optimization.FOLD_CONSTANTS) || node.isConstant()) {
+                return node;
+            }
+            Value value;
+            try {
+                value = node.eval(null);
+            } catch (RuntimeException e) {
+                return node; // fails when it runs
+            }
+            return value != null && value.isLong()
+                    ? new Nodes.NumConst(value.internalNumber())
+                    : new Nodes.Const(value);
+        }
+
+        @Override
+        public ExprNode visitString(LittleBasicParser.StringContext ctx) {
+            return new Nodes.Const(new Value(unquote(ctx.getText())));
+        }
+
+        @Override
+        public ExprNode visitNumber(LittleBasicParser.NumberContext ctx) {
+            Value value = Value.parse(ctx.getText(), doubles);
+            return value.isLong() ? new Nodes.NumConst(value.internalNumber()) : new Nodes.Const(value);
+        }
+
+        @Override
+        public ExprNode visitId(LittleBasicParser.IdContext ctx) {
+            int slot = symbols.slot(ctx.getText());
+            return types != null && types.typeOf(ctx.getText()) == Type.NUMBER
+                    ? new Nodes.NumVar(slot)
+                    : new Nodes.Var(slot);
+        }
+
+        @Override
+        public ExprNode visitParenExpr(LittleBasicParser.ParenExprContext ctx) {
+            return visit(ctx.expression());
+        }
+
+        @Override
+        public ExprNode visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+            int slot = symbols.slot(Symbols.array(ctx.ID().getText()));
+            ExprNode index = visit(ctx.expression());
+            return typeOf(ctx) == Type.NUMBER ? new Nodes.NumElement(slot, index) : new Nodes.Element(slot, index);
+        }
+
+        @Override
+        public ExprNode visitMulDivExpr(LittleBasicParser.MulDivExprContext ctx) {
+            ExprNode left = visit(ctx.expression(0));
+            ExprNode right = visit(ctx.expression(1));
+            if (numbers(ctx.expression(0), ctx.expression(1))) {
+                if (ctx.op.getType() == LBExpressionParser.MUL) {
+                    return fitsInLong(ctx) ? new Nodes.NumMulInRange(left, right) : new Nodes.NumMul(left, right);
+                } else if (ctx.op.getType() == LBExpressionParser.DIV) {
+                    return new Nodes.NumDiv(left, right);
+                } else {
+                    return new Nodes.NumMod(left, right);
+                }
+            }
+            if (ctx.op.getType() == LBExpressionParser.MUL) {
+                return new Nodes.Mul(left, right);
+            } else if (ctx.op.getType() == LBExpressionParser.DIV) {
+                return new Nodes.Div(left, right);
+            } else {
+                return new Nodes.Mod(left, right);
+            }
+        }
+
+        @Override
+        public ExprNode visitAddSubExpr(LittleBasicParser.AddSubExprContext ctx) {
+            ExprNode left = visit(ctx.expression(0));
+            ExprNode right = visit(ctx.expression(1));
+            Type leftType = typeOf(ctx.expression(0));
+            Type rightType = typeOf(ctx.expression(1));
+            if (leftType == Type.NUMBER && rightType == Type.NUMBER) {
+                if (fitsInLong(ctx)) {
+                    return ctx.op.getType() == LBExpressionParser.ADD
+                            ? new Nodes.NumAddInRange(left, right)
+                            : new Nodes.NumSubInRange(left, right);
+                }
+                return ctx.op.getType() == LBExpressionParser.ADD
+                        ? new Nodes.NumAdd(left, right)
+                        : new Nodes.NumSub(left, right);
+            }
+            if (ctx.op.getType() == LBExpressionParser.ADD && typeOf(ctx) == Type.STRING) {
+                return new Nodes.Concat(left, leftType == Type.NUMBER, right, rightType == Type.NUMBER);
+            }
+            if (ctx.op.getType() == LBExpressionParser.ADD) {
+                return new Nodes.Add(left, right);
+            } else {
+                return new Nodes.Sub(left, right);
+            }
+        }
+
+        @Override
+        public ExprNode visitRelExpr(LittleBasicParser.RelExprContext ctx) {
+            ExprNode left = visit(ctx.expression(0));
+            ExprNode right = visit(ctx.expression(1));
+            if (numbers(ctx.expression(0), ctx.expression(1))) {
+                switch (ctx.op.getType()) {
+                    case LBExpressionParser.GT:
+                        return new Nodes.NumGt(left, right);
+                    case LBExpressionParser.GTE:
+                        return new Nodes.NumGte(left, right);
+                    case LBExpressionParser.LT:
+                        return new Nodes.NumLt(left, right);
+                    case LBExpressionParser.LTE:
+                        return new Nodes.NumLte(left, right);
+                    case LBExpressionParser.EQ:
+                        return new Nodes.NumEq(left, right);
+                    default:
+                        return new Nodes.NumNeq(left, right);
+                }
+            }
+            if (typeOf(ctx.expression(0)) == Type.STRING && typeOf(ctx.expression(1)) == Type.STRING) {
+                if (ctx.op.getType() == LBExpressionParser.EQ) {
+                    return new Nodes.StrEq(left, right);
+                } else if (ctx.op.getType() == LBExpressionParser.NEQ) {
+                    return new Nodes.StrNeq(left, right);
+                }
+            }
+            switch (ctx.op.getType()) {
+                case LBExpressionParser.GT:
+                    return new Nodes.Gt(left, right);
+                case LBExpressionParser.GTE:
+                    return new Nodes.Gte(left, right);
+                case LBExpressionParser.LT:
+                    return new Nodes.Lt(left, right);
+                case LBExpressionParser.LTE:
+                    return new Nodes.Lte(left, right);
+                case LBExpressionParser.EQ:
+                    return new Nodes.Eq(left, right);
+                default:
+                    return new Nodes.Neq(left, right);
+            }
+        }
+
+        @Override
+        public ExprNode visitNotExpr(LittleBasicParser.NotExprContext ctx) {
+            ExprNode expr = visit(ctx.expression());
+            return typeOf(ctx.expression()) == Type.NUMBER ? new Nodes.NumNot(expr) : new Nodes.Not(expr);
+        }
+
+        @Override
+        public ExprNode visitAndExpr(LittleBasicParser.AndExprContext ctx) {
+            ExprNode left = visit(ctx.expression(0));
+            ExprNode right = visit(ctx.expression(1));
+            return numbers(ctx.expression(0), ctx.expression(1))
+                    ? new Nodes.NumAnd(left, right, !enabled(Interpreter.Optimization.SHORT_CIRCUIT))
+                    : new Nodes.And(left, right, !enabled(Interpreter.Optimization.SHORT_CIRCUIT));
+        }
+
+        @Override
+        public ExprNode visitOrExpr(LittleBasicParser.OrExprContext ctx) {
+            ExprNode left = visit(ctx.expression(0));
+            ExprNode right = visit(ctx.expression(1));
+            return numbers(ctx.expression(0), ctx.expression(1))
+                    ? new Nodes.NumOr(left, right, !enabled(Interpreter.Optimization.SHORT_CIRCUIT))
+                    : new Nodes.Or(left, right, !enabled(Interpreter.Optimization.SHORT_CIRCUIT));
+        }
+
+        @Override
+        public ExprNode visitExpExpr(LittleBasicParser.ExpExprContext ctx) {
+            ExprNode left = visit(ctx.expression(0));
+            ExprNode right = visit(ctx.expression(1));
+            if (!numbers(ctx.expression(0), ctx.expression(1))) {
+                return new Nodes.Exp(left, right);
+            }
+            if (enabled(Interpreter.Optimization.REDUCE_STRENGTH)) {
+                if (constantLong(right) == 2) {
+                    return new Nodes.NumSquare(left);
+                }
+                long base = constantLong(left);
+                if (base > 1 && Long.bitCount(base) == 1) {
+                    return new Nodes.NumShiftPower(Long.numberOfTrailingZeros(base), right);
+                }
+            }
+            return new Nodes.NumExp(left, right);
+        }
+
+        @Override
+        public ExprNode visitLenfunc(LittleBasicParser.LenfuncContext ctx) {
+            ExprNode arg = visit(ctx.expression());
+            return typeOf(ctx.expression()) == Type.STRING ? new Nodes.StrLen(arg) : new Nodes.Len(arg);
+        }
+
+        @Override
+        public ExprNode visitValfunc(LittleBasicParser.ValfuncContext ctx) {
+            ExprNode arg = visit(ctx.expression());
+            // VAL of a number is the number
+            return typeOf(ctx.expression()) == Type.NUMBER ? arg : new Nodes.Val(arg, doubles);
+        }
+
+        /**
+         * The value of a constant that fits in a long, or 0 for anything else.
+         */
+        private long constantLong(ExprNode node) {
+            if (!node.isConstant()) {
+                return 0;
+            }
+            Value value = node.eval(null);
+            return value.isLong() ? value.internalNumber() : 0;
+        }
+
+        @Override
+        public ExprNode visitIsnanfunc(LittleBasicParser.IsnanfuncContext ctx) {
+            return new Nodes.IsNaN(visit(ctx.expression()));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.littlebasic;
+
+/**
+ * How a statement completed. CONTINUE and EXIT travel up through the
+ * enclosing blocks until a loop consumes them.
+ */
+enum Completion {
+    NORMAL,
+    CONTINUE,
+    EXIT
+}
@@ -1,8 +0,0 @@
-package org.littlebasic;
-
-/**
- * Forces a continue in a loop.
- */
-public class ContinueLoopException extends RuntimeException {
-
-}
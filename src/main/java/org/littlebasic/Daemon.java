@@ -0,0 +1,235 @@
+package org.littlebasic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a warm interpreter resident and runs what thin clients send it over
+ * a loopback socket, so they pay neither the JVM startup nor the loading of
+ * the parser. Every connection is a session of its own, on its own thread.
+ *
+ * A session starts with a request line. {@code RUN <n>} is followed by the
+ * n bytes of a program, at most {@link #MAX_PROGRAM_BYTES}, and whatever
+ * comes after them is the program's stdin. {@code REPL} starts a {@link Repl} reading the rest of the input.
+ * The daemon answers with frames: a channel byte, 1 for stdout and 2 for
+ * stderr, the length of the data as an int and the data. The last frame
+ * has channel 0 and an int status instead, 1 if the session wrote to
+ * stderr and 0 otherwise. Programs, the REPL and the program streams are
+ * in the daemon's {@link Interpreter#CHARSET}.
+ */
+final class Daemon implements Closeable {
+
+    static final int DEFAULT_PORT = 6502;
+    static final int MAX_PROGRAM_BYTES = 64 * 1024 * 1024;
+
+    private static final int EXIT = 0;
+    private static final int STDOUT = 1;
+    private static final int STDERR = 2;
+
+    private final Interpreter interpreter;
+    private final ServerSocket server;
+    private final ExecutorService sessions = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "littlebasic-session");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Listens on the given port of the loopback address, or on any free one if it's 0.
+     */
+    Daemon(Interpreter interpreter, int port) throws IOException {
+        this.interpreter = interpreter;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts sessions until the daemon is closed.
+     */
+    void serve() throws IOException {
+        while (true) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            sessions.execute(() -> session(socket));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        sessions.shutdownNow();
+    }
+
+    private void session(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            FrameStream stdout = new FrameStream(frames, STDOUT);
+            FrameStream stderr = new FrameStream(frames, STDERR);
+            String request = readLine(in);
+            try {
+                if (request.startsWith("RUN ")) {
+                    int length = Integer.parseInt(request.substring(4).trim());
+                    if (length < 0 || length > MAX_PROGRAM_BYTES) {
+                        throw new NumberFormatException("Program length out of range: " + length);
+                    }
+                    byte[] program = new byte[length];
+                    new DataInputStream(in).readFully(program);
+                    interpreter.run(null, new ByteArrayInputStream(program), in, stdout, stderr);
+                } else if (request.equals("REPL")) {
+                    BufferedReader lines = new BufferedReader(new InputStreamReader(in, Interpreter.CHARSET));
+                    new Repl(interpreter, lines, stdout, stderr, true).run();
+                } else {
+                    new PrintStream(stderr, true).println("Unknown request: " + request);
+                }
+            } catch (NumberFormatException | EOFException e) {
+                new PrintStream(stderr, true).println("Bad request: " + request);
+            } catch (RuntimeException e) {
+                new PrintStream(stderr, true).println("Error running program: " + e);
+            }
+            synchronized (frames) {
+                frames.writeByte(EXIT);
+                frames.writeInt(stderr.count > 0 ? 1 : 0);
+                frames.flush();
+            }
+        } catch (IOException e) {
+            // the client went away, nobody is left to tell
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.append((char) b);
+        }
+        return line.toString().trim();
+    }
+
+    /**
+     * Connects to the daemon on the given port, runs the program, or a REPL
+     * session if it's null, and copies the frames it answers with to the
+     * given streams. Stdin is sent along as it's read, until it ends.
+     *
+     * @return the status the daemon ended the session with
+     */
+    static int connect(int port, byte[] program, InputStream stdin, OutputStream stdout, OutputStream stderr)
+            throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream request = socket.getOutputStream();
+            if (program != null) {
+                request.write(("RUN " + program.length + "\n").getBytes(StandardCharsets.US_ASCII));
+                request.write(program);
+            } else {
+                request.write("REPL\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            request.flush();
+            Thread input = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try {
+                    int count;
+                    while ((count = stdin.read(buffer)) != -1) {
+                        request.write(buffer, 0, count);
+                        request.flush();
+                    }
+                    socket.shutdownOutput();
+                } catch (IOException e) {
+                    // the session is over
+                }
+            }, "littlebasic-stdin");
+            input.setDaemon(true);
+            input.start();
+
+            DataInputStream frames = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            byte[] data = new byte[8192];
+            while (true) {
+                int channel = frames.readByte();
+                int length = frames.readInt();
+                if (channel == EXIT) {
+                    return length;
+                }
+                OutputStream out = channel == STDERR ? stderr : stdout;
+                while (length > 0) {
+                    int count = Math.min(length, data.length);
+                    frames.readFully(data, 0, count);
+                    out.write(data, 0, count);
+                    length -= count;
+                }
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Sends what's written to it to the client as frames of one channel.
+     */
+    private static final class FrameStream extends OutputStream {
+        private final DataOutputStream frames;
+        private final int channel;
+        long count;
+
+        FrameStream(DataOutputStream frames, int channel) {
+            this.frames = frames;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (frames) {
+                frames.writeByte(channel);
+                frames.writeInt(len);
+                frames.write(b, off, len);
+                frames.flush();
+            }
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // the socket is closed by the session, not by a program
+        }
+    }
+}
@@ -17,6 +17,13 @@ public class ErrorListener extends BaseErrorListener {
         this.stderr = stderr;
     }
 
+    /**
+     * Prints to the given stderr from now on, so that the listener can be reused.
+     */
+    void setStderr(PrintStream stderr) {
+        this.stderr = stderr;
+    }
+
     @Override
     public void syntaxError(Recognizer<?, ?> recognizer,
                             Object offendingSymbol,
@@ -0,0 +1,66 @@
+package org.littlebasic;
+
+import java.util.Arrays;
+
+/**
+ * The state of a single run of a compiled program: the memory, the I/O
+ * streams, the values of the loop invariant expressions (see
+ * {@link Nodes.Invariant}), the profile if the program is profiled,
+ * how many statements and loop iterations ran (see {@link Metrics}) and
+ * the budget they run against, if any.
+ */
+class ExecutionContext {
+
+    final Memory memory;
+    final LineReader stdin;
+    final Output stdout;
+    final Profile profile;
+    Value[] invariants;
+    final Budget budget;
+    long statements;
+    long iterations;
+    /** Statements and iterations past these counts need {@link #checkBudget}. */
+    long statementCheck;
+    long iterationCheck;
+
+    ExecutionContext(Memory memory, LineReader stdin, Output stdout, int invariants, Profile profile,
+                     Budget budget) {
+        this.memory = memory;
+        this.stdin = stdin;
+        this.stdout = stdout;
+        this.invariants = new Value[invariants];
+        this.profile = profile;
+        this.budget = budget;
+        this.statementCheck = Budget.nextStatementCheck(budget, 0);
+        this.iterationCheck = Budget.nextIterationCheck(budget, 0);
+    }
+
+    /**
+     * Checks the budget once a count passed its threshold and sets the next ones.
+     *
+     * @throws ExecutionLimitException located at the given statement if the run must stop
+     */
+    void checkBudget(StmtNode statement) {
+        budget.check(statements, iterations, memory, statement.line, statement.posInLine);
+        statementCheck = Budget.nextStatementCheck(budget, statements);
+        iterationCheck = Budget.nextIterationCheck(budget, iterations);
+    }
+
+    /**
+     * Makes room for invariants compiled since this context was created.
+     */
+    void growInvariants(int count) {
+        if (count > invariants.length) {
+            invariants = Arrays.copyOf(invariants, count);
+        }
+    }
+
+    /**
+     * Forgets the values of the given invariants, done every time their loop starts.
+     */
+    void clearInvariants(int[] indexes) {
+        for (int index : indexes) {
+            invariants[index] = null;
+        }
+    }
+}
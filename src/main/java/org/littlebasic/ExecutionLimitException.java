@@ -0,0 +1,32 @@
+package org.littlebasic;
+
+/**
+ * A run went over one of its {@link Limits} or was cancelled. The location
+ * is the one of the statement or loop that was running when it was noticed.
+ */
+public class ExecutionLimitException extends InterpreterException {
+
+    /**
+     * Why the run was stopped.
+     */
+    public enum Limit {
+        STATEMENTS,
+        ITERATIONS,
+        WALL_TIME,
+        MEMORY,
+        /** Not a limit, the run was stopped through its {@link Cancellation}. */
+        CANCELLED
+    }
+
+    private final Limit limit;
+
+    public ExecutionLimitException(Limit limit, String message, int line, int posInLine) {
+        super(message);
+        this.limit = limit;
+        setLocation(line, posInLine);
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+}
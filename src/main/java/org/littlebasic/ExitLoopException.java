@@ -1,7 +0,0 @@
-package org.littlebasic;
-
-/**
- * Forces exit from loop.
- */
-public class ExitLoopException extends RuntimeException {
-}
@@ -0,0 +1,35 @@
+package org.littlebasic;
+
+/**
+ * A compiled expression.
+ */
+abstract class ExprNode {
+
+    abstract Value eval(ExecutionContext ctx);
+
+    /**
+     * Evaluates to a number, throwing a {@link TypeException} if the value
+     * isn't one, or a {@link Value.Overflow} if it doesn't fit in a long.
+     * Nodes known to produce numbers skip the check and the value.
+     */
+    long evalNumber(ExecutionContext ctx) {
+        return eval(ctx).checkedNumber();
+    }
+
+    /**
+     * Evaluates a condition of IF, WHILE, REPEAT, AND, OR or NOT, throwing a
+     * {@link TypeException} if it isn't a number. Comparisons and the logical
+     * operators answer straight away, without a value or a 1 or 0.
+     */
+    boolean evalCondition(ExecutionContext ctx) {
+        return eval(ctx).isTrue();
+    }
+
+    /**
+     * Whether the node always evaluates to the same value, without a context.
+     */
+    boolean isConstant() {
+        return false;
+    }
+
+}
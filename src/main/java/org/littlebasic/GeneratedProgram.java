@@ -0,0 +1,223 @@
+package org.littlebasic;
+
+/**
+ * Base class of the programs compiled to JVM classes by {@link BytecodeGenerator}.
+ * The generated classes live in their own class loader, so everything they
+ * need from the interpreter is here. Not meant to be used otherwise.
+ *
+ * A new instance runs every time, the generated code keeps the variables
+ * in locals and stores them into the memory when the program ends. Arrays
+ * stay in the memory, the helpers reach them by slot.
+ */
+public abstract class GeneratedProgram {
+
+    private ExecutionContext ctx;
+
+    protected GeneratedProgram() {
+    }
+
+    final void run(ExecutionContext ctx) {
+        this.ctx = ctx;
+        execute();
+    }
+
+    protected abstract void execute();
+
+    protected final void store(int slot, Value value) {
+        ctx.memory.assign(slot, value);
+    }
+
+    protected final void dim(int slot, String name, Value size, boolean strings) {
+        ctx.memory.dim(slot, new Array(name, Array.length(name, size), strings));
+    }
+
+    /**
+     * Checks an index of the array in the slot, before the value stored at it is evaluated.
+     */
+    protected final int index(int slot, long index) {
+        return ctx.memory.array(slot).index(index);
+    }
+
+    protected final int index(int slot, Value index) {
+        return ctx.memory.array(slot).index(index);
+    }
+
+    protected final void store(int slot, int index, long value) {
+        ctx.memory.array(slot).set(index, value);
+    }
+
+    protected final void store(int slot, int index, Value value) {
+        ctx.memory.array(slot).set(index, value);
+    }
+
+    /**
+     * An element of an array of integers.
+     *
+     * @throws Value.Overflow if it doesn't fit in a long
+     */
+    protected final long elementNumber(int slot, long index) {
+        Array array = ctx.memory.array(slot);
+        return array.number(array.index(index));
+    }
+
+    protected final Value element(int slot, long index) {
+        Array array = ctx.memory.array(slot);
+        return array.get(array.index(index));
+    }
+
+    protected final Value element(int slot, Value index) {
+        Array array = ctx.memory.array(slot);
+        return array.get(array.index(index));
+    }
+
+    protected final void print(long value) {
+        ctx.stdout.println(value);
+    }
+
+    protected final void print(Value value) {
+        if (value.isLong()) {
+            ctx.stdout.println(value.internalNumber());
+        } else {
+            ctx.stdout.println(value.text());
+        }
+    }
+
+    protected final Value input(String prompt, int line, int posInLine) {
+        return ctx.stdin.input(ctx.stdout, prompt, line, posInLine);
+    }
+
+    protected static long number(Value value) {
+        return value.checkedNumber();
+    }
+
+    protected static Value value(String value) {
+        return new Value(value);
+    }
+
+    /**
+     * A number literal that isn't a long.
+     */
+    protected static Value literal(String text, boolean doubles) {
+        return Value.parse(text, doubles);
+    }
+
+    /**
+     * The value of a number variable, from its flag, 1 for a long and 2 for
+     * a wider number, and the local of each.
+     */
+    protected static Value variable(int flag, long number, Value wide) {
+        if (flag == 1) {
+            return Value.of(number);
+        }
+        if (flag == 2) {
+            return wide;
+        }
+        throw unassigned();
+    }
+
+    protected static Value concat(Value left, Value right) {
+        return left.concat(right.internalString());
+    }
+
+    protected static Value concat(Value left, long right) {
+        return left.concat(Long.toString(right));
+    }
+
+    protected static Value concat(long left, Value right) {
+        return new Value(Long.toString(left)).concat(right.internalString());
+    }
+
+    protected static boolean stringEquals(Value left, Value right) {
+        return left.stringEquals(right);
+    }
+
+    protected static boolean eq(Value left, Value right) {
+        return left.eq(right) == Value.TRUE;
+    }
+
+    protected static long add(long left, long right) {
+        return Value.addExact(left, right);
+    }
+
+    protected static long sub(long left, long right) {
+        return Value.subtractExact(left, right);
+    }
+
+    protected static long mul(long left, long right) {
+        return Value.multiplyExact(left, right);
+    }
+
+    protected static long div(long left, long right) {
+        return Value.divideExact(left, right);
+    }
+
+    protected static long pow(long base, long exponent) {
+        return Value.power(base, exponent);
+    }
+
+    protected static long square(long base) {
+        return Value.square(base);
+    }
+
+    protected static long shiftPower(int log2, long exponent) {
+        return Value.shiftPower(log2, exponent);
+    }
+
+    /**
+     * LEN of a value known to be a string.
+     */
+    protected static long length(Value value) {
+        return value.stringLength();
+    }
+
+    protected static long len(Value value) {
+        if (value.isString()) {
+            return value.stringLength();
+        }
+        throw new TypeException("Couldn't evaluate LEN(). Argument is not a string");
+    }
+
+    protected static Value val(Value value, boolean doubles) {
+        if (!value.isString()) {
+            return value;
+        }
+        Value number = Value.parse(value.internalString(), doubles);
+        return number != null ? number : Value.NaN;
+    }
+
+    protected static Value forBound(Value value) {
+        return Value.forBound(value);
+    }
+
+    protected static boolean countsInLongs(long last, long step) {
+        return Value.countsInLongs(last, step);
+    }
+
+    /**
+     * The test of a FOR loop counting with values.
+     */
+    protected static boolean notAfter(Value counter, Value last) {
+        return counter.lte(last) == Value.TRUE;
+    }
+
+    /**
+     * Reading a variable that was never assigned, fails like the other modes do.
+     */
+    protected static NullPointerException unassigned() {
+        return new NullPointerException();
+    }
+
+    /**
+     * Reading a number variable as a long when it isn't one: either it was
+     * never assigned, or it holds a wider number and the statement has to
+     * run again on values.
+     */
+    protected static RuntimeException notLong(int flag) {
+        return flag == 0 ? unassigned() : Value.OVERFLOW;
+    }
+
+    protected static TypeException locate(TypeException e, int line, int posInLine) {
+        e.setLocation(line, posInLine);
+        return e;
+    }
+}
@@ -0,0 +1,15 @@
+package org.littlebasic;
+
+import java.io.IOException;
+
+/**
+ * The program input couldn't be read by INPUT. Located at the statement.
+ */
+public class InputException extends InterpreterException {
+
+    public InputException(IOException cause, int line, int posInLine) {
+        super("Couldn't read input: " + cause.getMessage());
+        initCause(cause);
+        setLocation(line, posInLine);
+    }
+}
@@ -1,72 +1,450 @@
 package org.littlebasic;
 
-import basic.LittleBasicLexer;
 import basic.LittleBasicParser;
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.BailErrorStrategy;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.InputMismatchException;
-import org.antlr.v4.runtime.misc.ParseCancellationException;
-import org.antlr.v4.runtime.tree.ParseTree;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The entry point of the interpreter.
  */
 public class Interpreter {
 
-    private InputStream stdin;
-    private OutputStream stdout;
-    private OutputStream stderr;
-    private PrintStream stdoutPrint;
-    private PrintStream stderrPrint;
-    private Memory memory;
+    /**
+     * The charset programs, their input and their output are read and
+     * written in: the platform's, the same for a file run by the CLI, a
+     * REPL and a daemon session.
+     */
+    static final Charset CHARSET = Charset.defaultCharset();
+
+    /**
+     * How the parsed program gets executed.
+     */
+    public enum Mode {
+        /** Compile the parse tree into executable nodes and run those. */
+        COMPILED,
+        /** Walk the parse tree with {@link LittleBasicVisitor}. Kept as the reference implementation. */
+        VISITOR,
+        /**
+         * Parse, compile and run one top level statement at a time, for very
+         * large programs. Nothing is cached, see {@link StreamingExecutor}.
+         */
+        STREAMING,
+        /**
+         * Compile the program into a JVM class, see {@link BytecodeGenerator}.
+         * Programs too large for that run as nodes, like in {@link #COMPILED}.
+         */
+        BYTECODE
+    }
+
+    /**
+     * When PRINT output reaches the output stream.
+     */
+    public enum Flush {
+        /** Buffered, written out when the buffer fills, before INPUT and when the program ends. */
+        BUFFERED,
+        /** Flushed after every line, for interactive use. */
+        LINE
+    }
+
+    /**
+     * Optimizations done by the compiler in {@link Mode#COMPILED} and {@link Mode#STREAMING}
+     * mode. All of them are on by default, they can be switched off one by one to compare
+     * the results.
+     */
+    public enum Optimization {
+        /** Evaluate expressions without variables once, at compile time. */
+        FOLD_CONSTANTS,
+        /**
+         * Evaluate expressions that read no variable assigned in their loop only once
+         * every time the loop runs.
+         */
+        HOIST_INVARIANTS,
+        /** Drop IF branches whose condition is a constant false, and what follows a constant true. */
+        PRUNE_BRANCHES,
+        /** Compute X ^ 2 as X * X, and 2 ^ X, 4 ^ X... as shifts. Also done in {@link Mode#BYTECODE}. */
+        REDUCE_STRENGTH,
+        /**
+         * Evaluate the right side of AND and OR only when the left one doesn't decide. Unlike
+         * the others this one applies in every mode, and it changes what fails: switched off,
+         * an error in the right side, like a division by zero, is raised whatever the left side
+         * is, for scripts written when both sides were always evaluated.
+         */
+        SHORT_CIRCUIT
+    }
+
+    /**
+     * How numbers that aren't integers are kept. Integers are exact whatever
+     * the choice: longs while they fit, arbitrary precision past that.
+     */
+    public enum Fractions {
+        /** Exact decimals, divisions that don't end rounded to 34 digits. */
+        DECIMAL,
+        /** Doubles, faster but rounded in binary like in most languages. */
+        DOUBLE
+    }
+
+    private final InputStream stdin;
+    private final OutputStream stdout;
+    private final PrintStream stderrPrint;
+    private final ProgramCache cache;
+    private final RunState.Pool states = new RunState.Pool(Runtime.getRuntime().availableProcessors());
+    private volatile Mode mode = Mode.COMPILED;
+    private volatile Flush flush = Flush.BUFFERED;
+    private volatile Set<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+    private volatile Fractions fractions = Fractions.DECIMAL;
+    private volatile boolean profiling;
+    private volatile Limits limits = Limits.none();
+    private final AtomicReference<Memory> memory = new AtomicReference<>();
+    private volatile Profile profile;
 
     public Interpreter(InputStream stdin, OutputStream stdout, OutputStream stderr) {
+        this(stdin, stdout, stderr, new ProgramCache());
+    }
+
+    /**
+     * Creates an interpreter that keeps its compiled programs in the given cache,
+     * which can be shared with other interpreters.
+     */
+    public Interpreter(InputStream stdin, OutputStream stdout, OutputStream stderr, ProgramCache cache) {
         this.stdin = stdin;
         this.stdout = stdout;
-        this.stderr = stderr;
-        this.stdoutPrint = new PrintStream(stdout, true);
         this.stderrPrint = new PrintStream(stderr, true);
+        this.cache = cache;
     }
 
+    /**
+     * Runs the program with the streams given to the constructor. Its memory
+     * is then available through {@link #getMemory()}, and its profile through
+     * {@link #getProfile()} when profiling. The memory of the previous run is
+     * cleared and reused if it fits the program.
+     */
     public Value run(InputStream progrIn) throws IOException {
-        ANTLRInputStream input = new ANTLRInputStream(progrIn);
-        LittleBasicLexer lexer = new LittleBasicLexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        LittleBasicParser parser = new LittleBasicParser(tokens);
-        parser.setErrorHandler(new BailErrorStrategy());
-        parser.removeErrorListeners();
-        parser.addErrorListener(new ErrorListener(stderrPrint));
+        return run(null, progrIn);
+    }
+
+    /**
+     * Same as {@link #run(InputStream)}, counting the run in the {@link Metrics}
+     * of the given program name as well as in the total.
+     */
+    public Value run(String name, InputStream progrIn) throws IOException {
+        return run(name, ProgramSource.of(progrIn));
+    }
+
+    /**
+     * Same as {@link #run(InputStream)} with the program in the given file, counted
+     * in the {@link Metrics} under its path. The file is memory-mapped and, if it's
+     * ASCII, lexed from the mapping without being copied onto the heap.
+     */
+    public Value run(Path file) throws IOException {
+        try (ProgramSource source = ProgramSource.of(file)) {
+            return run(file.toString(), source);
+        }
+    }
+
+    private Value run(String name, ProgramSource source) throws IOException {
+        Profile profile = profiling ? new Profile() : null;
+        // taken, so that runs at the same time don't clear each other's memory
+        Memory reused = memory.getAndSet(null);
+        memory.set(run(name, source, stdin, stdout, stderrPrint, profile, null, reused));
+        this.profile = profile;
+        return null;
+    }
+
+    /**
+     * Runs the program with its own memory and the given streams, and returns
+     * that memory, or null if the program couldn't be parsed. Runs share
+     * nothing but the cache of compiled programs, so one interpreter can be
+     * used from any number of threads at the same time. What a run needs
+     * besides its memory, like the output buffer, is pooled and reused by the
+     * next runs, the streams are never closed.
+     */
+    public Memory run(InputStream progrIn, InputStream stdin, OutputStream stdout, OutputStream stderr)
+            throws IOException {
+        return run(null, ProgramSource.of(progrIn), stdin, stdout, stderr, null, null, null);
+    }
+
+    /**
+     * Same as {@link #run(InputStream, InputStream, OutputStream, OutputStream)}, counting
+     * the run in the {@link Metrics} of the given program name as well as in the total.
+     */
+    public Memory run(String name, InputStream progrIn, InputStream stdin, OutputStream stdout,
+                      OutputStream stderr) throws IOException {
+        return run(name, ProgramSource.of(progrIn), stdin, stdout, stderr, null, null, null);
+    }
+
+    /**
+     * Same as {@link #run(String, InputStream, InputStream, OutputStream, OutputStream)} with
+     * the program in the given file, memory-mapped like in {@link #run(Path)}. The name
+     * can be null, then the run is only counted in the total {@link Metrics}.
+     */
+    public Memory run(String name, Path file, InputStream stdin, OutputStream stdout, OutputStream stderr)
+            throws IOException {
+        try (ProgramSource source = ProgramSource.of(file)) {
+            return run(name, source, stdin, stdout, stderr, null, null, null);
+        }
+    }
+
+    /**
+     * Same as {@link #run(InputStream, InputStream, OutputStream, OutputStream)}, and
+     * if the profile isn't null the run is profiled into it, whatever
+     * {@link #setProfiling} says. Programs run by {@link Mode#VISITOR} aren't profiled.
+     */
+    public Memory run(InputStream progrIn, InputStream stdin, OutputStream stdout, OutputStream stderr,
+                      Profile profile) throws IOException {
+        return run(null, ProgramSource.of(progrIn), stdin, stdout, stderr, profile, null, null);
+    }
+
+    /**
+     * Same as {@link #run(String, InputStream, InputStream, OutputStream, OutputStream)}, and
+     * the run stops with an {@link ExecutionLimitException} soon after the given handle
+     * gets cancelled from another thread.
+     */
+    public Memory run(String name, InputStream progrIn, InputStream stdin, OutputStream stdout,
+                      OutputStream stderr, Cancellation cancellation) throws IOException {
+        return run(name, ProgramSource.of(progrIn), stdin, stdout, stderr, null, cancellation, null);
+    }
+
+    /**
+     * @param reused the memory of a previous run, cleared and used for this one if it fits, or null
+     */
+    private Memory run(String name, ProgramSource source, InputStream stdin, OutputStream stdout,
+                       OutputStream stderr, Profile profile, Cancellation cancellation, Memory reused)
+            throws IOException {
+        Limits limits = this.limits;
+        Memory memory = null;
+        Metrics.Counts counts = new Metrics.Counts();
+        long allocated = Profile.allocatedBytes();
+        long started = 0;
+        Throwable failure = null;
+        RunState state = states.take();
+        state.start(stdin, stdout, flush);
         try {
-            ParseTree tree = parser.prog();
-            memory = new Memory();
-            LittleBasicVisitor eval = new LittleBasicVisitor(memory, stdin, stdoutPrint, stderrPrint);
-            eval.visit(tree);
-        } catch (InterpreterException e) {
-            stderrPrint.println(e.getMessage());
-        } catch (ParseCancellationException e) {
-            if (e.getCause() instanceof InputMismatchException) {
-                InputMismatchException inputEx = (InputMismatchException)e.getCause();
-                String msg = Utils.formatErrorMessage(
-                        inputEx.getOffendingToken().getLine(),
-                        inputEx.getOffendingToken().getCharPositionInLine(),
-                        "Syntax error");
-                stderrPrint.println(msg);
+            if (mode == Mode.VISITOR) {
+                LittleBasicParser.ProgContext tree = parse(name, source, printStream(stderr), state);
+                if (reused != null && reused.isLaidOutFor(null)) {
+                    reused.clear();
+                    memory = reused;
+                } else {
+                    memory = new Memory();
+                }
+                started = System.nanoTime();
+                LittleBasicVisitor eval = new LittleBasicVisitor(memory, state.input, state.output,
+                        printStream(stderr), Budget.start(limits, cancellation),
+                        optimizations.contains(Optimization.SHORT_CIRCUIT), fractions == Fractions.DOUBLE);
+                try {
+                    eval.visit(tree);
+                } finally {
+                    counts.statements = eval.statements();
+                    counts.iterations = eval.iterations();
+                    counts.printBytes = eval.printBytes();
+                }
+            } else if (mode == Mode.STREAMING) {
+                StreamingExecutor executor = new StreamingExecutor(optimizations, fractions, profile);
+                memory = executor.getMemory();
+                started = System.nanoTime();
+                executor.run(source.unbufferedChars(), state.input, state.output,
+                        new ErrorListener(printStream(stderr)), counts, Budget.start(limits, cancellation));
+            } else {
+                CompiledProgram program = compile(name, source, stderr, profile != null, state);
+                memory = program.newMemory(reused);
+                started = System.nanoTime();
+                program.run(memory, state.input, state.output, profile, counts, Budget.start(limits, cancellation));
             }
+        } catch (InterpreterException e) {
+            failure = e;
+            printStream(stderr).println(e.getMessage());
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            states.give(state);
+            Metrics.recordRun(name, counts, started != 0 ? System.nanoTime() - started : 0,
+                    Profile.allocatedBytes() - allocated, failure);
+        }
+        return memory;
+    }
+
+    /**
+     * Compiles the program, or returns it from the cache if the same source
+     * was compiled before.
+     *
+     * @throws SyntaxException if the program can't be parsed
+     */
+    public CompiledProgram compile(InputStream progrIn) throws IOException {
+        return compile(null, ProgramSource.of(progrIn));
+    }
+
+    /**
+     * Same as {@link #compile(InputStream)} with the program in the given file,
+     * memory-mapped like in {@link #run(Path)}.
+     */
+    public CompiledProgram compile(Path file) throws IOException {
+        try (ProgramSource source = ProgramSource.of(file)) {
+            return compile(file.toString(), source);
+        }
+    }
+
+    private CompiledProgram compile(String name, ProgramSource source) throws IOException {
+        RunState state = states.take();
+        try {
+            return compile(name, source, stderrPrint, profiling, state);
+        } finally {
+            states.give(state);
         }
-        return null;
     }
 
+    /**
+     * Profiled programs always run as nodes, so their statements can be measured.
+     * The program is parsed with the parser of the given state if it isn't cached.
+     */
+    private CompiledProgram compile(String name, ProgramSource source, OutputStream stderr, boolean profiled,
+                                    RunState state) throws IOException {
+        boolean bytecode = mode == Mode.BYTECODE && !profiled;
+        Set<Optimization> optimizations = this.optimizations;
+        Fractions fractions = this.fractions;
+        String key = source.key();
+        if (bytecode) {
+            key += ":bytecode";
+        }
+        if (optimizations.size() != Optimization.values().length) {
+            key += ":" + optimizations;
+        }
+        if (fractions != Fractions.DECIMAL) {
+            key += ":" + fractions;
+        }
+        if (profiled) {
+            key += ":profile";
+        }
+        CompiledProgram program = cache.get(key);
+        if (program == null) {
+            LittleBasicParser.ProgContext tree = parse(name, source, printStream(stderr), state);
+            Compiler compiler = new Compiler(optimizations, fractions, profiled);
+            Nodes.Program nodes = compiler.compile(tree);
+            program = bytecode
+                    ? new CompiledProgram(nodes, BytecodeGenerator.generate(tree, nodes.symbols, compiler.types(),
+                            optimizations, fractions))
+                    : new CompiledProgram(nodes);
+            cache.put(key, program);
+        }
+        return program;
+    }
+
+    private LittleBasicParser.ProgContext parse(String name, ProgramSource source, PrintStream stderr,
+                                                RunState state) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return state.parse(source.chars(), stderr);
+        } finally {
+            Metrics.recordParse(name, System.nanoTime() - start);
+        }
+    }
+
+    private static PrintStream printStream(OutputStream out) {
+        return out instanceof PrintStream ? (PrintStream) out : new PrintStream(out, true);
+    }
+
+    /**
+     * Parses a program that uses the whole grammar, so that the parser's
+     * shared prediction cache is warm before the first real program comes in.
+     * Meant to be called once at startup by long running embedders.
+     */
+    public static void warmUp() {
+        ProgramParser.warmUp();
+    }
+
+    public ProgramCache getCache() {
+        return cache;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Flush getFlush() {
+        return flush;
+    }
+
+    public void setFlush(Flush flush) {
+        this.flush = flush;
+    }
+
+    public Set<Optimization> getOptimizations() {
+        return Collections.unmodifiableSet(optimizations);
+    }
+
+    public void setOptimizations(Set<Optimization> optimizations) {
+        this.optimizations = optimizations.isEmpty()
+                ? EnumSet.noneOf(Optimization.class)
+                : EnumSet.copyOf(optimizations);
+    }
+
+    public Fractions getFractions() {
+        return fractions;
+    }
+
+    public void setFractions(Fractions fractions) {
+        this.fractions = fractions;
+    }
+
+    public boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * Whether {@link #run(InputStream)} and {@link #compile} profile the
+     * programs. Programs compiled without profiling have no overhead for it.
+     */
+    public void setProfiling(boolean profiling) {
+        this.profiling = profiling;
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * What every run may use at most from now on, {@link Limits#none()} by default.
+     * A run that goes over a limit stops with an {@link ExecutionLimitException},
+     * reported on stderr like any other runtime error. Programs compiled to
+     * bytecode run as nodes while there is a limit.
+     */
+    public void setLimits(Limits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * The profile of the last program run with {@link #run(InputStream)} while
+     * profiling, null if it wasn't profiled.
+     */
+    public Profile getProfile() {
+        return profile;
+    }
+
+    /**
+     * The memory of the last program run with {@link #run(InputStream)}. It's
+     * cleared by the next one, which may reuse it.
+     */
     public Memory getMemory() {
-        return memory;
+        return memory.get();
     }
 
     public void clear() {
-        memory.free();
+        Memory memory = this.memory.get();
+        if (memory != null) {
+            memory.free();
+        }
     }
 }
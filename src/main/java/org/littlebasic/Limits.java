@@ -0,0 +1,117 @@
+package org.littlebasic;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a single run may use at most: statements executed, loop iterations,
+ * wall time and memory. Each limit is off unless set. When a run goes over
+ * one it stops with an {@link ExecutionLimitException}.
+ *
+ * Instances are immutable, the {@code with} methods return a copy.
+ */
+public final class Limits {
+
+    private static final long NONE = Long.MAX_VALUE;
+    private static final Limits UNLIMITED = new Limits(NONE, NONE, NONE, NONE);
+
+    private final long maxStatements;
+    private final long maxIterations;
+    private final long maxWallTimeNanos;
+    private final long maxMemoryBytes;
+
+    private Limits(long maxStatements, long maxIterations, long maxWallTimeNanos, long maxMemoryBytes) {
+        this.maxStatements = maxStatements;
+        this.maxIterations = maxIterations;
+        this.maxWallTimeNanos = maxWallTimeNanos;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * No limit at all, the default.
+     */
+    public static Limits none() {
+        return UNLIMITED;
+    }
+
+    /**
+     * At most the given number of statements, counting every statement of
+     * a loop body again in every iteration.
+     */
+    public Limits withMaxStatements(long maxStatements) {
+        return new Limits(positive(maxStatements), maxIterations, maxWallTimeNanos, maxMemoryBytes);
+    }
+
+    /**
+     * At most the given number of loop iterations, of all the loops together.
+     */
+    public Limits withMaxIterations(long maxIterations) {
+        return new Limits(maxStatements, positive(maxIterations), maxWallTimeNanos, maxMemoryBytes);
+    }
+
+    /**
+     * At most the given time from when the program starts running.
+     */
+    public Limits withMaxWallTime(long time, TimeUnit unit) {
+        return new Limits(maxStatements, maxIterations, positive(unit.toNanos(time)), maxMemoryBytes);
+    }
+
+    /**
+     * At most the given estimated size of the variables in {@link Memory}.
+     */
+    public Limits withMaxMemoryBytes(long maxMemoryBytes) {
+        return new Limits(maxStatements, maxIterations, maxWallTimeNanos, positive(maxMemoryBytes));
+    }
+
+    private static long positive(long limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limits must be positive: " + limit);
+        }
+        return limit;
+    }
+
+    /**
+     * The maximum number of statements, {@link Long#MAX_VALUE} if unlimited.
+     */
+    public long getMaxStatements() {
+        return maxStatements;
+    }
+
+    /**
+     * The maximum number of loop iterations, {@link Long#MAX_VALUE} if unlimited.
+     */
+    public long getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * The maximum wall time in nanoseconds, {@link Long#MAX_VALUE} if unlimited.
+     */
+    public long getMaxWallTimeNanos() {
+        return maxWallTimeNanos;
+    }
+
+    /**
+     * The maximum memory size in bytes, {@link Long#MAX_VALUE} if unlimited.
+     */
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * Whether no limit is set.
+     */
+    public boolean isUnlimited() {
+        return maxStatements == NONE && maxIterations == NONE && maxWallTimeNanos == NONE
+                && maxMemoryBytes == NONE;
+    }
+
+    @Override
+    public String toString() {
+        return "Limits[statements=" + format(maxStatements) + ", iterations=" + format(maxIterations)
+                + ", wallTimeNanos=" + format(maxWallTimeNanos) + ", memoryBytes=" + format(maxMemoryBytes) + "]";
+    }
+
+    private static String format(long limit) {
+        return limit == NONE ? "none" : Long.toString(limit);
+    }
+}
@@ -0,0 +1,56 @@
+package org.littlebasic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * The program input, read a line at a time by INPUT and decoded with
+ * {@link Interpreter#CHARSET}. The reader and its
+ * buffers are only created when the program reads, most never do. The
+ * stream is never closed, it belongs to whoever runs the program.
+ * Not thread-safe, every run has its own.
+ */
+final class LineReader {
+
+    private InputStream in;
+    private BufferedReader reader;
+
+    LineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads from the given stream from now on, forgetting what was read ahead from the previous one.
+     */
+    void reset(InputStream in) {
+        this.in = in;
+        this.reader = null;
+    }
+
+    /**
+     * Prints the prompt of an INPUT and reads the answer, the same in every mode.
+     *
+     * @throws InputException located at the given position if the input can't be read
+     */
+    Value input(Output output, String prompt, int line, int posInLine) {
+        output.print(prompt + " ");
+        output.flush();
+        try {
+            return new Value(readLine());
+        } catch (IOException e) {
+            throw new InputException(e, line, posInLine);
+        }
+    }
+
+    /**
+     * The next line without its terminator, or null at the end of the input.
+     */
+    String readLine() throws IOException {
+        if (reader == null) {
+            reader = new BufferedReader(new InputStreamReader(in, Interpreter.CHARSET));
+        }
+        return reader.readLine();
+    }
+}
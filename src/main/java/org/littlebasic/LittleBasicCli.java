@@ -1,41 +1,191 @@
 package org.littlebasic;
 
-import java.io.FileInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * The command line.
  */
 public class LittleBasicCli {
 
+    private static final String USAGE =
+            "Usage: littlebasic [--mode compiled|visitor|streaming|bytecode] [--strict-logic] [--doubles] [--profile[=json]] <progamfile>.bas\n"
+            + "       littlebasic [--mode ...] --batch [--workers <n>] [--out <directory>] <directory>|<listfile>\n"
+            + "       littlebasic [--mode ...] --repl\n"
+            + "       littlebasic [--mode ...] --daemon [--port <n>]\n"
+            + "       littlebasic --connect [--port <n>] [<progamfile>.bas]";
+
     public static void main(String[] args) {
-        InputStream in = null;
         Interpreter interpreter = null;
         try {
-            if (args.length == 0) {
-                System.out.println("Usage: littlebasic <progamfile>.bas");
-                System.exit(-1);
+            Interpreter.Mode mode = Interpreter.Mode.COMPILED;
+            String profile = null;
+            boolean strictLogic = false;
+            boolean doubles = false;
+            boolean batch = false;
+            int workers = Runtime.getRuntime().availableProcessors();
+            Path output = Paths.get("out");
+            String session = null;
+            int port = Daemon.DEFAULT_PORT;
+            int arg = 0;
+            while (arg < args.length && args[arg].startsWith("--")) {
+                if (arg + 1 < args.length && args[arg].equals("--mode")) {
+                    try {
+                        mode = Interpreter.Mode.valueOf(args[arg + 1].toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        usage();
+                    }
+                    arg += 2;
+                } else if (args[arg].equals("--profile") || args[arg].equals("--profile=text")) {
+                    profile = "text";
+                    arg++;
+                } else if (args[arg].equals("--profile=json")) {
+                    profile = "json";
+                    arg++;
+                } else if (args[arg].equals("--strict-logic")) {
+                    strictLogic = true;
+                    arg++;
+                } else if (args[arg].equals("--doubles")) {
+                    doubles = true;
+                    arg++;
+                } else if (args[arg].equals("--batch")) {
+                    batch = true;
+                    arg++;
+                } else if (arg + 1 < args.length && args[arg].equals("--workers")) {
+                    try {
+                        workers = Integer.parseInt(args[arg + 1]);
+                    } catch (NumberFormatException e) {
+                        usage();
+                    }
+                    if (workers < 1) {
+                        usage();
+                    }
+                    arg += 2;
+                } else if (arg + 1 < args.length && args[arg].equals("--out")) {
+                    output = Paths.get(args[arg + 1]);
+                    arg += 2;
+                } else if (args[arg].equals("--repl") || args[arg].equals("--daemon")
+                        || args[arg].equals("--connect")) {
+                    if (session != null) {
+                        usage();
+                    }
+                    session = args[arg];
+                    arg++;
+                } else if (arg + 1 < args.length && args[arg].equals("--port")) {
+                    try {
+                        port = Integer.parseInt(args[arg + 1]);
+                    } catch (NumberFormatException e) {
+                        usage();
+                    }
+                    arg += 2;
+                } else {
+                    usage();
+                }
+            }
+            if (session != null) {
+                boolean program = session.equals("--connect") && arg == args.length - 1;
+                if ((arg != args.length && !program) || batch || profile != null) {
+                    usage();
+                }
+            } else if (arg != args.length - 1 || (batch && profile != null)) {
+                usage();
             }
-            in = new FileInputStream(args[0]);
             interpreter = new Interpreter(System.in, System.out, System.err);
-            interpreter.run(in);
+            interpreter.setMode(mode);
+            if (strictLogic) {
+                Set<Interpreter.Optimization> optimizations = EnumSet.allOf(Interpreter.Optimization.class);
+                optimizations.remove(Interpreter.Optimization.SHORT_CIRCUIT);
+                interpreter.setOptimizations(optimizations);
+            }
+            if (doubles) {
+                interpreter.setFractions(Interpreter.Fractions.DOUBLE);
+            }
+            if (session != null) {
+                System.exit(runSession(session, interpreter, port,
+                        arg < args.length ? Paths.get(args[arg]) : null));
+            }
+            if (batch) {
+                System.exit(runBatch(interpreter, Paths.get(args[arg]), workers, output) ? 0 : 1);
+            }
+            interpreter.setProfiling(profile != null);
+            if (System.console() != null) {
+                interpreter.setFlush(Interpreter.Flush.LINE);
+            }
+            interpreter.run(Paths.get(args[arg]));
+            Profile report = interpreter.getProfile();
+            if (report != null) {
+                System.err.println(profile.equals("json") ? report.toJson() : report.toText());
+            }
             interpreter.clear();
 
+        } catch (NoSuchFileException e) {
+            System.out.println("Error running program: " + e.getFile() + " (No such file)");
+            System.exit(-1);
         } catch (IOException e) {
             System.out.println("Error running program: " + e.getMessage());
             System.exit(-1);
         } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                }
-            }
             if (interpreter != null) {
                 interpreter.clear();
             }
         }
     }
 
+    /**
+     * Runs every program of the batch, prints the summary and returns whether all of them succeeded.
+     */
+    private static boolean runBatch(Interpreter interpreter, Path batch, int workers, Path output)
+            throws IOException {
+        Interpreter.warmUp();
+        List<Path> programs = BatchRunner.programs(batch);
+        long start = System.nanoTime();
+        List<BatchRunner.Result> results;
+        try {
+            results = new BatchRunner(interpreter, workers, output).run(BatchRunner.root(batch), programs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        System.out.print(BatchRunner.summary(results, System.nanoTime() - start, workers));
+        return results.stream().noneMatch(result -> result.failed);
+    }
+
+    /**
+     * Runs a REPL, a daemon or a client of the daemon, and returns the exit status.
+     */
+    private static int runSession(String session, Interpreter interpreter, int port, Path program)
+            throws IOException {
+        if (session.equals("--connect")) {
+            return Daemon.connect(port, program != null ? Files.readAllBytes(program) : null,
+                    System.in, System.out, System.err);
+        }
+        if (session.equals("--repl")) {
+            Repl repl = new Repl(interpreter, new BufferedReader(new InputStreamReader(System.in, Interpreter.CHARSET)),
+                    System.out, System.err, System.console() != null);
+            repl.run();
+            return 0;
+        }
+        Interpreter.warmUp();
+        try (Daemon daemon = new Daemon(interpreter, port)) {
+            System.out.println("Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                    + daemon.getPort());
+            daemon.serve();
+        }
+        return 0;
+    }
+
+    private static void usage() {
+        System.out.println(USAGE);
+        System.exit(-1);
+    }
 }
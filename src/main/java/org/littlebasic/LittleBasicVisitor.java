@@ -5,49 +5,92 @@ import basic.LittleBasicBaseVisitor;
 import basic.LittleBasicParser;
 import org.antlr.v4.runtime.ParserRuleContext;
 
-import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 
 /**
  * The ANTLR visitor. This does the actual job of executing the program.
+ * It keeps the state of a single run, use a new instance for every run.
+ * The output is flushed when the program ends, the streams are left open.
  */
 public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
 
-    private InputStream stdin;
-    private PrintStream stdout;
-    private PrintStream stderr;
-    private Memory memory;
+    private final Output output;
+    private final LineReader input;
+    private final PrintStream stderr;
+    private final Memory memory;
+    private final Budget budget;
+    private final boolean shortCircuit;
+    private final boolean doubles;
 
-    private PrintStream printStream;
-    private BufferedReader inputStream;
+    /**
+     * Set by CONTINUE and EXIT, stops the enclosing blocks until a loop takes it.
+     */
+    private Completion completion = Completion.NORMAL;
+
+    private long statements;
+    private long iterations;
+    private long statementCheck;
+    private long iterationCheck;
 
     public LittleBasicVisitor(Memory memory, InputStream stdin, PrintStream stdout, PrintStream stderr) {
-        this.stdin = stdin;
-        this.stdout = stdout;
+        this(memory, stdin, stdout, stderr, Interpreter.Flush.LINE);
+    }
+
+    public LittleBasicVisitor(Memory memory, InputStream stdin, PrintStream stdout, PrintStream stderr,
+                              Interpreter.Flush flush) {
+        this(memory, new LineReader(stdin), new Output(stdout, flush == Interpreter.Flush.LINE), stderr, null,
+                true, false);
+    }
+
+    /**
+     * A visitor that reads and writes through the given input and output, which
+     * can be reused by the next run, stops when the run goes over the given
+     * budget, if not null, evaluates both sides of AND and OR unless
+     * short-circuiting, and keeps fractions as doubles rather than decimals
+     * if asked to.
+     */
+    LittleBasicVisitor(Memory memory, LineReader input, Output output, PrintStream stderr, Budget budget,
+                       boolean shortCircuit, boolean doubles) {
+        this.input = input;
+        this.output = output;
         this.stderr = stderr;
         this.memory = memory;
+        this.budget = budget;
+        this.shortCircuit = shortCircuit;
+        this.doubles = doubles;
+        this.statementCheck = Budget.nextStatementCheck(budget, 0);
+        this.iterationCheck = Budget.nextIterationCheck(budget, 0);
     }
 
     @Override
     public Value visitProg(LittleBasicParser.ProgContext ctx) {
-        init();
         try {
             return super.visitProg(ctx);
         } finally {
-            cleanup();
+            output.flush();
         }
     }
 
-    private void init() {
-        printStream = new PrintStream(stdout, true);
-        inputStream = new BufferedReader(new InputStreamReader(stdin));
+    /**
+     * The bytes PRINT wrote out in the last run.
+     */
+    long printBytes() {
+        return output.written();
+    }
+
+    /**
+     * The statements executed in the last run.
+     */
+    long statements() {
+        return statements;
     }
 
-    private void cleanup() {
-        printStream.close();
+    /**
+     * The loop iterations of the last run.
+     */
+    long iterations() {
+        return iterations;
     }
 
     @Override
@@ -58,7 +101,7 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
 
     @Override
     public Value visitNumber(LittleBasicParser.NumberContext ctx) {
-        return new Value(Long.parseLong(ctx.getText()));
+        return Value.parse(ctx.getText(), doubles);
     }
 
     @Override
@@ -67,14 +110,52 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
         return memory.get(id);
     }
 
+    @Override
+    public Value visitParenExpr(LittleBasicParser.ParenExprContext ctx) {
+        return visit(ctx.expression());
+    }
+
     @Override
     public Value visitLetstmt(LittleBasicParser.LetstmtContext ctx) {
         String varname = ctx.vardecl().varname().ID().getText();
+        if (ctx.subscript() != null) {
+            Array array = array(varname);
+            int index = array.index(visit(ctx.subscript().expression()));
+            Value value = visit(ctx.expression());
+            array.set(index, value);
+            return value;
+        }
         Value value = visit(ctx.expression());
         memory.assign(varname, value);
         return value;
     }
 
+    @Override
+    public Value visitDimstmt(LittleBasicParser.DimstmtContext ctx) {
+        String name = ctx.vardecl().varname().ID().getText();
+        int length = Array.length(name, visit(ctx.expression()));
+        if (budget != null) {
+            budget.checkMemory(memory, Array.estimatedBytes(length), ctx.getStart().getLine(),
+                    ctx.getStart().getCharPositionInLine());
+        }
+        memory.dim(name, new Array(name, length, ctx.vardecl().varsuffix() != null));
+        return null;
+    }
+
+    @Override
+    public Value visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+        Array array = array(ctx.ID().getText());
+        return array.get(array.index(visit(ctx.expression())));
+    }
+
+    private Array array(String name) {
+        Array array = memory.array(name);
+        if (array == null) {
+            throw Array.notDimensioned(name);
+        }
+        return array;
+    }
+
     @Override
     public Value visitMulDivExpr(LittleBasicParser.MulDivExprContext ctx) {
         Value left = visit(ctx.expression(0));
@@ -103,7 +184,7 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
     public Value visitLenfunc(LittleBasicParser.LenfuncContext ctx) {
         Value arg = visit(ctx.expression());
         if (arg.isString()) {
-            return new Value(arg.internalString().length());
+            return Value.of(arg.stringLength());
         } else {
             throw new TypeException("Couldn't evaluate LEN(). Argument is not a string");
         }
@@ -113,12 +194,8 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
     public Value visitValfunc(LittleBasicParser.ValfuncContext ctx) {
         Value arg = visit(ctx.expression());
         if (arg.isString()) {
-            String str = arg.internalString();
-            try {
-                return new Value(Long.parseLong(str));
-            } catch (NumberFormatException e) {
-                return Value.NaN;
-            }
+            Value number = Value.parse(arg.internalString(), doubles);
+            return number != null ? number : Value.NaN;
         }
         return arg;
     }
@@ -129,8 +206,28 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
         return arg.isNaN() ? Value.TRUE : Value.FALSE;
     }
 
+    @Override
+    public Value visitBlock(LittleBasicParser.BlockContext ctx) {
+        for (LittleBasicParser.StatementContext statement : ctx.statement()) {
+            visit(statement);
+            if (completion != Completion.NORMAL) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private Completion takeCompletion() {
+        Completion result = completion;
+        completion = Completion.NORMAL;
+        return result;
+    }
+
     @Override
     public Value visitStatement(LittleBasicParser.StatementContext ctx) {
+        if (++statements > statementCheck) {
+            checkBudget(ctx);
+        }
         try {
             return super.visitStatement(ctx);
         } catch (TypeException e) {
@@ -160,6 +257,21 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
         }
     }
 
+    /**
+     * Called at loop back-edges.
+     */
+    private void countIteration(ParserRuleContext ctx) {
+        if (++iterations > iterationCheck) {
+            checkBudget(ctx);
+        }
+    }
+
+    private void checkBudget(ParserRuleContext ctx) {
+        budget.check(statements, iterations, memory, ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
+        statementCheck = Budget.nextStatementCheck(budget, statements);
+        iterationCheck = Budget.nextIterationCheck(budget, iterations);
+    }
+
     private void addLocation(InterpreterException ex, ParserRuleContext ctx) {
         ex.setLocation(ctx.getStart().getLine(), ctx.getStart().getCharPositionInLine());
     }
@@ -172,6 +284,9 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
 
     @Override
     public Value visitAndExpr(LittleBasicParser.AndExprContext ctx) {
+        if (shortCircuit) {
+            return condition(ctx) ? Value.TRUE : Value.FALSE;
+        }
         Value left = visit(ctx.expression(0));
         Value right = visit(ctx.expression(1));
         return left.and(right);
@@ -179,11 +294,34 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
 
     @Override
     public Value visitOrExpr(LittleBasicParser.OrExprContext ctx) {
+        if (shortCircuit) {
+            return condition(ctx) ? Value.TRUE : Value.FALSE;
+        }
         Value left = visit(ctx.expression(0));
         Value right = visit(ctx.expression(1));
         return left.or(right);
     }
 
+    /**
+     * Evaluates a condition straight to a boolean, failing if it isn't a number.
+     * When short-circuiting, the right side of AND and OR is only evaluated if
+     * the left one doesn't decide.
+     */
+    private boolean condition(LittleBasicParser.ExpressionContext ctx) {
+        if (shortCircuit && ctx instanceof LittleBasicParser.AndExprContext) {
+            LittleBasicParser.AndExprContext and = (LittleBasicParser.AndExprContext) ctx;
+            return condition(and.expression(0)) && condition(and.expression(1));
+        }
+        if (shortCircuit && ctx instanceof LittleBasicParser.OrExprContext) {
+            LittleBasicParser.OrExprContext or = (LittleBasicParser.OrExprContext) ctx;
+            return condition(or.expression(0)) || condition(or.expression(1));
+        }
+        if (ctx instanceof LittleBasicParser.NotExprContext) {
+            return !condition(((LittleBasicParser.NotExprContext) ctx).expression());
+        }
+        return visit(ctx).isTrue();
+    }
+
     @Override
     public Value visitExpExpr(LittleBasicParser.ExpExprContext ctx) {
         Value left = visit(ctx.expression(0));
@@ -194,13 +332,11 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
 
     @Override
     public Value visitIfstmt(LittleBasicParser.IfstmtContext ctx) {
-        Value condition = visit(ctx.expression());
-        if (condition.isTrue()) {
+        if (condition(ctx.expression())) {
             return visit(ctx.block());
         } else {
             for(LittleBasicParser.ElifstmtContext elifCtx : ctx.elifstmt()) {
-                condition = visit(elifCtx.expression());
-                if (condition.isTrue()) {
+                if (condition(elifCtx.expression())) {
                     return visit(elifCtx.block());
                 }
             }
@@ -208,95 +344,116 @@ public class LittleBasicVisitor extends LittleBasicBaseVisitor<Value> {
                 return visit(ctx.elsestmt().block());
             }
         }
-        return condition;
+        return Value.FALSE;
     }
 
     @Override
     public Value visitPrintstmt(LittleBasicParser.PrintstmtContext ctx) {
         Value value = visit(ctx.expression());
-        if (value.isNumber()) {
-            printStream.println(value.internalNumber());
+        if (value.isLong()) {
+            output.println(value.internalNumber());
         } else {
-            printStream.println(value.internalString());
+            output.println(value.text());
         }
         return value;
     }
 
     @Override
     public Value visitInputstmt(LittleBasicParser.InputstmtContext ctx) {
-        printStream.print(visit(ctx.string()).internalString() + " ");
-        String varname = ctx.vardecl().getText();
-        try {
-            String line = inputStream.readLine();
-            Value val = new Value(line);
-            memory.assign(varname, val);
-            return val;
-        } catch (IOException e) {
-            throw new RuntimeException(e); // TODO
-        }
+        Value val = input.input(output, visit(ctx.string()).internalString(), ctx.getStart().getLine(),
+                ctx.getStart().getCharPositionInLine());
+        memory.assign(ctx.vardecl().getText(), val);
+        return val;
     }
 
     @Override
     public Value visitForstmt(LittleBasicParser.ForstmtContext ctx) {
         String varname = ctx.vardecl().varname().ID().getText();
-        Value start = visit(ctx.expression(0));
-        Value end = visit(ctx.expression(1));
-        Value step = ctx.expression(2) != null ? visit(ctx.expression(2)) : new Value(1);
+        Value start = Value.forBound(visit(ctx.expression(0)));
+        Value end = Value.forBound(visit(ctx.expression(1)));
+        Value step = ctx.expression(2) != null ? Value.forBound(visit(ctx.expression(2))) : Value.of(1);
+        if (!start.isLong() || !end.isLong() || !step.isLong()
+                || !Value.countsInLongs(end.internalNumber(), step.internalNumber())) {
+            return visitForValues(ctx, varname, start, end, step);
+        }
         for (long i = start.internalNumber(); i <= end.internalNumber(); i = i + step.internalNumber()) {
-            memory.assign(varname, new Value(i));
-            try {
-                visit(ctx.block());
-            } catch (ContinueLoopException e) {
-                continue;
-            } catch (ExitLoopException e) {
+            countIteration(ctx);
+            memory.assign(varname, Value.of(i));
+            visit(ctx.block());
+            if (takeCompletion() == Completion.EXIT) {
+                break;
+            }
+        }
+        return Value.of(0);
+    }
+
+    /**
+     * The FOR loop on values, for bounds that don't let it count in a long.
+     */
+    private Value visitForValues(LittleBasicParser.ForstmtContext ctx, String varname, Value i, Value end,
+                                 Value step) {
+        for (; i.lte(end) == Value.TRUE; i = i.add(step)) {
+            countIteration(ctx);
+            memory.assign(varname, i);
+            visit(ctx.block());
+            if (takeCompletion() == Completion.EXIT) {
                 break;
             }
         }
-        return new Value(0);
+        return Value.of(0);
     }
 
     @Override
     public Value visitWhilestmt(LittleBasicParser.WhilestmtContext ctx) {
-        Value cond = visit(ctx.expression());
-        while (cond.isTrue()) {
-            try {
-                visit(ctx.block());
-            } catch (ContinueLoopException e) {
-                continue;
-            } catch (ExitLoopException e) {
+        while (condition(ctx.expression())) {
+            countIteration(ctx);
+            if (visitLoopBody(ctx.block(), ctx.expression()) == Completion.EXIT) {
                 break;
-            } finally {
-                cond = visit(ctx.expression());
             }
         }
-        return new Value(0);
+        return Value.of(0);
     }
 
     @Override
     public Value visitRepeatstmt(LittleBasicParser.RepeatstmtContext ctx) {
-        Value cond;
         do {
-            try {
-                visit(ctx.block());
-            } catch (ContinueLoopException e) {
-                continue;
-            } catch (ExitLoopException e) {
+            countIteration(ctx);
+            if (visitLoopBody(ctx.block(), ctx.expression()) == Completion.EXIT) {
                 break;
-            } finally {
-                cond = visit(ctx.expression());
             }
-        } while (cond.isFalse());
-        return new Value(0);
+        } while (!condition(ctx.expression()));
+        return Value.of(0);
+    }
+
+    /**
+     * Visits the body of a WHILE or REPEAT. When it exits or fails, the condition
+     * is still evaluated, for its errors only, as if the loop went on.
+     */
+    private Completion visitLoopBody(LittleBasicParser.BlockContext block,
+                                     LittleBasicParser.ExpressionContext condition) {
+        try {
+            visit(block);
+        } catch (RuntimeException | Error e) {
+            visit(condition);
+            throw e;
+        }
+        Completion completion = takeCompletion();
+        if (completion == Completion.EXIT) {
+            visit(condition);
+        }
+        return completion;
     }
 
     @Override
     public Value visitContinuestmt(LittleBasicParser.ContinuestmtContext ctx) {
-        throw new ContinueLoopException();
+        completion = Completion.CONTINUE;
+        return null;
     }
 
     @Override
     public Value visitExitstmt(LittleBasicParser.ExitstmtContext ctx) {
-        throw new ExitLoopException();
+        completion = Completion.EXIT;
+        return null;
     }
 
 }
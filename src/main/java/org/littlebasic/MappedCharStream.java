@@ -0,0 +1,116 @@
+package org.littlebasic;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The characters of a program straight out of a (memory-mapped) buffer of
+ * ASCII bytes, one char per byte, so the lexer reads the file without it
+ * ever being copied. Token texts are copied out when they are asked for.
+ * Same behaviour as {@link org.antlr.v4.runtime.ANTLRInputStream} otherwise.
+ */
+final class MappedCharStream implements CharStream {
+
+    private final ByteBuffer bytes;
+    private final int size;
+    private final String name;
+    private int p;
+
+    MappedCharStream(ByteBuffer bytes, String name) {
+        this.bytes = bytes;
+        this.size = bytes.limit();
+        this.name = name;
+    }
+
+    /**
+     * Whether every byte is ASCII, i.e. reads the same in every charset the lexer could be given.
+     */
+    static boolean isAscii(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        for (int i = 0; i < limit; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void consume() {
+        if (p >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        p++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 1) {
+            // what the lexer asks for almost every time
+            return p < size ? bytes.get(p) : IntStream.EOF;
+        }
+        if (i == 0) {
+            return 0; // undefined
+        }
+        if (i < 0) {
+            i++; // e.g., translate LA(-1) to use offset i=0; then data[p+0-1]
+            if (p + i - 1 < 0) {
+                return IntStream.EOF;
+            }
+        }
+        int index = p + i - 1;
+        return index < size ? bytes.get(index) : IntStream.EOF;
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        p = Math.min(index, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return name != null ? name : UNKNOWN_SOURCE_NAME;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = Math.min(interval.b, size - 1);
+        if (start >= size || stop < start) {
+            return "";
+        }
+        byte[] text = new byte[stop - start + 1];
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(start);
+        slice.get(text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+}
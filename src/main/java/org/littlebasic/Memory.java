@@ -1,24 +1,200 @@
 package org.littlebasic;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * A very simple memory with only a global scope.
+ * A very simple memory with only a global scope. Variables live in a flat
+ * array; compiled programs address them directly by the slots resolved
+ * at compile time (see {@link Symbols}), lookups by name go through the
+ * symbol table. Arrays created by DIM have slots of their own in the same
+ * symbols and live in a second array, only created by the first DIM.
+ *
+ * The estimated size is counted once, the first time it's asked for, and
+ * then kept up to date by every assignment, DIM and array element change,
+ * so that a budget can look at it after every statement.
  */
 public class Memory {
 
-    private Map<String, Value> memory = new HashMap<>();
+    private final Symbols layout;
+    private Symbols symbols;
+    private Value[] values;
+    private Array[] arrays;
+    private boolean counting;
+    private long bytes;
+
+    public Memory() {
+        this.layout = null;
+        this.symbols = new Symbols();
+        this.values = new Value[16];
+    }
+
+    /**
+     * Creates a memory laid out according to the given symbols. The symbols
+     * are copied before any new variable gets added, so they can be shared
+     * between runs of the same program.
+     */
+    Memory(Symbols symbols) {
+        this.layout = symbols;
+        this.symbols = symbols;
+        this.values = new Value[Math.max(symbols.size(), 1)];
+    }
 
     public Value get(String name) {
-        return memory.get(name);
+        int slot = symbols.lookup(name);
+        return slot >= 0 && slot < values.length ? values[slot] : null;
     }
 
     public void assign(String name, Value value) {
-        memory.put(name, value);
+        assign(slot(name), value);
+    }
+
+    /**
+     * The array of the given name, or null if it isn't dimensioned.
+     */
+    Array array(String name) {
+        int slot = symbols.lookup(Symbols.array(name));
+        return slot >= 0 && arrays != null && slot < arrays.length ? arrays[slot] : null;
+    }
+
+    void dim(String name, Array array) {
+        dim(slot(Symbols.array(name)), array);
+    }
+
+    private int slot(String name) {
+        int slot = symbols.lookup(name);
+        if (slot < 0) {
+            if (symbols == layout) {
+                symbols = symbols.copy();
+            }
+            slot = symbols.slot(name);
+        }
+        ensureCapacity(slot + 1);
+        return slot;
+    }
+
+    /**
+     * Whether the compiled slots of the given symbols can be used with this memory.
+     */
+    boolean isLaidOutFor(Symbols symbols) {
+        return layout == symbols;
+    }
+
+    Value get(int slot) {
+        return values[slot];
+    }
+
+    void assign(int slot, Value value) {
+        if (counting) {
+            bytes += estimatedBytes(value) - estimatedBytes(values[slot]);
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * The array in the given slot.
+     *
+     * @throws TypeException if it isn't dimensioned
+     */
+    Array array(int slot) {
+        Array array = arrays != null ? arrays[slot] : null;
+        if (array == null) {
+            String name = symbols.name(slot);
+            throw Array.notDimensioned(name.substring(0, name.length() - 1));
+        }
+        return array;
+    }
+
+    void dim(int slot, Array array) {
+        if (arrays == null) {
+            arrays = new Array[values.length];
+            bytes += 16 + 8L * arrays.length;
+        }
+        Array old = arrays[slot];
+        if (old != null) {
+            old.memory = null;
+            bytes -= old.estimatedBytes();
+        }
+        array.memory = this;
+        bytes += array.estimatedBytes();
+        arrays[slot] = array;
+    }
+
+    /**
+     * Adds the bytes an array grew by, or subtracts them if it shrank.
+     */
+    void grew(long bytes) {
+        this.bytes += bytes;
+    }
+
+    /**
+     * Makes room for the variables added to the layout since this memory was created.
+     */
+    void grow() {
+        ensureCapacity(symbols.size());
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > values.length) {
+            int length = values.length;
+            values = Arrays.copyOf(values, Math.max(size, length * 2));
+            bytes += 8L * (values.length - length);
+            if (arrays != null) {
+                arrays = Arrays.copyOf(arrays, values.length);
+                bytes += 8L * (values.length - length);
+            }
+        }
+    }
+
+    /**
+     * About how many bytes the variables and arrays take, for {@link Limits#withMaxMemoryBytes}.
+     */
+    long estimatedBytes() {
+        if (!counting) {
+            bytes = countBytes();
+            counting = true;
+        }
+        return bytes;
+    }
+
+    private long countBytes() {
+        long bytes = 16 + 8L * values.length;
+        for (Value value : values) {
+            bytes += estimatedBytes(value);
+        }
+        if (arrays != null) {
+            bytes += 16 + 8L * arrays.length;
+            for (Array array : arrays) {
+                if (array != null) {
+                    bytes += array.estimatedBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimatedBytes(Value value) {
+        return value != null ? value.estimatedBytes() : 0;
     }
 
     public void free() {
-        memory.clear();
+        Arrays.fill(values, null);
+        arrays = null;
+        counting = false;
+    }
+
+    /**
+     * Forgets every variable, also those added by name, so that the memory
+     * can be used for another run with the same layout. Keeps its array of
+     * variables, but not the arrays of the program.
+     */
+    void clear() {
+        Arrays.fill(values, null);
+        arrays = null;
+        counting = false;
+        if (layout != null) {
+            symbols = layout;
+        } else {
+            symbols.clear();
+        }
     }
 }
@@ -0,0 +1,279 @@
+package org.littlebasic;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the programs run by all interpreters in the JVM, in total and
+ * per program name (see {@link Interpreter#run(String, java.io.InputStream,
+ * java.io.InputStream, java.io.OutputStream, java.io.OutputStream)}).
+ * They are published as MBeans named {@code org.littlebasic:type=Metrics,scope=total}
+ * and {@code org.littlebasic:type=Metrics,scope=program,name="<name>"}.
+ *
+ * A run counts into plain fields of its own and adds them to the shared
+ * {@link LongAdder}s once, when it ends, so loops don't touch shared state.
+ * Statements and loop iterations are counted in every mode but
+ * {@link Interpreter.Mode#BYTECODE}, whose generated loops don't count.
+ * Allocation is measured in bytes, see {@link Profile}, and also counted per
+ * run in a histogram, to tell what a run costs on top of its program from a
+ * few programs that allocate a lot.
+ *
+ * Only the {@link #MAX_PROGRAMS} names used last keep their metrics, the
+ * MBean of a name that drops out is unregistered, and counts from zero if
+ * the name is used again.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    public static final int MAX_PROGRAMS = 1_000;
+
+    private static final String DOMAIN = "org.littlebasic";
+    private static final long[] TIME_BUCKETS_MICROS = {
+            10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000
+    };
+    private static final long[] ALLOCATION_BUCKETS_BYTES = {
+            1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000
+    };
+
+    private static final Metrics TOTAL = register(new Metrics(), DOMAIN + ":type=Metrics,scope=total");
+    private static final LinkedHashMap<String, Metrics> PROGRAMS =
+            new LinkedHashMap<String, Metrics>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Metrics> eldest) {
+                    if (size() > MAX_PROGRAMS) {
+                        unregisterMBean(eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /**
+     * What a single run did, collected while it runs.
+     */
+    static final class Counts {
+        long statements;
+        long iterations;
+        long printBytes;
+    }
+
+    private final LongAdder programsRun = new LongAdder();
+    private final LongAdder statementsExecuted = new LongAdder();
+    private final LongAdder loopIterations = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder printBytes = new LongAdder();
+    private final LongAdder interpreterExceptions = new LongAdder();
+    private final LongAdder typeExceptions = new LongAdder();
+    private final LongAdder[] parseTime = histogram(TIME_BUCKETS_MICROS);
+    private final LongAdder[] executionTime = histogram(TIME_BUCKETS_MICROS);
+    private final LongAdder[] allocation = histogram(ALLOCATION_BUCKETS_BYTES);
+    private final LongAdder parseTimeTotal = new LongAdder();
+    private final LongAdder executionTimeTotal = new LongAdder();
+
+    private Metrics() {
+    }
+
+    private static LongAdder[] histogram(long[] limits) {
+        LongAdder[] buckets = new LongAdder[limits.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        return buckets;
+    }
+
+    private static Metrics register(Metrics metrics, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(name));
+        } catch (JMException | SecurityException e) {
+            // still counted, only not visible over JMX
+        }
+        return metrics;
+    }
+
+    private static String objectName(String program) {
+        return DOMAIN + ":type=Metrics,scope=program,name=" + ObjectName.quote(program);
+    }
+
+    private static void unregisterMBean(String program) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(objectName(program)));
+        } catch (JMException | SecurityException e) {
+            // was never registered
+        }
+    }
+
+    /**
+     * The metrics of all programs.
+     */
+    public static Metrics total() {
+        return TOTAL;
+    }
+
+    /**
+     * The metrics of the programs run under the given name.
+     */
+    public static Metrics program(String name) {
+        synchronized (PROGRAMS) {
+            Metrics metrics = PROGRAMS.get(name);
+            if (metrics == null) {
+                metrics = register(new Metrics(), objectName(name));
+                PROGRAMS.put(name, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Forgets the metrics of the programs run under the given name and unregisters their MBean.
+     */
+    public static void unregister(String name) {
+        synchronized (PROGRAMS) {
+            if (PROGRAMS.remove(name) != null) {
+                unregisterMBean(name);
+            }
+        }
+    }
+
+    static void recordParse(String name, long nanos) {
+        TOTAL.addParse(nanos);
+        if (name != null) {
+            program(name).addParse(nanos);
+        }
+    }
+
+    static void recordRun(String name, Counts counts, long nanos, long allocated, Throwable failure) {
+        TOTAL.addRun(counts, nanos, allocated, failure);
+        if (name != null) {
+            program(name).addRun(counts, nanos, allocated, failure);
+        }
+    }
+
+    private void addParse(long nanos) {
+        parseTimeTotal.add(nanos);
+        parseTime[bucket(nanos / 1_000, TIME_BUCKETS_MICROS)].increment();
+    }
+
+    private void addRun(Counts counts, long nanos, long allocated, Throwable failure) {
+        programsRun.increment();
+        statementsExecuted.add(counts.statements);
+        loopIterations.add(counts.iterations);
+        printBytes.add(counts.printBytes);
+        allocatedBytes.add(allocated);
+        executionTimeTotal.add(nanos);
+        executionTime[bucket(nanos / 1_000, TIME_BUCKETS_MICROS)].increment();
+        allocation[bucket(allocated, ALLOCATION_BUCKETS_BYTES)].increment();
+        if (failure instanceof InterpreterException) {
+            interpreterExceptions.increment();
+        }
+        if (failure instanceof TypeException) {
+            typeExceptions.increment();
+        }
+    }
+
+    private static int bucket(long value, long[] limits) {
+        for (int i = 0; i < limits.length; i++) {
+            if (value <= limits[i]) {
+                return i;
+            }
+        }
+        return limits.length;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    @Override
+    public long getProgramsRun() {
+        return programsRun.sum();
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return statementsExecuted.sum();
+    }
+
+    @Override
+    public long getLoopIterations() {
+        return loopIterations.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    @Override
+    public long getPrintBytes() {
+        return printBytes.sum();
+    }
+
+    @Override
+    public long getInterpreterExceptions() {
+        return interpreterExceptions.sum();
+    }
+
+    @Override
+    public long getTypeExceptions() {
+        return typeExceptions.sum();
+    }
+
+    @Override
+    public long[] getTimeBucketsMicros() {
+        return TIME_BUCKETS_MICROS.clone();
+    }
+
+    @Override
+    public long[] getParseTimeHistogram() {
+        return sums(parseTime);
+    }
+
+    @Override
+    public long[] getExecutionTimeHistogram() {
+        return sums(executionTime);
+    }
+
+    @Override
+    public long[] getAllocationBucketsBytes() {
+        return ALLOCATION_BUCKETS_BYTES.clone();
+    }
+
+    @Override
+    public long[] getAllocationHistogram() {
+        return sums(allocation);
+    }
+
+    @Override
+    public long getParseTimeTotalNanos() {
+        return parseTimeTotal.sum();
+    }
+
+    @Override
+    public long getExecutionTimeTotalNanos() {
+        return executionTimeTotal.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] {programsRun, statementsExecuted, loopIterations, allocatedBytes,
+                printBytes, interpreterExceptions, typeExceptions, parseTimeTotal, executionTimeTotal}) {
+            adder.reset();
+        }
+        for (LongAdder bucket : parseTime) {
+            bucket.reset();
+        }
+        for (LongAdder bucket : executionTime) {
+            bucket.reset();
+        }
+        for (LongAdder bucket : allocation) {
+            bucket.reset();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.littlebasic;
+
+/**
+ * The JMX view of {@link Metrics}. Times are histograms over
+ * {@link #getTimeBucketsMicros()}: element i counts the durations up to
+ * bucket i and above bucket i - 1, the last one counts all longer ones.
+ * The bytes allocated by every run are counted the same way over
+ * {@link #getAllocationBucketsBytes()}.
+ */
+public interface MetricsMXBean {
+
+    long getProgramsRun();
+
+    long getStatementsExecuted();
+
+    long getLoopIterations();
+
+    /**
+     * The bytes the threads of the runs allocated on the heap, for all objects,
+     * not only values, as measured by the JVM's per thread allocation counter.
+     */
+    long getAllocatedBytes();
+
+    long getPrintBytes();
+
+    long getInterpreterExceptions();
+
+    long getTypeExceptions();
+
+    long[] getTimeBucketsMicros();
+
+    long[] getParseTimeHistogram();
+
+    long[] getExecutionTimeHistogram();
+
+    long[] getAllocationBucketsBytes();
+
+    long[] getAllocationHistogram();
+
+    long getParseTimeTotalNanos();
+
+    long getExecutionTimeTotalNanos();
+
+    void reset();
+}
@@ -0,0 +1,1346 @@
+package org.littlebasic;
+
+/**
+ * The executable nodes produced by the {@link Compiler}. Each node has its
+ * operator and its children resolved at compile time, so executing the
+ * program is a plain walk over these objects.
+ */
+final class Nodes {
+
+    private Nodes() {
+    }
+
+    // expressions
+
+    static final class Const extends ExprNode {
+        private final Value value;
+
+        Const(Value value) {
+            this.value = value;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return value;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+    }
+
+    static final class Var extends ExprNode {
+        private final int slot;
+
+        Var(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return ctx.memory.get(slot);
+        }
+    }
+
+    static final class Element extends ExprNode {
+        private final int slot;
+        private final ExprNode index;
+
+        Element(int slot, ExprNode index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            Array array = ctx.memory.array(slot);
+            return array.get(index(array, index, ctx));
+        }
+    }
+
+    /**
+     * Evaluates and checks an index, as a long unless it doesn't fit.
+     */
+    private static int index(Array array, ExprNode index, ExecutionContext ctx) {
+        try {
+            return array.index(index.evalNumber(ctx));
+        } catch (Value.Overflow e) {
+            return array.index(index.eval(ctx));
+        }
+    }
+
+    static abstract class Binary extends ExprNode {
+        final ExprNode left;
+        final ExprNode right;
+
+        Binary(ExprNode left, ExprNode right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Mul extends Binary {
+        Mul(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).mul(right.eval(ctx));
+        }
+    }
+
+    static final class Div extends Binary {
+        Div(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).div(right.eval(ctx));
+        }
+    }
+
+    static final class Mod extends Binary {
+        Mod(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).mod(right.eval(ctx));
+        }
+    }
+
+    static final class Add extends Binary {
+        Add(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).add(right.eval(ctx));
+        }
+    }
+
+    static final class Sub extends Binary {
+        Sub(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).sub(right.eval(ctx));
+        }
+    }
+
+    static final class Exp extends Binary {
+        Exp(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).exp(right.eval(ctx));
+        }
+    }
+
+    static final class Gt extends Binary {
+        Gt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).gt(right.eval(ctx));
+        }
+    }
+
+    static final class Gte extends Binary {
+        Gte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).gte(right.eval(ctx));
+        }
+    }
+
+    static final class Lt extends Binary {
+        Lt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).lt(right.eval(ctx));
+        }
+    }
+
+    static final class Lte extends Binary {
+        Lte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).lte(right.eval(ctx));
+        }
+    }
+
+    static final class Eq extends Binary {
+        Eq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).eq(right.eval(ctx));
+        }
+    }
+
+    static final class Neq extends Binary {
+        Neq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return left.eval(ctx).neq(right.eval(ctx));
+        }
+    }
+
+    /**
+     * Only evaluates the right side if the left one doesn't decide, unless it's strict.
+     */
+    static final class And extends Binary {
+        private final boolean strict;
+
+        And(ExprNode left, ExprNode right, boolean strict) {
+            super(left, right);
+            this.strict = strict;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            if (strict) {
+                return left.eval(ctx).and(right.eval(ctx));
+            }
+            return evalCondition(ctx) ? Value.TRUE : Value.FALSE;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            if (strict) {
+                return left.eval(ctx).and(right.eval(ctx)) == Value.TRUE;
+            }
+            return left.evalCondition(ctx) && right.evalCondition(ctx);
+        }
+    }
+
+    /**
+     * Only evaluates the right side if the left one doesn't decide, unless it's strict.
+     */
+    static final class Or extends Binary {
+        private final boolean strict;
+
+        Or(ExprNode left, ExprNode right, boolean strict) {
+            super(left, right);
+            this.strict = strict;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            if (strict) {
+                return left.eval(ctx).or(right.eval(ctx));
+            }
+            return evalCondition(ctx) ? Value.TRUE : Value.FALSE;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            if (strict) {
+                return left.eval(ctx).or(right.eval(ctx)) == Value.TRUE;
+            }
+            return left.evalCondition(ctx) || right.evalCondition(ctx);
+        }
+    }
+
+    static final class Not extends ExprNode {
+        private final ExprNode expr;
+
+        Not(ExprNode expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return expr.eval(ctx).not();
+        }
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            return !expr.evalCondition(ctx);
+        }
+    }
+
+    static final class Len extends ExprNode {
+        private final ExprNode arg;
+
+        Len(ExprNode arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            Value value = arg.eval(ctx);
+            if (value.isString()) {
+                return Value.of(value.stringLength());
+            } else {
+                throw new TypeException("Couldn't evaluate LEN(). Argument is not a string");
+            }
+        }
+    }
+
+    static final class Val extends ExprNode {
+        private final ExprNode arg;
+        private final boolean doubles;
+
+        Val(ExprNode arg, boolean doubles) {
+            this.arg = arg;
+            this.doubles = doubles;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            Value value = arg.eval(ctx);
+            if (value.isString()) {
+                Value number = Value.parse(value.internalString(), doubles);
+                return number != null ? number : Value.NaN;
+            }
+            return value;
+        }
+    }
+
+    static final class IsNaN extends ExprNode {
+        private final ExprNode arg;
+
+        IsNaN(ExprNode arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return arg.eval(ctx).isNaN() ? Value.TRUE : Value.FALSE;
+        }
+    }
+
+    // expressions whose operands TypeInference proved to be numbers or strings,
+    // evaluated without type checks
+
+    /**
+     * An expression that always produces an integer. It's computed as a long
+     * and only turned into a value where one is needed. When the number
+     * doesn't fit in a long, the whole expression is evaluated again on
+     * values, by the first node that needs one.
+     */
+    static abstract class NumExpr extends ExprNode {
+        @Override
+        Value eval(ExecutionContext ctx) {
+            try {
+                return Value.of(evalNumber(ctx));
+            } catch (Value.Overflow e) {
+                return evalValue(ctx);
+            }
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return evalNumber(ctx) != 0;
+            } catch (Value.Overflow e) {
+                return evalValue(ctx).isTrue();
+            }
+        }
+
+        /**
+         * @throws Value.Overflow if the number doesn't fit in a long
+         */
+        @Override
+        abstract long evalNumber(ExecutionContext ctx);
+
+        /**
+         * The number as a value, whatever its size. Only called after
+         * {@link #evalNumber} overflowed, so nodes whose numbers always fit
+         * in a long needn't override it.
+         */
+        Value evalValue(ExecutionContext ctx) {
+            return Value.of(evalNumber(ctx));
+        }
+    }
+
+    static final class NumConst extends NumExpr {
+        private final Value value;
+        private final long number;
+
+        NumConst(long number) {
+            this.value = Value.of(number);
+            this.number = number;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return value;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return number;
+        }
+
+        @Override
+        boolean isConstant() {
+            return true;
+        }
+    }
+
+    static final class NumVar extends NumExpr {
+        private final int slot;
+
+        NumVar(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            return ctx.memory.get(slot);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return ctx.memory.get(slot).checkedNumber();
+        }
+
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return ctx.memory.get(slot);
+        }
+    }
+
+    /**
+     * An element of an array of integers, read without a value unless it's
+     * too wide for a long.
+     */
+    static final class NumElement extends NumExpr {
+        private final int slot;
+        private final ExprNode index;
+
+        NumElement(int slot, ExprNode index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            Array array = ctx.memory.array(slot);
+            return array.number(array.index(index.evalNumber(ctx)));
+        }
+
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            Array array = ctx.memory.array(slot);
+            return array.get(array.index(index.eval(ctx)));
+        }
+    }
+
+    static abstract class NumBinary extends NumExpr {
+        final ExprNode left;
+        final ExprNode right;
+
+        NumBinary(ExprNode left, ExprNode right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class NumMul extends NumBinary {
+        NumMul(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.multiplyExact(left.evalNumber(ctx), right.evalNumber(ctx));
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).mul(right.eval(ctx));
+        }
+    }
+
+    static final class NumDiv extends NumBinary {
+        NumDiv(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.divideExact(left.evalNumber(ctx), right.evalNumber(ctx));
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).div(right.eval(ctx));
+        }
+    }
+
+    static final class NumMod extends NumBinary {
+        NumMod(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return left.evalNumber(ctx) % right.evalNumber(ctx);
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).mod(right.eval(ctx));
+        }
+    }
+
+    static final class NumAdd extends NumBinary {
+        NumAdd(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.addExact(left.evalNumber(ctx), right.evalNumber(ctx));
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).add(right.eval(ctx));
+        }
+    }
+
+    static final class NumSub extends NumBinary {
+        NumSub(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.subtractExact(left.evalNumber(ctx), right.evalNumber(ctx));
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).sub(right.eval(ctx));
+        }
+    }
+
+    /**
+     * A product that always fits in a long, see {@link Ranges}.
+     */
+    static final class NumMulInRange extends NumBinary {
+        NumMulInRange(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return left.evalNumber(ctx) * right.evalNumber(ctx);
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).mul(right.eval(ctx));
+        }
+    }
+
+    static final class NumAddInRange extends NumBinary {
+        NumAddInRange(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return left.evalNumber(ctx) + right.evalNumber(ctx);
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).add(right.eval(ctx));
+        }
+    }
+
+    static final class NumSubInRange extends NumBinary {
+        NumSubInRange(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return left.evalNumber(ctx) - right.evalNumber(ctx);
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).sub(right.eval(ctx));
+        }
+    }
+
+    static final class NumExp extends NumBinary {
+        NumExp(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.power(left.evalNumber(ctx), right.evalNumber(ctx));
+        }
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return left.eval(ctx).exp(right.eval(ctx));
+        }
+    }
+
+    /**
+     * X ^ 2.
+     */
+    static final class NumSquare extends NumExpr {
+        private final ExprNode base;
+
+        NumSquare(ExprNode base) {
+            this.base = base;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.square(base.evalNumber(ctx));
+        }
+
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return base.eval(ctx).exp(Value.of(2));
+        }
+    }
+
+    /**
+     * A power of two, or of four, eight..., to the power of X.
+     */
+    static final class NumShiftPower extends NumExpr {
+        private final int log2;
+        private final ExprNode exponent;
+
+        NumShiftPower(int log2, ExprNode exponent) {
+            this.log2 = log2;
+            this.exponent = exponent;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return Value.shiftPower(log2, exponent.evalNumber(ctx));
+        }
+
+        @Override
+        Value evalValue(ExecutionContext ctx) {
+            return Value.of(1L << log2).exp(exponent.eval(ctx));
+        }
+    }
+
+    static final class NumGt extends NumBinary {
+        NumGt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return left.evalNumber(ctx) > right.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                return left.eval(ctx).gt(right.eval(ctx)) == Value.TRUE;
+            }
+        }
+    }
+
+    static final class NumGte extends NumBinary {
+        NumGte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return left.evalNumber(ctx) >= right.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                return left.eval(ctx).gte(right.eval(ctx)) == Value.TRUE;
+            }
+        }
+    }
+
+    static final class NumLt extends NumBinary {
+        NumLt(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return left.evalNumber(ctx) < right.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                return left.eval(ctx).lt(right.eval(ctx)) == Value.TRUE;
+            }
+        }
+    }
+
+    static final class NumLte extends NumBinary {
+        NumLte(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return left.evalNumber(ctx) <= right.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                return left.eval(ctx).lte(right.eval(ctx)) == Value.TRUE;
+            }
+        }
+    }
+
+    static final class NumEq extends NumBinary {
+        NumEq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return left.evalNumber(ctx) == right.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                return left.eval(ctx).eq(right.eval(ctx)) == Value.TRUE;
+            }
+        }
+    }
+
+    static final class NumNeq extends NumBinary {
+        NumNeq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            try {
+                return left.evalNumber(ctx) != right.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                return left.eval(ctx).neq(right.eval(ctx)) == Value.TRUE;
+            }
+        }
+    }
+
+    static final class NumAnd extends NumBinary {
+        private final boolean strict;
+
+        NumAnd(ExprNode left, ExprNode right, boolean strict) {
+            super(left, right);
+            this.strict = strict;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            if (strict) {
+                boolean l = left.evalCondition(ctx);
+                boolean r = right.evalCondition(ctx);
+                return l && r;
+            }
+            return left.evalCondition(ctx) && right.evalCondition(ctx);
+        }
+    }
+
+    static final class NumOr extends NumBinary {
+        private final boolean strict;
+
+        NumOr(ExprNode left, ExprNode right, boolean strict) {
+            super(left, right);
+            this.strict = strict;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            if (strict) {
+                boolean l = left.evalCondition(ctx);
+                boolean r = right.evalCondition(ctx);
+                return l || r;
+            }
+            return left.evalCondition(ctx) || right.evalCondition(ctx);
+        }
+    }
+
+    static final class NumNot extends NumExpr {
+        private final ExprNode expr;
+
+        NumNot(ExprNode expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return evalCondition(ctx) ? 1 : 0;
+        }
+
+        @Override
+        boolean evalCondition(ExecutionContext ctx) {
+            return !expr.evalCondition(ctx);
+        }
+    }
+
+    static final class StrLen extends NumExpr {
+        private final ExprNode arg;
+
+        StrLen(ExprNode arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return arg.eval(ctx).stringLength();
+        }
+    }
+
+    static final class StrEq extends NumBinary {
+        StrEq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            Value l = left.eval(ctx);
+            return l.stringEquals(right.eval(ctx)) ? 1 : 0;
+        }
+    }
+
+    static final class StrNeq extends NumBinary {
+        StrNeq(ExprNode left, ExprNode right) {
+            super(left, right);
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            Value l = left.eval(ctx);
+            return l.stringEquals(right.eval(ctx)) ? 0 : 1;
+        }
+    }
+
+    /**
+     * + on two sides that are each known to be a number or a string, at
+     * least one of them a string.
+     */
+    static final class Concat extends Binary {
+        private final boolean leftNumber;
+        private final boolean rightNumber;
+
+        Concat(ExprNode left, boolean leftNumber, ExprNode right, boolean rightNumber) {
+            super(left, right);
+            this.leftNumber = leftNumber;
+            this.rightNumber = rightNumber;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            Value l = leftNumber ? new Value(text(left, ctx)) : left.eval(ctx);
+            String r = rightNumber ? text(right, ctx) : right.eval(ctx).internalString();
+            return l.concat(r);
+        }
+
+        /**
+         * A variable already holds its value, and needs no handler for the
+         * overflow, which would keep the JIT from eliding the copies of the string.
+         */
+        private static String text(ExprNode number, ExecutionContext ctx) {
+            if (number instanceof NumVar) {
+                return number.eval(ctx).text();
+            }
+            try {
+                return String.valueOf(number.evalNumber(ctx));
+            } catch (Value.Overflow e) {
+                return number.eval(ctx).text();
+            }
+        }
+    }
+
+    /**
+     * An expression that reads no variable assigned in its loop. It's
+     * evaluated where it would have been the first time, the value is
+     * kept until the loop starts again.
+     */
+    static final class Invariant extends ExprNode {
+        private final ExprNode expr;
+        private final int index;
+
+        Invariant(ExprNode expr, int index) {
+            this.expr = expr;
+            this.index = index;
+        }
+
+        @Override
+        Value eval(ExecutionContext ctx) {
+            Value value = ctx.invariants[index];
+            if (value == null) {
+                value = expr.eval(ctx);
+                ctx.invariants[index] = value;
+            }
+            return value;
+        }
+
+        @Override
+        long evalNumber(ExecutionContext ctx) {
+            return eval(ctx).checkedNumber();
+        }
+    }
+
+    // statements
+
+    static class Block extends StmtNode {
+        final StmtNode[] statements;
+
+        Block(StmtNode[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            for (StmtNode statement : statements) {
+                if (++ctx.statements > ctx.statementCheck) {
+                    ctx.checkBudget(statement);
+                }
+                Completion completion = statement.exec(ctx);
+                if (completion != Completion.NORMAL) {
+                    return completion;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    /**
+     * The top level block. Type errors are reported at the location of the
+     * top level statement that raised them, same as {@link LittleBasicVisitor}.
+     */
+    static final class Program extends Block {
+        final Symbols symbols;
+        final int invariants;
+        final boolean profiled;
+
+        Program(StmtNode[] statements, Symbols symbols, int invariants, boolean profiled) {
+            super(statements);
+            this.symbols = symbols;
+            this.invariants = invariants;
+            this.profiled = profiled;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            for (StmtNode statement : statements) {
+                Completion completion;
+                if (++ctx.statements > ctx.statementCheck) {
+                    ctx.checkBudget(statement);
+                }
+                try {
+                    completion = statement.exec(ctx);
+                } catch (TypeException e) {
+                    e.setLocation(statement.line, statement.posInLine);
+                    throw e;
+                }
+                if (completion != Completion.NORMAL) {
+                    break;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    /**
+     * Records what a statement costs into the profile of the run. Only
+     * compiled in when profiling, so other programs don't pay for it.
+     */
+    static final class Profiled extends StmtNode {
+        private final StmtNode statement;
+        private final String kind;
+
+        Profiled(StmtNode statement, String kind) {
+            this.statement = statement;
+            this.kind = kind;
+            this.line = statement.line;
+            this.posInLine = statement.posInLine;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            Profile profile = ctx.profile;
+            profile.enter();
+            long bytes = Profile.allocatedBytes();
+            long start = System.nanoTime();
+            try {
+                return statement.exec(ctx);
+            } finally {
+                profile.exit(line, kind, System.nanoTime() - start, Profile.allocatedBytes() - bytes);
+            }
+        }
+    }
+
+    static final class Let extends StmtNode {
+        private final int slot;
+        private final ExprNode expr;
+
+        Let(int slot, ExprNode expr) {
+            this.slot = slot;
+            this.expr = expr;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            ctx.memory.assign(slot, expr.eval(ctx));
+            return Completion.NORMAL;
+        }
+    }
+
+    /**
+     * Creates an array, checking first that it fits in the memory limit.
+     */
+    static final class Dim extends StmtNode {
+        private final int slot;
+        private final String name;
+        private final ExprNode size;
+        private final boolean strings;
+
+        Dim(int slot, String name, ExprNode size, boolean strings) {
+            this.slot = slot;
+            this.name = name;
+            this.size = size;
+            this.strings = strings;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            int length = Array.length(name, size.eval(ctx));
+            if (ctx.budget != null) {
+                ctx.budget.checkMemory(ctx.memory, Array.estimatedBytes(length), line, posInLine);
+            }
+            ctx.memory.dim(slot, new Array(name, length, strings));
+            return Completion.NORMAL;
+        }
+    }
+
+    /**
+     * Stores into an element. The index is checked before the value is evaluated.
+     */
+    static final class Store extends StmtNode {
+        private final int slot;
+        private final ExprNode index;
+        private final ExprNode expr;
+
+        Store(int slot, ExprNode index, ExprNode expr) {
+            this.slot = slot;
+            this.index = index;
+            this.expr = expr;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            Array array = ctx.memory.array(slot);
+            array.set(index(array, index, ctx), expr.eval(ctx));
+            return Completion.NORMAL;
+        }
+    }
+
+    /**
+     * Stores an integer into an element, without a value unless it's too wide for a long.
+     */
+    static final class StoreNumber extends StmtNode {
+        private final int slot;
+        private final ExprNode index;
+        private final ExprNode expr;
+
+        StoreNumber(int slot, ExprNode index, ExprNode expr) {
+            this.slot = slot;
+            this.index = index;
+            this.expr = expr;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            Array array = ctx.memory.array(slot);
+            int i = index(array, index, ctx);
+            long number;
+            try {
+                number = expr.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                array.set(i, expr.eval(ctx));
+                return Completion.NORMAL;
+            }
+            array.set(i, number);
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class Print extends StmtNode {
+        private final ExprNode expr;
+
+        Print(ExprNode expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            Value value = expr.eval(ctx);
+            if (value.isLong()) {
+                ctx.stdout.println(value.internalNumber());
+            } else {
+                ctx.stdout.println(value.text());
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class PrintNumber extends StmtNode {
+        private final ExprNode expr;
+
+        PrintNumber(ExprNode expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            long number;
+            try {
+                number = expr.evalNumber(ctx);
+            } catch (Value.Overflow e) {
+                ctx.stdout.println(expr.eval(ctx).text());
+                return Completion.NORMAL;
+            }
+            ctx.stdout.println(number);
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class Input extends StmtNode {
+        private final String prompt;
+        private final int slot;
+
+        Input(String prompt, int slot) {
+            this.prompt = prompt;
+            this.slot = slot;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            ctx.memory.assign(slot, ctx.stdin.input(ctx.stdout, prompt, line, posInLine));
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class If extends StmtNode {
+        private final ExprNode[] conditions;
+        private final StmtNode[] blocks;
+        private final StmtNode elseBlock;
+
+        If(ExprNode[] conditions, StmtNode[] blocks, StmtNode elseBlock) {
+            this.conditions = conditions;
+            this.blocks = blocks;
+            this.elseBlock = elseBlock;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            for (int i = 0; i < conditions.length; i++) {
+                if (conditions[i].evalCondition(ctx)) {
+                    return blocks[i].exec(ctx);
+                }
+            }
+            if (elseBlock != null) {
+                return elseBlock.exec(ctx);
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class For extends StmtNode {
+        private final int slot;
+        private final ExprNode start;
+        private final ExprNode end;
+        private final ExprNode step;
+        private final StmtNode body;
+        private final int[] invariants;
+
+        For(int slot, ExprNode start, ExprNode end, ExprNode step, StmtNode body, int[] invariants) {
+            this.slot = slot;
+            this.start = start;
+            this.end = end;
+            this.step = step;
+            this.body = body;
+            this.invariants = invariants;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            Value first = Value.forBound(start.eval(ctx));
+            Value last = Value.forBound(end.eval(ctx));
+            Value increment = Value.forBound(step.eval(ctx));
+            ctx.clearInvariants(invariants);
+            if (!first.isLong() || !last.isLong() || !increment.isLong()
+                    || !Value.countsInLongs(last.internalNumber(), increment.internalNumber())) {
+                return loop(ctx, first, last, increment);
+            }
+            long to = last.internalNumber();
+            long by = increment.internalNumber();
+            for (long i = first.internalNumber(); i <= to; i = i + by) {
+                if (++ctx.iterations > ctx.iterationCheck) {
+                    ctx.checkBudget(this);
+                }
+                ctx.memory.assign(slot, Value.of(i));
+                if (body.exec(ctx) == Completion.EXIT) {
+                    break;
+                }
+            }
+            return Completion.NORMAL;
+        }
+
+        /**
+         * The same loop on values, for bounds that don't let it count in a long.
+         */
+        private Completion loop(ExecutionContext ctx, Value i, Value last, Value increment) {
+            for (; i.lte(last) == Value.TRUE; i = i.add(increment)) {
+                if (++ctx.iterations > ctx.iterationCheck) {
+                    ctx.checkBudget(this);
+                }
+                ctx.memory.assign(slot, i);
+                if (body.exec(ctx) == Completion.EXIT) {
+                    break;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class While extends StmtNode {
+        private final ExprNode condition;
+        private final StmtNode body;
+        private final int[] invariants;
+
+        While(ExprNode condition, StmtNode body, int[] invariants) {
+            this.condition = condition;
+            this.body = body;
+            this.invariants = invariants;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            ctx.clearInvariants(invariants);
+            while (condition.evalCondition(ctx)) {
+                if (++ctx.iterations > ctx.iterationCheck) {
+                    ctx.checkBudget(this);
+                }
+                if (runBody(body, condition, ctx) == Completion.EXIT) {
+                    break;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    static final class Repeat extends StmtNode {
+        private final StmtNode body;
+        private final ExprNode condition;
+        private final int[] invariants;
+
+        Repeat(StmtNode body, ExprNode condition, int[] invariants) {
+            this.body = body;
+            this.condition = condition;
+            this.invariants = invariants;
+        }
+
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            ctx.clearInvariants(invariants);
+            do {
+                if (++ctx.iterations > ctx.iterationCheck) {
+                    ctx.checkBudget(this);
+                }
+                if (runBody(body, condition, ctx) == Completion.EXIT) {
+                    break;
+                }
+            } while (!condition.evalCondition(ctx));
+            return Completion.NORMAL;
+        }
+    }
+
+    /**
+     * Runs the body of a WHILE or REPEAT. When it exits or fails, the condition
+     * is still evaluated, for its errors only, as if the loop went on.
+     */
+    private static Completion runBody(StmtNode body, ExprNode condition, ExecutionContext ctx) {
+        Completion completion;
+        try {
+            completion = body.exec(ctx);
+        } catch (RuntimeException | Error e) {
+            condition.eval(ctx);
+            throw e;
+        }
+        if (completion == Completion.EXIT) {
+            condition.eval(ctx);
+        }
+        return completion;
+    }
+
+    static final class Continue extends StmtNode {
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            return Completion.CONTINUE;
+        }
+    }
+
+    static final class Exit extends StmtNode {
+        @Override
+        Completion exec(ExecutionContext ctx) {
+            return Completion.EXIT;
+        }
+    }
+}
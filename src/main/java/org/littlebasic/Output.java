@@ -0,0 +1,165 @@
+package org.littlebasic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+
+/**
+ * The program output. Collects what PRINT writes in a buffer and hands it
+ * to the underlying stream only when the buffer fills, before INPUT reads,
+ * and when the program ends, unless line flushing is on. Numbers are
+ * written straight into the buffer, without a String in between. Text is
+ * encoded with {@link Interpreter#CHARSET}.
+ * The stream is flushed but never closed, it belongs to whoever runs the
+ * program. Not thread-safe, every run has its own, which can be reset for
+ * another run to keep the buffer.
+ */
+final class Output {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private OutputStream out;
+    private boolean lineFlush;
+    private final Charset charset = Interpreter.CHARSET;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private long written;
+
+    Output(OutputStream out, boolean lineFlush) {
+        this.out = out;
+        this.lineFlush = lineFlush;
+    }
+
+    /**
+     * Writes to the given stream from now on, with an empty buffer and nothing written yet.
+     */
+    void reset(OutputStream out, boolean lineFlush) {
+        this.out = out;
+        this.lineFlush = lineFlush;
+        this.count = 0;
+        this.written = 0;
+    }
+
+    void print(String s) {
+        if (s == null) {
+            s = "null"; // same as PrintStream, e.g. for NaN
+        }
+        int length = s.length();
+        if (length > buffer.length - count) {
+            flushBuffer();
+        }
+        if (length <= buffer.length) {
+            // ASCII goes straight into the buffer, anything else through the charset
+            int start = count;
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    count = start;
+                    write(s.getBytes(charset));
+                    return;
+                }
+                buffer[count++] = (byte) c;
+            }
+        } else {
+            write(s.getBytes(charset));
+        }
+    }
+
+    void print(long n) {
+        if (n == Long.MIN_VALUE) {
+            write(MIN_LONG);
+            return;
+        }
+        if (buffer.length - count < 20) {
+            flushBuffer();
+        }
+        if (n < 0) {
+            buffer[count++] = '-';
+            n = -n;
+        }
+        int end = count + digits(n);
+        int pos = end;
+        do {
+            buffer[--pos] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        count = end;
+    }
+
+    void println(String s) {
+        print(s);
+        newLine();
+    }
+
+    void println(long n) {
+        print(n);
+        newLine();
+    }
+
+    private void newLine() {
+        write(LINE_SEPARATOR);
+        if (lineFlush) {
+            flush();
+        }
+    }
+
+    private static int digits(long n) {
+        int digits = 1;
+        while (n >= 10) {
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void write(byte[] bytes) {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                writeOut(bytes, bytes.length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void flushBuffer() {
+        if (count > 0) {
+            writeOut(buffer, count);
+            count = 0;
+        }
+    }
+
+    private void writeOut(byte[] bytes, int length) {
+        try {
+            out.write(bytes, 0, length);
+            written += length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The number of bytes handed to the underlying stream so far.
+     */
+    long written() {
+        return written;
+    }
+
+    /**
+     * Writes out the buffer and flushes the underlying stream.
+     */
+    void flush() {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
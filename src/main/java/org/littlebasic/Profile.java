@@ -0,0 +1,199 @@
+package org.littlebasic;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What the statements of a profiled run cost, per source line: how many
+ * times each ran, the wall time it took including the statements nested in
+ * it (total) and without them (self), and the bytes allocated by it without
+ * the nested statements. Lines come sorted by self time, the hottest first.
+ *
+ * Allocation is measured with the thread allocation counter of the JVM and
+ * reported as -1 where that isn't supported.
+ */
+public final class Profile {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The cost of the statement on one line.
+     */
+    public static final class Line {
+        private final int line;
+        private final String statement;
+        private final long count;
+        private final long totalNanos;
+        private final long selfNanos;
+        private final long allocatedBytes;
+
+        Line(int line, String statement, long count, long totalNanos, long selfNanos, long allocatedBytes) {
+            this.line = line;
+            this.statement = statement;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.selfNanos = selfNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * The kind of statement, e.g. LET or FOR.
+         */
+        public String getStatement() {
+            return statement;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    private String[] statements = new String[64];
+    private long[] counts = new long[64];
+    private long[] totalNanos = new long[64];
+    private long[] selfNanos = new long[64];
+    private long[] allocatedBytes = new long[64];
+
+    // what the statements nested in the running one took, saved for every level
+    private long[] nestedNanos = new long[16];
+    private long[] nestedBytes = new long[16];
+    private int depth;
+
+    /**
+     * An empty profile, to be filled by a run.
+     */
+    public Profile() {
+    }
+
+    static long allocatedBytes() {
+        return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Called before a statement runs.
+     */
+    void enter() {
+        depth++;
+        if (depth == nestedNanos.length) {
+            nestedNanos = Arrays.copyOf(nestedNanos, depth * 2);
+            nestedBytes = Arrays.copyOf(nestedBytes, depth * 2);
+        }
+        nestedNanos[depth] = 0;
+        nestedBytes[depth] = 0;
+    }
+
+    /**
+     * Called after the statement on the given line ran, with what it took
+     * since {@link #enter()} including the nested statements.
+     */
+    void exit(int line, String statement, long nanos, long bytes) {
+        ensureCapacity(line + 1);
+        statements[line] = statement;
+        counts[line]++;
+        totalNanos[line] += nanos;
+        selfNanos[line] += nanos - nestedNanos[depth];
+        allocatedBytes[line] += bytes - nestedBytes[depth];
+        depth--;
+        nestedNanos[depth] += nanos;
+        nestedBytes[depth] += bytes;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > counts.length) {
+            int capacity = Math.max(size, counts.length * 2);
+            statements = Arrays.copyOf(statements, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            totalNanos = Arrays.copyOf(totalNanos, capacity);
+            selfNanos = Arrays.copyOf(selfNanos, capacity);
+            allocatedBytes = Arrays.copyOf(allocatedBytes, capacity);
+        }
+    }
+
+    /**
+     * The lines that ran, the highest self time first.
+     */
+    public List<Line> getLines() {
+        List<Line> lines = new ArrayList<>();
+        for (int line = 0; line < counts.length; line++) {
+            if (counts[line] > 0) {
+                lines.add(new Line(line, statements[line], counts[line], totalNanos[line], selfNanos[line],
+                        THREADS != null ? allocatedBytes[line] : -1));
+            }
+        }
+        lines.sort(Comparator.comparingLong(Line::getSelfNanos).reversed().thenComparingInt(Line::getLine));
+        return lines;
+    }
+
+    /**
+     * The report as a table, one line per source line.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%6s %12s %12s %12s %14s  %s%n",
+                "line", "count", "total ms", "self ms", "alloc bytes", "statement"));
+        for (Line line : getLines()) {
+            text.append(String.format(Locale.ROOT, "%6d %12d %12.3f %12.3f %14d  %s%n",
+                    line.line, line.count, line.totalNanos / 1e6, line.selfNanos / 1e6,
+                    line.allocatedBytes, line.statement));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The report as a JSON object with a "lines" array.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"lines\":[");
+        List<Line> lines = getLines();
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"line\":").append(line.line)
+                    .append(",\"statement\":\"").append(line.statement).append('"')
+                    .append(",\"count\":").append(line.count)
+                    .append(",\"totalNanos\":").append(line.totalNanos)
+                    .append(",\"selfNanos\":").append(line.selfNanos)
+                    .append(",\"allocatedBytes\":").append(line.allocatedBytes)
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,106 @@
+package org.littlebasic;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of compiled programs, keyed by a hash of the program
+ * source. Safe to share between threads.
+ */
+public class ProgramCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final LinkedHashMap<String, CompiledProgram> programs;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ProgramCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ProgramCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.programs = new LinkedHashMap<String, CompiledProgram>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledProgram> eldest) {
+                if (size() > ProgramCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized CompiledProgram get(String key) {
+        CompiledProgram program = programs.get(key);
+        if (program != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return program;
+    }
+
+    synchronized void put(String key, CompiledProgram program) {
+        programs.put(key, program);
+    }
+
+    public synchronized void clear() {
+        programs.clear();
+    }
+
+    public synchronized int size() {
+        return programs.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The cache key of a program: the hex SHA-256 of its source.
+     */
+    static String key(byte[] source) {
+        return key(ByteBuffer.wrap(source));
+    }
+
+    /**
+     * The key of the source between the position and the limit of the buffer, which are consumed.
+     */
+    static String key(ByteBuffer source) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(source);
+            byte[] digest = sha.digest();
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.littlebasic;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/**
+ * Parses programs in two stages. The first one uses SLL prediction, which is
+ * much cheaper on the left recursive expression rule and succeeds on every
+ * valid program this grammar can produce in practice. Only when it bails the
+ * program is parsed again with full LL, which gives the real syntax error.
+ */
+final class ProgramParser {
+
+    /**
+     * Exercises every statement and operator, so that parsing it fills the
+     * prediction DFA that all parsers share.
+     */
+    private static final String WARM_UP_PROGRAM =
+            "REM warm up\n" +
+            "LET a = 1 + 2 * 3 - 4 / 5 MOD 6 ^ 2\n" +
+            "b$ = \"x\" + LEN(\"abc\") + VAL(\"1\")\n" +
+            "DIM c(3)\n" +
+            "LET c(1) = c(0) + 1\n" +
+            "IF a > 1 AND a >= 2 OR NOT a < 3 THEN\n" +
+            "    PRINT (a)\n" +
+            "ELSE IF a <= 4 AND a = 5 OR a <> 6 THEN\n" +
+            "    PRINT ISNAN(b)\n" +
+            "ELSE\n" +
+            "    PRINT b\n" +
+            "END\n" +
+            "FOR i = 1 TO 10 STEP 2\n" +
+            "    CONTINUE\n" +
+            "NEXT\n" +
+            "WHILE a < 10\n" +
+            "    a = a + 1\n" +
+            "    EXIT\n" +
+            "END\n" +
+            "REPEAT\n" +
+            "    a = a - 1\n" +
+            "UNTIL a = 0\n" +
+            "INPUT \"name\" n$\n";
+
+    private ProgramParser() {
+    }
+
+    /**
+     * Parses the program, reporting syntax errors from the full LL stage to the given listener.
+     *
+     * @throws SyntaxException if the program can't be parsed
+     */
+    static LittleBasicParser.ProgContext parse(CharStream input, ANTLRErrorListener errors) {
+        LittleBasicParser parser = new LittleBasicParser(new CommonTokenStream(new LittleBasicLexer(input)));
+        parser.setErrorHandler(new BailErrorStrategy());
+        return parse(parser, errors);
+    }
+
+    /**
+     * Same as {@link #parse(CharStream, ANTLRErrorListener)} with a parser that
+     * bails on errors and was just given the tokens, which can be reused for
+     * the next program.
+     */
+    static LittleBasicParser.ProgContext parse(LittleBasicParser parser, ANTLRErrorListener errors) {
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return parser.prog();
+        } catch (ParseCancellationException e) {
+            // either a syntax error or an SLL conflict, full LL tells them apart
+        }
+        parser.reset();
+        parser.addErrorListener(errors);
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        try {
+            return parser.prog();
+        } catch (ParseCancellationException e) {
+            if (e.getCause() instanceof RecognitionException) {
+                Token token = ((RecognitionException) e.getCause()).getOffendingToken();
+                throw new SyntaxException("Syntax error", token.getLine(), token.getCharPositionInLine());
+            }
+            throw new SyntaxException("Syntax error", 0, 0);
+        }
+    }
+
+    /**
+     * Whether the program only fails to parse because it ends too early, e.g.
+     * in the middle of a FOR loop. Valid programs and programs with any other
+     * syntax error aren't incomplete.
+     */
+    static boolean isIncomplete(CharStream input) {
+        LittleBasicLexer lexer = new LittleBasicLexer(input);
+        lexer.removeErrorListeners();
+        LittleBasicParser parser = new LittleBasicParser(new CommonTokenStream(lexer));
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        try {
+            parser.prog();
+            return false;
+        } catch (ParseCancellationException e) {
+            return e.getCause() instanceof RecognitionException
+                    && ((RecognitionException) e.getCause()).getOffendingToken().getType() == Token.EOF;
+        }
+    }
+
+    /**
+     * Parses a program touching the whole grammar in both prediction modes.
+     */
+    static void warmUp() {
+        LittleBasicParser parser = new LittleBasicParser(
+                new CommonTokenStream(new LittleBasicLexer(new ANTLRInputStream(WARM_UP_PROGRAM))));
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        for (PredictionMode mode : new PredictionMode[]{PredictionMode.SLL, PredictionMode.LL}) {
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(mode);
+            parser.prog();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.littlebasic;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Where the interpreter reads a program from: a stream, read in full when
+ * its bytes are needed, or a file. Files are memory-mapped, hashed for the
+ * cache and lexed straight from the mapping, so a large program is never
+ * copied onto the heap, as long as it is ASCII. Files that aren't are
+ * decoded like streams are, and files that can't be mapped are read as streams.
+ */
+abstract class ProgramSource implements Closeable {
+
+    static ProgramSource of(InputStream in) {
+        return new Stream(in);
+    }
+
+    static ProgramSource of(Path file) {
+        return new MappedFile(file);
+    }
+
+    /**
+     * The name the parser reports, may be null.
+     */
+    abstract String name();
+
+    /**
+     * The key of the program in the {@link ProgramCache}.
+     */
+    abstract String key() throws IOException;
+
+    /**
+     * The characters of the whole program, for the parser.
+     */
+    abstract CharStream chars() throws IOException;
+
+    /**
+     * The characters of the program, read as the lexer needs them and then
+     * dropped, for {@link StreamingExecutor}.
+     */
+    abstract CharStream unbufferedChars() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static final class Stream extends ProgramSource {
+        private final InputStream in;
+        private byte[] bytes;
+
+        Stream(InputStream in) {
+            this.in = in;
+        }
+
+        private byte[] bytes() throws IOException {
+            if (bytes == null) {
+                bytes = Utils.readAll(in);
+            }
+            return bytes;
+        }
+
+        @Override
+        String name() {
+            return null;
+        }
+
+        @Override
+        String key() throws IOException {
+            return ProgramCache.key(bytes());
+        }
+
+        @Override
+        CharStream chars() throws IOException {
+            return new ANTLRInputStream(new InputStreamReader(new ByteArrayInputStream(bytes()), Interpreter.CHARSET));
+        }
+
+        @Override
+        CharStream unbufferedChars() {
+            return new UnbufferedCharStream(new InputStreamReader(in, Interpreter.CHARSET));
+        }
+    }
+
+    private static final class MappedFile extends ProgramSource {
+        private final Path file;
+        private ByteBuffer mapped;
+        private Stream fallback;
+        private InputStream stream;
+
+        MappedFile(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Maps the file, or opens it as a stream if it's too large to be mapped or
+         * isn't a regular file, e.g. a pipe.
+         */
+        private void open() throws IOException {
+            if (mapped != null || fallback != null) {
+                return;
+            }
+            if (!Files.isRegularFile(file)) {
+                fallback = new Stream(openStream());
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size <= Integer.MAX_VALUE) {
+                    // the mapping stays valid after the channel is closed
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    return;
+                }
+            }
+            fallback = new Stream(openStream());
+        }
+
+        private InputStream openStream() throws IOException {
+            stream = Files.newInputStream(file);
+            return stream;
+        }
+
+        @Override
+        String name() {
+            return file.toString();
+        }
+
+        @Override
+        String key() throws IOException {
+            open();
+            return fallback != null ? fallback.key() : ProgramCache.key(mapped.duplicate());
+        }
+
+        @Override
+        CharStream chars() throws IOException {
+            open();
+            if (fallback != null) {
+                return fallback.chars();
+            }
+            if (MappedCharStream.isAscii(mapped)) {
+                return new MappedCharStream(mapped, name());
+            }
+            CharBuffer chars = Interpreter.CHARSET.decode(mapped.duplicate());
+            return new ANTLRInputStream(chars.array(), chars.limit());
+        }
+
+        @Override
+        CharStream unbufferedChars() throws IOException {
+            open();
+            if (fallback != null) {
+                return fallback.unbufferedChars();
+            }
+            if (MappedCharStream.isAscii(mapped)) {
+                return new MappedCharStream(mapped, name());
+            }
+            return new UnbufferedCharStream(new InputStreamReader(openStream(), Interpreter.CHARSET));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package org.littlebasic;
+
+import basic.LBExpressionParser;
+import basic.LittleBasicBaseVisitor;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.littlebasic.TypeInference.Type;
+
+/**
+ * Bounds the integers of a whole program, so that arithmetic whose result
+ * always fits in a long can be computed without checking for overflow.
+ * Like its type, the range of a variable holds everywhere in the program:
+ * it covers everything assigned to it, and a FOR variable goes from the
+ * lowest first bound to the highest last one.
+ *
+ * An assignment that adds to the variable itself, like sum = sum + i,
+ * widens the range by what it adds times how often it can run, the trip
+ * counts of the loops around it. A FOR loop runs as often as its bounds and
+ * step allow. In a WHILE loop guarded by a comparison, like WHILE i < 10,
+ * an assignment adding to i before anything else assigns it starts within
+ * the bound, and the loop runs at most as often as it adds to i before i
+ * reaches it. REPEAT loops, and assignments from the variable itself or
+ * from variables that depend on it, leave it unbounded.
+ */
+final class Ranges {
+
+    private static final BigInteger MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    /**
+     * The integers from low to high, both of which fit in a long.
+     */
+    private static final class Range {
+        static final Range BOOLEAN = new Range(BigInteger.ZERO, BigInteger.ONE);
+
+        final BigInteger low;
+        final BigInteger high;
+
+        private Range(BigInteger low, BigInteger high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        /**
+         * The range, or null if it doesn't fit in a long.
+         */
+        static Range of(BigInteger low, BigInteger high) {
+            return low.compareTo(MIN) >= 0 && high.compareTo(MAX) <= 0 ? new Range(low, high) : null;
+        }
+
+        static Range of(long number) {
+            return new Range(BigInteger.valueOf(number), BigInteger.valueOf(number));
+        }
+    }
+
+    private final TypeInference types;
+    private final Map<String, List<LittleBasicParser.StatementContext>> assignments = new HashMap<>();
+    private final Map<String, Range> variables = new HashMap<>();
+    private final Set<String> pending = new HashSet<>();
+    private final Map<LittleBasicParser.ExpressionContext, Range> expressions = new HashMap<>();
+    private final Map<ParserRuleContext, BigInteger> trips = new HashMap<>();
+    private final RangeVisitor visitor = new RangeVisitor();
+
+    Ranges(LittleBasicParser.ProgContext ctx, TypeInference types) {
+        this.types = types;
+        collect(ctx);
+    }
+
+    /**
+     * Whether the integer expression always fits in a long.
+     */
+    boolean fitsInLong(LittleBasicParser.ExpressionContext ctx) {
+        return range(ctx) != null;
+    }
+
+    private void collect(ParseTree tree) {
+        if (tree instanceof LittleBasicParser.StatementContext) {
+            LittleBasicParser.StatementContext statement = (LittleBasicParser.StatementContext) tree;
+            String name = assigned(statement);
+            if (name != null) {
+                assignments.computeIfAbsent(name, key -> new ArrayList<>()).add(statement);
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            collect(tree.getChild(i));
+        }
+    }
+
+    /**
+     * The variable the statement assigns, other than an array element, or null.
+     */
+    private static String assigned(LittleBasicParser.StatementContext ctx) {
+        if (ctx.letstmt() != null && ctx.letstmt().subscript() == null) {
+            return ctx.letstmt().vardecl().varname().ID().getText();
+        } else if (ctx.forstmt() != null) {
+            return ctx.forstmt().vardecl().varname().ID().getText();
+        } else if (ctx.inputstmt() != null) {
+            return ctx.inputstmt().vardecl().getText();
+        }
+        return null;
+    }
+
+    /**
+     * Whether a statement in the tree assigns the variable.
+     */
+    private static boolean assigns(ParseTree tree, String name) {
+        if (tree instanceof LittleBasicParser.StatementContext
+                && name.equals(assigned((LittleBasicParser.StatementContext) tree))) {
+            return true;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (assigns(tree.getChild(i), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // variables
+
+    /**
+     * The range of an integer variable, or null if it's unbounded.
+     */
+    private Range variable(String name) {
+        if (types.typeOf(name) != Type.NUMBER) {
+            return null;
+        }
+        if (variables.containsKey(name)) {
+            return variables.get(name);
+        }
+        if (!pending.add(name)) {
+            // assigned from itself
+            return null;
+        }
+        Range range = solve(name);
+        pending.remove(name);
+        variables.put(name, range);
+        return range;
+    }
+
+    private Range solve(String name) {
+        List<LittleBasicParser.StatementContext> statements = assignments.get(name);
+        if (statements == null) {
+            return null;
+        }
+        boolean set = false;
+        BigInteger low = null;
+        BigInteger high = null;
+        // what the increments that aren't guarded can take away and add over the whole run
+        BigInteger below = BigInteger.ZERO;
+        BigInteger above = BigInteger.ZERO;
+        for (LittleBasicParser.StatementContext statement : statements) {
+            if (statement.inputstmt() != null) {
+                return null;
+            }
+            if (statement.letstmt() != null && isIncrement(name, statement.letstmt().expression())) {
+                Range added = added(name, statement.letstmt().expression());
+                if (added == null) {
+                    return null;
+                }
+                BigInteger[] guard = guard(statement, name);
+                if (guard[0] != null) {
+                    low = min(low, guard[0].add(added.low));
+                } else if (added.low.signum() < 0) {
+                    BigInteger times = multiplier(statement);
+                    if (times == null) {
+                        return null;
+                    }
+                    below = below.add(times.multiply(added.low));
+                }
+                if (guard[1] != null) {
+                    high = max(high, guard[1].add(added.high));
+                } else if (added.high.signum() > 0) {
+                    BigInteger times = multiplier(statement);
+                    if (times == null) {
+                        return null;
+                    }
+                    above = above.add(times.multiply(added.high));
+                }
+                continue;
+            }
+            Range range = statement.forstmt() != null
+                    ? loopVariable(statement.forstmt())
+                    : range(statement.letstmt().expression());
+            if (range == null) {
+                return null;
+            }
+            set = true;
+            low = min(low, range.low);
+            high = max(high, range.high);
+        }
+        if (!set) {
+            // only ever added to, which fails before anything is assigned
+            return Range.of(0);
+        }
+        return Range.of(low.add(below), high.add(above));
+    }
+
+    /**
+     * The values of a FOR variable, which are never past the last bound
+     * unless the loop goes down.
+     */
+    private Range loopVariable(LittleBasicParser.ForstmtContext ctx) {
+        Range first = bound(ctx.expression(0));
+        Range last = bound(ctx.expression(1));
+        Range step = step(ctx);
+        if (first == null || last == null || step == null || step.low.signum() < 0) {
+            return null;
+        }
+        return Range.of(first.low, first.low.max(last.high));
+    }
+
+    /**
+     * A bound or the step of a FOR loop, strings count as 0, see {@link Value#forBound}.
+     */
+    private Range bound(LittleBasicParser.ExpressionContext ctx) {
+        return types.typeOf(ctx) == Type.STRING ? Range.of(0) : range(ctx);
+    }
+
+    private Range step(LittleBasicParser.ForstmtContext ctx) {
+        return ctx.expression(2) != null ? bound(ctx.expression(2)) : Range.of(1);
+    }
+
+    // increments
+
+    /**
+     * Splits a sum of integers into the terms added and those subtracted.
+     */
+    private void terms(LittleBasicParser.ExpressionContext ctx, boolean negated,
+                       List<LittleBasicParser.ExpressionContext> added,
+                       List<LittleBasicParser.ExpressionContext> subtracted) {
+        if (ctx instanceof LittleBasicParser.ParenExprContext) {
+            terms(((LittleBasicParser.ParenExprContext) ctx).expression(), negated, added, subtracted);
+        } else if (ctx instanceof LittleBasicParser.AddSubExprContext && types.typeOf(ctx) == Type.NUMBER) {
+            LittleBasicParser.AddSubExprContext sum = (LittleBasicParser.AddSubExprContext) ctx;
+            terms(sum.expression(0), negated, added, subtracted);
+            terms(sum.expression(1), negated != (sum.op.getType() == LBExpressionParser.SUB), added, subtracted);
+        } else {
+            (negated ? subtracted : added).add(ctx);
+        }
+    }
+
+    /**
+     * Whether the expression adds to the variable, which it reads nowhere else.
+     */
+    private boolean isIncrement(String name, LittleBasicParser.ExpressionContext ctx) {
+        List<LittleBasicParser.ExpressionContext> added = new ArrayList<>();
+        List<LittleBasicParser.ExpressionContext> subtracted = new ArrayList<>();
+        terms(ctx, false, added, subtracted);
+        int self = 0;
+        for (LittleBasicParser.ExpressionContext term : added) {
+            if (isVariable(term, name)) {
+                self++;
+            } else if (reads(term, name)) {
+                return false;
+            }
+        }
+        for (LittleBasicParser.ExpressionContext term : subtracted) {
+            if (reads(term, name)) {
+                return false;
+            }
+        }
+        return self == 1;
+    }
+
+    /**
+     * The range of what an increment adds to its variable, or null if it's unbounded.
+     */
+    private Range added(String name, LittleBasicParser.ExpressionContext ctx) {
+        List<LittleBasicParser.ExpressionContext> added = new ArrayList<>();
+        List<LittleBasicParser.ExpressionContext> subtracted = new ArrayList<>();
+        terms(ctx, false, added, subtracted);
+        BigInteger low = BigInteger.ZERO;
+        BigInteger high = BigInteger.ZERO;
+        for (LittleBasicParser.ExpressionContext term : added) {
+            if (!isVariable(term, name)) {
+                Range range = range(term);
+                if (range == null) {
+                    return null;
+                }
+                low = low.add(range.low);
+                high = high.add(range.high);
+            }
+        }
+        for (LittleBasicParser.ExpressionContext term : subtracted) {
+            Range range = range(term);
+            if (range == null) {
+                return null;
+            }
+            low = low.subtract(range.high);
+            high = high.subtract(range.low);
+        }
+        return Range.of(low, high);
+    }
+
+    private static boolean isVariable(LittleBasicParser.ExpressionContext ctx, String name) {
+        return ctx instanceof LittleBasicParser.IdExprContext
+                && ((LittleBasicParser.IdExprContext) ctx).id().getText().equals(name);
+    }
+
+    private static boolean reads(ParseTree tree, String name) {
+        if (tree instanceof LittleBasicParser.IdContext) {
+            return tree.getText().equals(name);
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (reads(tree.getChild(i), name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether every assignment to the variable in the tree adds to it, only
+     * ever upwards or only ever downwards.
+     */
+    private boolean onlyMoves(ParseTree tree, String name, boolean up) {
+        if (tree instanceof LittleBasicParser.StatementContext) {
+            LittleBasicParser.StatementContext statement = (LittleBasicParser.StatementContext) tree;
+            if (name.equals(assigned(statement))) {
+                if (statement.letstmt() == null || !isIncrement(name, statement.letstmt().expression())) {
+                    return false;
+                }
+                Range added = added(name, statement.letstmt().expression());
+                return added != null && (up ? added.low.signum() >= 0 : added.high.signum() <= 0);
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (!onlyMoves(tree.getChild(i), name, up)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // loops
+
+    /**
+     * The bounds of the variable when the statement starts, low and high
+     * or null where unknown, if the statement is in a WHILE loop whose
+     * condition compares the variable, and nothing assigns it from the start
+     * of the body up to the statement.
+     */
+    private BigInteger[] guard(LittleBasicParser.StatementContext statement, String name) {
+        ParserRuleContext node = statement;
+        while (node.getParent() instanceof LittleBasicParser.BlockContext) {
+            LittleBasicParser.BlockContext block = (LittleBasicParser.BlockContext) node.getParent();
+            for (LittleBasicParser.StatementContext before : block.statement()) {
+                if (before == node) {
+                    break;
+                }
+                if (assigns(before, name)) {
+                    return new BigInteger[2];
+                }
+            }
+            ParserRuleContext owner = block.getParent();
+            if (owner instanceof LittleBasicParser.WhilestmtContext) {
+                return bounds(((LittleBasicParser.WhilestmtContext) owner).expression(), name);
+            }
+            if (owner instanceof LittleBasicParser.ElifstmtContext
+                    || owner instanceof LittleBasicParser.ElsestmtContext) {
+                owner = owner.getParent();
+            }
+            if (!(owner instanceof LittleBasicParser.IfstmtContext)) {
+                break;
+            }
+            node = owner.getParent();
+        }
+        return new BigInteger[2];
+    }
+
+    /**
+     * The bounds of the variable while the condition holds, low and high or null where unknown.
+     */
+    private BigInteger[] bounds(LittleBasicParser.ExpressionContext ctx, String name) {
+        BigInteger[] bounds = new BigInteger[2];
+        if (ctx instanceof LittleBasicParser.ParenExprContext) {
+            return bounds(((LittleBasicParser.ParenExprContext) ctx).expression(), name);
+        }
+        if (ctx instanceof LittleBasicParser.AndExprContext) {
+            LittleBasicParser.AndExprContext and = (LittleBasicParser.AndExprContext) ctx;
+            BigInteger[] left = bounds(and.expression(0), name);
+            BigInteger[] right = bounds(and.expression(1), name);
+            bounds[0] = max(left[0], right[0]);
+            bounds[1] = min(left[1], right[1]);
+            return bounds;
+        }
+        if (!(ctx instanceof LittleBasicParser.RelExprContext)) {
+            return bounds;
+        }
+        LittleBasicParser.RelExprContext relation = (LittleBasicParser.RelExprContext) ctx;
+        int op = relation.op.getType();
+        Range other;
+        if (isVariable(relation.expression(0), name)) {
+            other = range(relation.expression(1));
+        } else if (isVariable(relation.expression(1), name)) {
+            other = range(relation.expression(0));
+            op = op == LBExpressionParser.LT ? LBExpressionParser.GT
+                    : op == LBExpressionParser.LTE ? LBExpressionParser.GTE
+                    : op == LBExpressionParser.GT ? LBExpressionParser.LT
+                    : op == LBExpressionParser.GTE ? LBExpressionParser.LTE
+                    : op;
+        } else {
+            return bounds;
+        }
+        if (other == null || types.typeOf(relation.expression(0)) != Type.NUMBER
+                || types.typeOf(relation.expression(1)) != Type.NUMBER) {
+            return bounds;
+        }
+        switch (op) {
+            case LBExpressionParser.LT:
+                bounds[1] = other.high.subtract(BigInteger.ONE);
+                break;
+            case LBExpressionParser.LTE:
+                bounds[1] = other.high;
+                break;
+            case LBExpressionParser.GT:
+                bounds[0] = other.low.add(BigInteger.ONE);
+                break;
+            case LBExpressionParser.GTE:
+                bounds[0] = other.low;
+                break;
+            case LBExpressionParser.EQ:
+                bounds[0] = other.low;
+                bounds[1] = other.high;
+                break;
+            default:
+                break;
+        }
+        return bounds;
+    }
+
+    /**
+     * How often the statements in the loops around the statement can run
+     * in all, or null if there's no telling.
+     */
+    private BigInteger multiplier(LittleBasicParser.StatementContext statement) {
+        BigInteger times = BigInteger.ONE;
+        for (ParserRuleContext parent = statement.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent instanceof LittleBasicParser.ForstmtContext
+                    || parent instanceof LittleBasicParser.WhilestmtContext
+                    || parent instanceof LittleBasicParser.RepeatstmtContext) {
+                BigInteger count = trips(parent);
+                if (count == null) {
+                    return null;
+                }
+                times = times.multiply(count);
+            }
+        }
+        return times;
+    }
+
+    /**
+     * How often the body of the loop can run each time the loop starts, or null if there's no telling.
+     */
+    private BigInteger trips(ParserRuleContext loop) {
+        if (trips.containsKey(loop)) {
+            return trips.get(loop);
+        }
+        BigInteger count = null;
+        if (loop instanceof LittleBasicParser.ForstmtContext) {
+            count = forTrips((LittleBasicParser.ForstmtContext) loop);
+        } else if (loop instanceof LittleBasicParser.WhilestmtContext) {
+            count = whileTrips((LittleBasicParser.WhilestmtContext) loop);
+        }
+        trips.put(loop, count);
+        return count;
+    }
+
+    private BigInteger forTrips(LittleBasicParser.ForstmtContext ctx) {
+        Range first = bound(ctx.expression(0));
+        Range last = bound(ctx.expression(1));
+        Range step = step(ctx);
+        if (first == null || last == null || step == null || step.low.signum() <= 0) {
+            return null;
+        }
+        return last.high.subtract(first.low).divide(step.low).add(BigInteger.ONE).max(BigInteger.ZERO);
+    }
+
+    /**
+     * A WHILE loop ends when a variable of its condition, which every run of
+     * the body moves towards its bound and never back, reaches the bound.
+     * CONTINUE could skip the move.
+     */
+    private BigInteger whileTrips(LittleBasicParser.WhilestmtContext ctx) {
+        if (continues(ctx.block())) {
+            return null;
+        }
+        BigInteger fewest = null;
+        for (LittleBasicParser.StatementContext statement : ctx.block().statement()) {
+            LittleBasicParser.LetstmtContext let = statement.letstmt();
+            if (let == null || let.subscript() != null) {
+                continue;
+            }
+            String name = let.vardecl().varname().ID().getText();
+            if (!isIncrement(name, let.expression())) {
+                continue;
+            }
+            Range added = added(name, let.expression());
+            Range range = variable(name);
+            BigInteger[] bounds = bounds(ctx.expression(), name);
+            BigInteger count;
+            if (added == null || range == null) {
+                continue;
+            } else if (added.low.signum() > 0 && bounds[1] != null && onlyMoves(ctx.block(), name, true)) {
+                count = bounds[1].subtract(range.low).divide(added.low);
+            } else if (added.high.signum() < 0 && bounds[0] != null && onlyMoves(ctx.block(), name, false)) {
+                count = range.high.subtract(bounds[0]).divide(added.high.negate());
+            } else {
+                continue;
+            }
+            count = count.add(BigInteger.ONE).max(BigInteger.ZERO);
+            fewest = fewest != null ? fewest.min(count) : count;
+        }
+        return fewest;
+    }
+
+    /**
+     * Whether a CONTINUE in the tree continues the loop it's the body of.
+     */
+    private static boolean continues(ParseTree tree) {
+        if (tree instanceof LittleBasicParser.ContinuestmtContext) {
+            return true;
+        }
+        if (tree instanceof LittleBasicParser.ForstmtContext
+                || tree instanceof LittleBasicParser.WhilestmtContext
+                || tree instanceof LittleBasicParser.RepeatstmtContext) {
+            return false;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (continues(tree.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // expressions
+
+    /**
+     * The range of an integer expression, or null if it's unbounded or not an integer.
+     */
+    private Range range(LittleBasicParser.ExpressionContext ctx) {
+        if (expressions.containsKey(ctx)) {
+            return expressions.get(ctx);
+        }
+        Range range = visitor.visit(ctx);
+        expressions.put(ctx, range);
+        return range;
+    }
+
+    private static BigInteger min(BigInteger left, BigInteger right) {
+        return left == null ? right : right == null ? left : left.min(right);
+    }
+
+    private static BigInteger max(BigInteger left, BigInteger right) {
+        return left == null ? right : right == null ? left : left.max(right);
+    }
+
+    /**
+     * The largest absolute value in the range.
+     */
+    private static BigInteger magnitude(Range range) {
+        return range.low.abs().max(range.high.abs());
+    }
+
+    private class RangeVisitor extends LittleBasicBaseVisitor<Range> {
+
+        @Override
+        public Range visitNumber(LittleBasicParser.NumberContext ctx) {
+            String text = ctx.getText();
+            if (text.indexOf('.') >= 0) {
+                return null;
+            }
+            BigInteger number = new BigInteger(text);
+            return Range.of(number, number);
+        }
+
+        @Override
+        public Range visitId(LittleBasicParser.IdContext ctx) {
+            return variable(ctx.getText());
+        }
+
+        @Override
+        public Range visitParenExpr(LittleBasicParser.ParenExprContext ctx) {
+            return range(ctx.expression());
+        }
+
+        @Override
+        public Range visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+            return null;
+        }
+
+        @Override
+        public Range visitAddSubExpr(LittleBasicParser.AddSubExprContext ctx) {
+            Range left = range(ctx.expression(0));
+            Range right = range(ctx.expression(1));
+            if (types.typeOf(ctx) != Type.NUMBER || left == null || right == null) {
+                return null;
+            }
+            if (ctx.op.getType() == LBExpressionParser.SUB) {
+                return Range.of(left.low.subtract(right.high), left.high.subtract(right.low));
+            }
+            return Range.of(left.low.add(right.low), left.high.add(right.high));
+        }
+
+        @Override
+        public Range visitMulDivExpr(LittleBasicParser.MulDivExprContext ctx) {
+            Range left = range(ctx.expression(0));
+            Range right = range(ctx.expression(1));
+            int op = ctx.op.getType();
+            if (types.typeOf(ctx) != Type.NUMBER) {
+                return null;
+            }
+            if (op == LBExpressionParser.MOD && right != null) {
+                // as large as the divisor at most, and as the dividend, whose sign it has
+                BigInteger limit = magnitude(right).subtract(BigInteger.ONE).max(BigInteger.ZERO);
+                if (left != null) {
+                    limit = limit.min(magnitude(left));
+                }
+                boolean negative = left == null || left.low.signum() < 0;
+                return Range.of(negative ? limit.negate() : BigInteger.ZERO, limit);
+            }
+            if (left == null || right == null) {
+                return null;
+            }
+            if (op == LBExpressionParser.DIV) {
+                // dividing by 0 fails, so nothing is larger than the dividend
+                BigInteger limit = magnitude(left);
+                return Range.of(limit.negate(), limit);
+            } else if (op == LBExpressionParser.MOD) {
+                return null;
+            }
+            BigInteger[] corners = {
+                    left.low.multiply(right.low), left.low.multiply(right.high),
+                    left.high.multiply(right.low), left.high.multiply(right.high)
+            };
+            BigInteger low = corners[0];
+            BigInteger high = corners[0];
+            for (BigInteger corner : corners) {
+                low = low.min(corner);
+                high = high.max(corner);
+            }
+            return Range.of(low, high);
+        }
+
+        @Override
+        public Range visitRelExpr(LittleBasicParser.RelExprContext ctx) {
+            return Range.BOOLEAN;
+        }
+
+        @Override
+        public Range visitNotExpr(LittleBasicParser.NotExprContext ctx) {
+            return Range.BOOLEAN;
+        }
+
+        @Override
+        public Range visitAndExpr(LittleBasicParser.AndExprContext ctx) {
+            return Range.BOOLEAN;
+        }
+
+        @Override
+        public Range visitOrExpr(LittleBasicParser.OrExprContext ctx) {
+            return Range.BOOLEAN;
+        }
+
+        @Override
+        public Range visitExpExpr(LittleBasicParser.ExpExprContext ctx) {
+            return null;
+        }
+
+        @Override
+        public Range visitLenfunc(LittleBasicParser.LenfuncContext ctx) {
+            return Range.of(BigInteger.ZERO, BigInteger.valueOf(Integer.MAX_VALUE));
+        }
+
+        @Override
+        public Range visitValfunc(LittleBasicParser.ValfuncContext ctx) {
+            return types.typeOf(ctx.expression()) == Type.NUMBER ? range(ctx.expression()) : null;
+        }
+
+        @Override
+        public Range visitIsnanfunc(LittleBasicParser.IsnanfuncContext ctx) {
+            return Range.BOOLEAN;
+        }
+    }
+}
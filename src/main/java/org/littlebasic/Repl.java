@@ -0,0 +1,144 @@
+package org.littlebasic;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Reads a program line by line and runs every statement as soon as it's
+ * complete, keeping the variables between them. A line that leaves a
+ * statement open, e.g. the head of a FOR loop, waits for the lines that
+ * close it. Errors are reported, located from the start of the statement,
+ * and the session goes on.
+ *
+ * Statements are compiled and run like in {@link Interpreter.Mode#STREAMING},
+ * whatever the mode of the interpreter, with its optimizations, fractions and limits.
+ * INPUT reads the next line of the session.
+ */
+final class Repl {
+
+    static final String PROMPT = "> ";
+    static final String CONTINUATION_PROMPT = "... ";
+
+    private final StreamingExecutor executor;
+    private final Limits limits;
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final boolean prompt;
+    private final Output output;
+    private final LineReader input;
+
+    /**
+     * @param prompt whether to show a prompt before reading a line, for interactive sessions
+     */
+    Repl(Interpreter interpreter, BufferedReader in, OutputStream out, OutputStream err, boolean prompt) {
+        this.executor = new StreamingExecutor(interpreter.getOptimizations(), interpreter.getFractions(), null);
+        this.limits = interpreter.getLimits();
+        this.in = in;
+        this.out = new PrintStream(out, true);
+        this.err = new PrintStream(err, true);
+        this.prompt = prompt;
+        this.output = new Output(this.out, true);
+        this.input = new LineReader(null);
+    }
+
+    Memory getMemory() {
+        return executor.getMemory();
+    }
+
+    /**
+     * Runs the session until the input ends.
+     */
+    void run() throws IOException {
+        StringBuilder statement = new StringBuilder();
+        while (true) {
+            if (prompt) {
+                out.print(statement.length() == 0 ? PROMPT : CONTINUATION_PROMPT);
+                out.flush();
+            }
+            String line = in.readLine();
+            if (line == null) {
+                if (statement.length() > 0) {
+                    // what's left can only be reported as the syntax error it is
+                    execute(statement.toString());
+                }
+                return;
+            }
+            statement.append(line).append('\n');
+            if (!ProgramParser.isIncomplete(new ANTLRInputStream(statement.toString()))) {
+                execute(statement.toString());
+                statement.setLength(0);
+            }
+        }
+    }
+
+    private void execute(String program) {
+        Metrics.Counts counts = new Metrics.Counts();
+        long allocated = Profile.allocatedBytes();
+        long started = System.nanoTime();
+        Throwable failure = null;
+        try {
+            input.reset(new LineInput());
+            executor.run(new ANTLRInputStream(program), input, output, new ErrorListener(err), counts,
+                    Budget.start(limits, null));
+        } catch (InterpreterException e) {
+            failure = e;
+            err.println(e.getMessage());
+        } finally {
+            Metrics.recordRun(null, counts, System.nanoTime() - started,
+                    Profile.allocatedBytes() - allocated, failure);
+        }
+    }
+
+    /**
+     * The session input as seen by INPUT. Hands out one line at a time and
+     * reports nothing available past it, so the reader INPUT wraps it in
+     * never takes lines meant for the session.
+     */
+    private final class LineInput extends InputStream {
+        private byte[] line = new byte[0];
+        private int position;
+
+        private boolean fill() throws IOException {
+            if (position < line.length) {
+                return true;
+            }
+            String next = in.readLine();
+            if (next == null) {
+                return false;
+            }
+            line = (next + "\n").getBytes(Interpreter.CHARSET);
+            position = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? line[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, line.length - position);
+            System.arraycopy(line, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return line.length - position;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.littlebasic;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+
+/**
+ * What a run needs besides the program and its memory: the output with its
+ * buffer, the input, and the lexer and parser for programs that aren't
+ * cached yet. Kept in a {@link Pool} between runs, so that a run of a
+ * cached program allocates little more than its memory and its values.
+ * Not thread-safe, a state belongs to one run at a time.
+ */
+final class RunState {
+
+    final Output output = new Output(null, false);
+    final LineReader input = new LineReader(null);
+    private final ErrorListener errors = new ErrorListener(null);
+    private final LittleBasicLexer lexer = new LittleBasicLexer(null);
+    private final LittleBasicParser parser = new LittleBasicParser(null);
+
+    RunState() {
+        parser.setErrorHandler(new BailErrorStrategy());
+    }
+
+    /**
+     * Points the output and the input at the streams of the next run.
+     */
+    void start(InputStream stdin, OutputStream stdout, Interpreter.Flush flush) {
+        output.reset(stdout, flush == Interpreter.Flush.LINE);
+        input.reset(stdin);
+    }
+
+    /**
+     * Parses the program, see {@link ProgramParser#parse(CharStream, org.antlr.v4.runtime.ANTLRErrorListener)}.
+     *
+     * @throws SyntaxException if the program can't be parsed
+     */
+    LittleBasicParser.ProgContext parse(CharStream program, PrintStream stderr) {
+        lexer.setInputStream(program);
+        // a token stream remembers it reached the end even when given a new
+        // source, so only the lexer and the parser are reused
+        parser.setTokenStream(new CommonTokenStream(lexer));
+        errors.setStderr(stderr);
+        return ProgramParser.parse(parser, errors);
+    }
+
+    /**
+     * Lets go of the streams and the program of the run, so that a pooled
+     * state keeps nothing of the caller alive.
+     */
+    void release() {
+        output.reset(null, false);
+        input.reset(null);
+        errors.setStderr(null);
+        lexer.setInputStream(null);
+        parser.setTokenStream(null);
+    }
+
+    /**
+     * Keeps up to a number of states for the next runs. Safe to share between threads.
+     */
+    static final class Pool {
+
+        private final int capacity;
+        private final ArrayDeque<RunState> states;
+
+        Pool(int capacity) {
+            this.capacity = capacity;
+            this.states = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * A state from the pool, or a new one if they're all taken.
+         */
+        RunState take() {
+            RunState state;
+            synchronized (this) {
+                state = states.pollFirst();
+            }
+            return state != null ? state : new RunState();
+        }
+
+        /**
+         * Releases the state and keeps it for the next run, unless the pool is full.
+         */
+        void give(RunState state) {
+            state.release();
+            synchronized (this) {
+                if (states.size() < capacity) {
+                    states.addFirst(state);
+                }
+            }
+        }
+    }
+}
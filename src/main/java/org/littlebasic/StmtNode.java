@@ -0,0 +1,18 @@
+package org.littlebasic;
+
+/**
+ * A compiled statement. Keeps the location of the statement in the source
+ * so runtime errors can be reported against it.
+ */
+abstract class StmtNode {
+
+    int line;
+    int posInLine;
+
+    /**
+     * Runs the statement. Returns how it completed, so that CONTINUE and EXIT
+     * reach the enclosing loop without throwing.
+     */
+    abstract Completion exec(ExecutionContext ctx);
+
+}
@@ -0,0 +1,122 @@
+package org.littlebasic;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+import java.util.Set;
+
+/**
+ * Runs a program while reading it. Every top level statement is parsed,
+ * compiled and run, then dropped before the next one is read, so neither
+ * the source, nor its tokens, nor its parse tree are ever held as a whole.
+ * Compound statements are parsed in full before they run.
+ *
+ * The statements before a syntax error have already run when it's reported.
+ * Parsing uses full LL only, the unbuffered streams can't be rewound for a
+ * second stage.
+ */
+final class StreamingExecutor {
+
+    private final Compiler compiler;
+    private final Memory memory;
+    private final Profile profile;
+
+    /**
+     * @param profile where to record the cost of the statements, or null
+     */
+    StreamingExecutor(Set<Interpreter.Optimization> optimizations, Interpreter.Fractions fractions,
+                      Profile profile) {
+        this.compiler = new Compiler(optimizations, fractions, profile != null);
+        this.memory = new Memory(compiler.symbols());
+        this.profile = profile;
+    }
+
+    Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * @param program the characters of the program, read as they are needed,
+     *                see {@link ProgramSource#unbufferedChars()}
+     * @param budget what the run may use, or null
+     * @throws InterpreterException on syntax and runtime errors
+     */
+    void run(CharStream program, LineReader in, Output out, ANTLRErrorListener errors, Metrics.Counts counts,
+             Budget budget) {
+        LittleBasicLexer lexer = new LittleBasicLexer(program);
+        // the char stream drops the text as it goes, tokens need their own copy
+        lexer.setTokenFactory(new CommonTokenFactory(true));
+        UnbufferedTokenStream<Token> tokens = new UnbufferedTokenStream<>(lexer);
+        LittleBasicParser parser = new LittleBasicParser(tokens);
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.removeErrorListeners();
+        parser.addErrorListener(errors);
+
+        ExecutionContext ctx = new ExecutionContext(memory, in, out, 0, profile, budget);
+        // the output may have been written to by the statements before, in a REPL
+        long written = out.written();
+        try {
+            while (tokens.LA(1) != Token.EOF) {
+                StmtNode statement = compiler.compileStatement(parseStatement(parser, tokens));
+                if (statement == null) {
+                    continue;
+                }
+                memory.grow();
+                ctx.growInvariants(compiler.invariants());
+                Completion completion;
+                if (++ctx.statements > ctx.statementCheck) {
+                    ctx.checkBudget(statement);
+                }
+                try {
+                    completion = statement.exec(ctx);
+                } catch (TypeException e) {
+                    e.setLocation(statement.line, statement.posInLine);
+                    throw e;
+                }
+                if (completion != Completion.NORMAL) {
+                    break;
+                }
+            }
+        } finally {
+            out.flush();
+            counts.statements += ctx.statements;
+            counts.iterations += ctx.iterations;
+            counts.printBytes += out.written() - written;
+        }
+    }
+
+    /**
+     * Parses the next statement and the line breaks after it, same as the
+     * block rule does.
+     */
+    private static LittleBasicParser.StatementContext parseStatement(LittleBasicParser parser,
+                                                                     UnbufferedTokenStream<Token> tokens) {
+        try {
+            LittleBasicParser.StatementContext statement = parser.statement();
+            if (tokens.LA(1) != LittleBasicParser.NEWLINE && tokens.LA(1) != Token.EOF) {
+                throw syntaxError(tokens.LT(1));
+            }
+            while (tokens.LA(1) == LittleBasicParser.NEWLINE) {
+                tokens.consume();
+            }
+            return statement;
+        } catch (ParseCancellationException e) {
+            if (e.getCause() instanceof RecognitionException) {
+                throw syntaxError(((RecognitionException) e.getCause()).getOffendingToken());
+            }
+            throw new SyntaxException("Syntax error", 0, 0);
+        }
+    }
+
+    private static SyntaxException syntaxError(Token token) {
+        return new SyntaxException("Syntax error", token.getLine(), token.getCharPositionInLine());
+    }
+}
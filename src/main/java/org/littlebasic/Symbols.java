@@ -0,0 +1,80 @@
+package org.littlebasic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps variable names to the slots they occupy in {@link Memory}.
+ * Slots are handed out in order of first appearance. An array has a slot
+ * of its own under its name followed by "(", see {@link #array}, so that
+ * {@code a} and {@code a(1)} are different variables.
+ */
+class Symbols {
+
+    private final Map<String, Integer> slots;
+    private final List<String> names;
+
+    Symbols() {
+        this.slots = new HashMap<>();
+        this.names = new ArrayList<>();
+    }
+
+    private Symbols(Symbols other) {
+        this.slots = new HashMap<>(other.slots);
+        this.names = new ArrayList<>(other.names);
+    }
+
+    /**
+     * The name under which the array of the given name has its slot.
+     */
+    static String array(String name) {
+        return name + "(";
+    }
+
+    static boolean isArray(String name) {
+        return name.endsWith("(");
+    }
+
+    /**
+     * Returns the slot of the given variable, allocating a new one if needed.
+     */
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the given variable or -1 if it doesn't have one.
+     */
+    int lookup(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Forgets every variable, only for symbols that no compiled program uses.
+     */
+    void clear() {
+        slots.clear();
+        names.clear();
+    }
+
+    String name(int slot) {
+        return names.get(slot);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    Symbols copy() {
+        return new Symbols(this);
+    }
+}
@@ -0,0 +1,13 @@
+package org.littlebasic;
+
+/**
+ * The program couldn't be parsed.
+ */
+public class SyntaxException extends InterpreterException {
+
+    public SyntaxException(String message, int line, int posInLine) {
+        super(message);
+        setLocation(line, posInLine);
+    }
+
+}
@@ -0,0 +1,284 @@
+package org.littlebasic;
+
+import basic.LBExpressionParser;
+import basic.LittleBasicBaseVisitor;
+import basic.LittleBasicParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds out which variables and expressions of a program always hold an
+ * integer or always hold a string. A variable gets the join of the types of
+ * everything assigned to it anywhere in the program, iterated until nothing
+ * changes. Variables that are never assigned and INPUT targets are dynamic.
+ * The elements of an array are typed as one variable, under the name of its
+ * slot, see {@link Symbols#array}: the DIM gives integers or strings, and
+ * every LET of an element joins its type.
+ */
+final class TypeInference {
+
+    enum Type {
+        /** Nothing known yet, only seen while inferring. */
+        UNSET,
+        /** An integer, of any size. */
+        NUMBER,
+        STRING,
+        /** Can be anything, including null, NaN and fractions. */
+        DYNAMIC;
+
+        Type join(Type other) {
+            if (this == other || other == UNSET) {
+                return this;
+            }
+            if (this == UNSET) {
+                return other;
+            }
+            return DYNAMIC;
+        }
+    }
+
+    private static final class Assignment {
+        final String variable;
+        final LittleBasicParser.ExpressionContext expression;
+        final LittleBasicParser.ForstmtContext loop;
+        final Type type;
+
+        Assignment(String variable, LittleBasicParser.ExpressionContext expression, Type type) {
+            this(variable, expression, null, type);
+        }
+
+        Assignment(String variable, LittleBasicParser.ForstmtContext loop) {
+            this(variable, null, loop, null);
+        }
+
+        private Assignment(String variable, LittleBasicParser.ExpressionContext expression,
+                           LittleBasicParser.ForstmtContext loop, Type type) {
+            this.variable = variable;
+            this.expression = expression;
+            this.loop = loop;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Type> variables = new HashMap<>();
+    private final List<Assignment> assignments = new ArrayList<>();
+    private final ExpressionTyper typer = new ExpressionTyper();
+    private final Map<LittleBasicParser.ExpressionContext, Type> expressions = new HashMap<>();
+    private final Ranges ranges;
+    private boolean solved;
+
+    TypeInference(LittleBasicParser.ProgContext ctx) {
+        new AssignmentCollector().visit(ctx);
+        for (Assignment assignment : assignments) {
+            variables.put(assignment.variable, Type.UNSET);
+        }
+        solve();
+        // what is still unset only ever gets assigned from itself or other unset variables
+        for (Map.Entry<String, Type> variable : variables.entrySet()) {
+            if (variable.getValue() == Type.UNSET) {
+                variable.setValue(Type.DYNAMIC);
+            }
+        }
+        solve();
+        solved = true;
+        ranges = new Ranges(ctx, this);
+    }
+
+    private void solve() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Assignment assignment : assignments) {
+                Type type = assignment.loop != null ? loopType(assignment.loop)
+                        : assignment.expression != null ? typeOf(assignment.expression)
+                        : assignment.type;
+                Type current = variables.get(assignment.variable);
+                Type joined = current.join(type);
+                if (joined != current) {
+                    variables.put(assignment.variable, joined);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * The type of a FOR variable, which starts at the first bound and moves by the step.
+     */
+    private Type loopType(LittleBasicParser.ForstmtContext ctx) {
+        Type step = ctx.expression(2) != null ? typeOf(ctx.expression(2)) : Type.NUMBER;
+        return arithmetic(typeOf(ctx.expression(0)), step);
+    }
+
+    /**
+     * The type of arithmetic other than +: integers stay integers. Strings
+     * only make it fail, and count as integers. Anything else can be a fraction.
+     */
+    private static Type arithmetic(Type left, Type right) {
+        if (left == Type.DYNAMIC || right == Type.DYNAMIC) {
+            return Type.DYNAMIC;
+        }
+        if (left == Type.UNSET || right == Type.UNSET) {
+            return Type.UNSET;
+        }
+        return Type.NUMBER;
+    }
+
+    Type typeOf(String variable) {
+        Type type = variables.get(variable);
+        return type != null ? type : Type.DYNAMIC;
+    }
+
+    /**
+     * The type of the expression. Once the variables are solved it's only
+     * worked out once per expression.
+     */
+    Type typeOf(LittleBasicParser.ExpressionContext ctx) {
+        if (!solved) {
+            return typer.visit(ctx);
+        }
+        Type type = expressions.get(ctx);
+        if (type == null) {
+            type = typer.visit(ctx);
+            expressions.put(ctx, type);
+        }
+        return type;
+    }
+
+    /**
+     * Whether the integer expression always fits in a long, see {@link Ranges}.
+     */
+    boolean fitsInLong(LittleBasicParser.ExpressionContext ctx) {
+        return ranges.fitsInLong(ctx);
+    }
+
+    private class AssignmentCollector extends LittleBasicBaseVisitor<Void> {
+
+        @Override
+        public Void visitLetstmt(LittleBasicParser.LetstmtContext ctx) {
+            String name = ctx.vardecl().varname().ID().getText();
+            assignments.add(new Assignment(ctx.subscript() != null ? Symbols.array(name) : name, ctx.expression(), null));
+            return null;
+        }
+
+        @Override
+        public Void visitDimstmt(LittleBasicParser.DimstmtContext ctx) {
+            assignments.add(new Assignment(Symbols.array(ctx.vardecl().varname().ID().getText()), null,
+                    ctx.vardecl().varsuffix() != null ? Type.STRING : Type.NUMBER));
+            return null;
+        }
+
+        @Override
+        public Void visitInputstmt(LittleBasicParser.InputstmtContext ctx) {
+            assignments.add(new Assignment(ctx.vardecl().getText(), null, Type.DYNAMIC));
+            return null;
+        }
+
+        @Override
+        public Void visitForstmt(LittleBasicParser.ForstmtContext ctx) {
+            assignments.add(new Assignment(ctx.vardecl().varname().ID().getText(), ctx));
+            return super.visitForstmt(ctx);
+        }
+    }
+
+    private class ExpressionTyper extends LittleBasicBaseVisitor<Type> {
+
+        @Override
+        public Type visitString(LittleBasicParser.StringContext ctx) {
+            return Type.STRING;
+        }
+
+        @Override
+        public Type visitNumber(LittleBasicParser.NumberContext ctx) {
+            return ctx.getText().indexOf('.') < 0 ? Type.NUMBER : Type.DYNAMIC;
+        }
+
+        @Override
+        public Type visitId(LittleBasicParser.IdContext ctx) {
+            return typeOf(ctx.getText());
+        }
+
+        @Override
+        public Type visitParenExpr(LittleBasicParser.ParenExprContext ctx) {
+            return typeOf(ctx.expression());
+        }
+
+        @Override
+        public Type visitElementExpr(LittleBasicParser.ElementExprContext ctx) {
+            return typeOf(Symbols.array(ctx.ID().getText()));
+        }
+
+        @Override
+        public Type visitAddSubExpr(LittleBasicParser.AddSubExprContext ctx) {
+            Type left = typeOf(ctx.expression(0));
+            Type right = typeOf(ctx.expression(1));
+            if (ctx.op.getType() == LBExpressionParser.SUB) {
+                return arithmetic(left, right);
+            }
+            if (left == Type.UNSET || right == Type.UNSET) {
+                return Type.UNSET;
+            }
+            if (left == Type.NUMBER && right == Type.NUMBER) {
+                return Type.NUMBER;
+            }
+            if (left != Type.DYNAMIC && right != Type.DYNAMIC) {
+                return Type.STRING;
+            }
+            return Type.DYNAMIC;
+        }
+
+        @Override
+        public Type visitValfunc(LittleBasicParser.ValfuncContext ctx) {
+            Type arg = typeOf(ctx.expression());
+            if (arg == Type.UNSET || arg == Type.NUMBER) {
+                return arg;
+            }
+            return Type.DYNAMIC; // a number or NaN
+        }
+
+        @Override
+        public Type visitMulDivExpr(LittleBasicParser.MulDivExprContext ctx) {
+            return arithmetic(typeOf(ctx.expression(0)), typeOf(ctx.expression(1)));
+        }
+
+        @Override
+        public Type visitExpExpr(LittleBasicParser.ExpExprContext ctx) {
+            return arithmetic(typeOf(ctx.expression(0)), typeOf(ctx.expression(1)));
+        }
+
+        // everything else is an integer or fails
+
+        @Override
+        public Type visitRelExpr(LittleBasicParser.RelExprContext ctx) {
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitNotExpr(LittleBasicParser.NotExprContext ctx) {
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitAndExpr(LittleBasicParser.AndExprContext ctx) {
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitOrExpr(LittleBasicParser.OrExprContext ctx) {
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitLenfunc(LittleBasicParser.LenfuncContext ctx) {
+            return Type.NUMBER;
+        }
+
+        @Override
+        public Type visitIsnanfunc(LittleBasicParser.IsnanfuncContext ctx) {
+            return Type.NUMBER;
+        }
+    }
+}
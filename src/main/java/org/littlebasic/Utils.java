@@ -1,5 +1,9 @@
 package org.littlebasic;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Utility methods.
  */
@@ -9,4 +13,14 @@ public class Utils {
         return "Error at [" + line + ", " + posInLine + "]: " + message;
     }
 
+    public static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
 }
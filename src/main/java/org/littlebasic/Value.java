@@ -1,47 +1,284 @@
 package org.littlebasic;
 
-import java.util.function.BiFunction;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 
 /**
  * Value class that encapsulates numeric and string values and the
  * corresponding operations.
+ *
+ * Numbers are kept in a primitive field next to a type tag, so arithmetic
+ * and comparisons don't box. Small numbers are cached, use {@link #of(long)}
+ * instead of the constructor where possible.
+ *
+ * Numbers come in tiers. Integers are longs, and become BigIntegers only
+ * when a result doesn't fit in a long, going back to longs when it does
+ * again. Numbers written with a fractional part, like 3.14, are
+ * BigDecimals, or doubles with {@link Interpreter.Fractions#DOUBLE}, and
+ * so is everything computed from them. Integers divide like integers,
+ * fractions divide exactly, rounded to 34 digits when they must. The
+ * compiled modes work on longs without values, and fall back to values
+ * when a number leaves them (see {@link Overflow}).
+ *
+ * Strings built by concatenation are ropes: a prefix of a buffer shared
+ * with the value they were appended to. Appending to the longest value of
+ * a buffer appends to the buffer in place, so building a string piece by
+ * piece is linear. The characters are only copied out into a
+ * {@code String} when something needs them all, e.g. PRINT or =, and
+ * that copy replaces the rope. LEN never needs it.
  */
 public class Value {
 
-    public static final Value FALSE = new Value(0);
-    public static final Value TRUE = new Value(1);
+    /**
+     * Thrown where a long was expected but the number doesn't fit in one,
+     * either as the result of an operation on longs or because it's a
+     * BigInteger, a BigDecimal or a double already. Whoever expected the
+     * long evaluates the same expression again on values. It never leaves
+     * a run, there is a single instance without a stack trace.
+     */
+    public static final class Overflow extends RuntimeException {
+        private Overflow() {
+            super("The number doesn't fit in a long", null, false, false);
+        }
+    }
+
+    static final Overflow OVERFLOW = new Overflow();
+
+    private static final byte NUMBER = 0;
+    private static final byte STRING = 1;
+    private static final byte NONE = 2;
+    /** An integer that doesn't fit in a long, the BigInteger is in chars. */
+    private static final byte BIG = 3;
+    /** The BigDecimal is in chars. */
+    private static final byte DECIMAL = 4;
+    /** The bits of the double are in number. */
+    private static final byte DOUBLE = 5;
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final Value[] CACHE = new Value[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new Value(CACHE_LOW + i);
+        }
+    }
+
+    public static final Value FALSE = of(0);
+    public static final Value TRUE = of(1);
     public static final Value NaN = new Value(null, true);
 
-    private Object value;
-    private boolean isNaN;
+    /**
+     * Numbers are limited to about this many digits, so that a single ^
+     * can't take all the memory.
+     */
+    static final int MAX_DIGITS = 10_000;
+    private static final int MAX_BITS = 33_220;
+
+    /**
+     * Concatenations shorter than this make plain strings, a buffer isn't worth it.
+     */
+    private static final int ROPE_LENGTH = 64;
+
+    private final byte type;
+    private final long number;
+    /*
+     * The String, or the StringBuilder whose first length characters are a
+     * rope. Only ever replaced by the String of the same characters, which
+     * is safe to publish without synchronization. One field for both keeps
+     * values as small as they were before ropes. Also the BigInteger or the
+     * BigDecimal of wide numbers.
+     */
+    private Object chars;
+    private final int length;
+    private final boolean isNaN;
 
     public Value(String value) {
-        this.value = value;
+        this.type = value != null ? STRING : NONE;
+        this.number = 0;
+        this.chars = value;
+        this.length = value != null ? value.length() : 0;
+        this.isNaN = false;
     }
 
     public Value(long value) {
-        this.value = value;
+        this.type = NUMBER;
+        this.number = value;
+        this.chars = null;
+        this.length = 0;
+        this.isNaN = false;
     }
 
-    private Value(Object value, boolean isNaN) {
-        this.value = value;
+    private Value(String value, boolean isNaN) {
+        this.type = NONE;
+        this.number = 0;
+        this.chars = value;
+        this.length = 0;
         this.isNaN = isNaN;
     }
 
+    private Value(StringBuilder buffer, int length) {
+        this.type = STRING;
+        this.number = 0;
+        this.chars = buffer;
+        this.length = length;
+        this.isNaN = false;
+    }
+
+    private Value(byte type, long number, Object chars) {
+        this.type = type;
+        this.number = number;
+        this.chars = chars;
+        this.length = 0;
+        this.isNaN = false;
+    }
+
+    /**
+     * Returns a numeric value, shared if the number is small.
+     */
+    public static Value of(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[(int) value - CACHE_LOW];
+        }
+        return new Value(value);
+    }
+
+    /**
+     * An integer, as a long if it fits in one.
+     *
+     * @throws TypeException if it has more than {@link #MAX_DIGITS} digits
+     */
+    static Value of(BigInteger value) {
+        if (value.bitLength() < 64) {
+            return of(value.longValue());
+        }
+        if (value.bitLength() > MAX_BITS) {
+            throw tooLarge();
+        }
+        return new Value(BIG, 0, value);
+    }
+
+    /**
+     * A fraction, as a BigDecimal even if it's a whole number.
+     *
+     * @throws TypeException if it has more than {@link #MAX_DIGITS} digits
+     */
+    static Value of(BigDecimal value) {
+        if (value.precision() > MAX_DIGITS || Math.abs(value.scale()) > MAX_DIGITS) {
+            throw tooLarge();
+        }
+        return new Value(DECIMAL, 0, value);
+    }
+
+    /**
+     * @throws TypeException if it's infinite or not a number
+     */
+    static Value of(double value) {
+        if (Double.isNaN(value)) {
+            throw new TypeException("Couldn't evaluate numeric expression. The result is not a number");
+        }
+        if (Double.isInfinite(value)) {
+            throw tooLarge();
+        }
+        return new Value(DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * Parses a number written like a literal of the language, with an
+     * optional sign: digits, then a fractional part if it's a fraction.
+     * Returns null if it isn't such a number.
+     *
+     * @param doubles whether fractions are doubles rather than BigDecimals
+     */
+    static Value parse(String text, boolean doubles) {
+        int length = text.length();
+        int start = length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+') ? 1 : 0;
+        int digits = 0;
+        int point = -1;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && point < 0 && digits > 0) {
+                point = i;
+            } else if (c >= '0' && c <= '9') {
+                digits++;
+            } else {
+                return null;
+            }
+        }
+        if (digits == 0 || point == length - 1) {
+            return null;
+        }
+        if (point < 0) {
+            if (length - start <= 18) {
+                return of(Long.parseLong(text));
+            }
+            return of(new BigInteger(text));
+        }
+        BigDecimal fraction = new BigDecimal(text);
+        return doubles ? of(fraction.doubleValue()) : of(fraction);
+    }
+
     public long internalNumber() {
-        return (long)value;
+        return number;
     }
 
     public String internalString() {
-        return (String)value;
+        Object chars = this.chars;
+        if (chars instanceof StringBuilder) {
+            // constants can be ropes too, and those are shared between runs
+            StringBuilder buffer = (StringBuilder) chars;
+            String string;
+            synchronized (buffer) {
+                string = buffer.substring(0, length);
+            }
+            this.chars = string;
+            return string;
+        }
+        return type == STRING || type == NONE ? (String) chars : null;
+    }
+
+    /**
+     * What PRINT shows for the value, and what + appends to a string.
+     */
+    String text() {
+        switch (type) {
+            case NUMBER:
+                return Long.toString(number);
+            case BIG:
+                return chars.toString();
+            case DECIMAL:
+                return ((BigDecimal) chars).toPlainString();
+            case DOUBLE:
+                return Double.toString(Double.longBitsToDouble(number));
+            default:
+                return internalString();
+        }
+    }
+
+    /**
+     * The length of the string, without copying a rope.
+     */
+    int stringLength() {
+        return length;
     }
 
     public boolean isString() {
-        return value instanceof String;
+        return type == STRING;
     }
 
+    /**
+     * Whether this is a number, of any tier.
+     */
     public boolean isNumber() {
-        return value instanceof Long;
+        return type == NUMBER || type >= BIG;
+    }
+
+    /**
+     * Whether this is a number that fits in a long, which {@link #internalNumber()} is then.
+     */
+    public boolean isLong() {
+        return type == NUMBER;
     }
 
     public boolean isNaN() {
@@ -49,100 +286,340 @@ public class Value {
     }
 
     public boolean isTrue() {
+        if (type == NUMBER) {
+            return number != 0;
+        }
         assertNumber();
-        return internalNumber() != 0;
+        return signum() != 0;
     }
 
     public boolean isFalse() {
-        assertNumber();
-        return internalNumber() == 0;
+        return !isTrue();
     }
 
     private void assertNumber() {
         if (!isNumber()) {
-            throw new TypeException("Couldn't evaluate numeric expression. Value \"" + value + "\" is not a number");
+            throw new TypeException("Couldn't evaluate numeric expression. Value \"" + internalString()
+                    + "\" is not a number");
         }
     }
 
+    /**
+     * The number, a {@link TypeException} if this isn't one, or an
+     * {@link Overflow} if it doesn't fit in a long.
+     */
+    long checkedNumber() {
+        if (type != NUMBER) {
+            assertNumber();
+            throw OVERFLOW;
+        }
+        return number;
+    }
+
+    /**
+     * About how many bytes this value takes on the heap, its string or its digits included.
+     */
+    long estimatedBytes() {
+        switch (type) {
+            case STRING:
+                return 32 + 40 + 2L * length;
+            case BIG:
+                return 32 + 40 + ((BigInteger) chars).bitLength() / 8;
+            case DECIMAL:
+                // about 0.415 bytes a digit, without making the unscaled BigInteger
+                return 32 + 80 + ((BigDecimal) chars).precision() * 5L / 12;
+            default:
+                return 32;
+        }
+    }
+
+    private void assertNumbers(Value right) {
+        assertNumber();
+        right.assertNumber();
+    }
+
+    // the wide tiers
+
+    private int signum() {
+        switch (type) {
+            case BIG:
+                return ((BigInteger) chars).signum();
+            case DECIMAL:
+                return ((BigDecimal) chars).signum();
+            case DOUBLE:
+                return (int) Math.signum(Double.longBitsToDouble(number));
+            default:
+                return Long.signum(number);
+        }
+    }
+
+    private boolean isInteger() {
+        return type == NUMBER || type == BIG;
+    }
+
+    private BigInteger bigInteger() {
+        return type == BIG ? (BigInteger) chars : BigInteger.valueOf(number);
+    }
+
+    private BigDecimal bigDecimal() {
+        switch (type) {
+            case BIG:
+                return new BigDecimal((BigInteger) chars);
+            case DECIMAL:
+                return (BigDecimal) chars;
+            case DOUBLE:
+                return new BigDecimal(Double.longBitsToDouble(number));
+            default:
+                return BigDecimal.valueOf(number);
+        }
+    }
+
+    private double doubleValue() {
+        switch (type) {
+            case BIG:
+                return ((BigInteger) chars).doubleValue();
+            case DECIMAL:
+                return ((BigDecimal) chars).doubleValue();
+            case DOUBLE:
+                return Double.longBitsToDouble(number);
+            default:
+                return number;
+        }
+    }
+
+    /**
+     * +, -, *, / or MOD of two numbers, at least one of them not a long or
+     * the result of two longs not fitting in one. Doubles win over the other
+     * tiers and fractions over integers.
+     */
+    private Value arithmetic(Value right, char op) {
+        assertNumbers(right);
+        if (type == DOUBLE || right.type == DOUBLE) {
+            double l = doubleValue();
+            double r = right.doubleValue();
+            switch (op) {
+                case '+':
+                    return of(l + r);
+                case '-':
+                    return of(l - r);
+                case '*':
+                    return of(l * r);
+                case '/':
+                    return of(l / checkDivisor(r));
+                default:
+                    return of(l % checkDivisor(r));
+            }
+        }
+        if (type == DECIMAL || right.type == DECIMAL) {
+            BigDecimal l = bigDecimal();
+            BigDecimal r = right.bigDecimal();
+            switch (op) {
+                case '+':
+                    return of(l.add(r));
+                case '-':
+                    return of(l.subtract(r));
+                case '*':
+                    return of(l.multiply(r));
+                case '/':
+                    return of(l.divide(checkDivisor(r), MathContext.DECIMAL128));
+                default:
+                    return of(l.remainder(checkDivisor(r)));
+            }
+        }
+        BigInteger l = bigInteger();
+        BigInteger r = right.bigInteger();
+        switch (op) {
+            case '+':
+                return of(l.add(r));
+            case '-':
+                return of(l.subtract(r));
+            case '*':
+                return of(l.multiply(r));
+            case '/':
+                return of(l.divide(checkDivisor(r)));
+            default:
+                return of(l.remainder(checkDivisor(r)));
+        }
+    }
+
+    private static double checkDivisor(double divisor) {
+        if (divisor == 0) {
+            throw new ArithmeticException("/ by zero");
+        }
+        return divisor;
+    }
+
+    private static BigInteger checkDivisor(BigInteger divisor) {
+        if (divisor.signum() == 0) {
+            throw new ArithmeticException("/ by zero");
+        }
+        return divisor;
+    }
+
+    private static BigDecimal checkDivisor(BigDecimal divisor) {
+        if (divisor.signum() == 0) {
+            throw new ArithmeticException("/ by zero");
+        }
+        return divisor;
+    }
+
+    /**
+     * Compares two numbers, at least one of them not a long.
+     */
+    private int compareNumbers(Value right) {
+        if (type == DOUBLE || right.type == DOUBLE) {
+            double l = doubleValue();
+            double r = right.doubleValue();
+            return l < r ? -1 : l > r ? 1 : 0;
+        }
+        return bigDecimal().compareTo(right.bigDecimal());
+    }
+
+    private static TypeException zeroToNegative(String base, String exponent) {
+        return new TypeException("Couldn't evaluate " + base + " ^ " + exponent
+                + ". Zero has no negative powers");
+    }
+
+    private static TypeException tooLarge() {
+        return new TypeException("Couldn't evaluate numeric expression. The result is too large");
+    }
+
+    // operations, the first branch of each is the fast path on longs
+
     public Value mul(Value right) {
-        return arithmeticEval(right, (l, r) -> l * r);
+        if (type == NUMBER && right.type == NUMBER) {
+            try {
+                return of(multiplyExact(number, right.number));
+            } catch (Overflow e) {
+                // doesn't fit in a long
+            }
+        }
+        return arithmetic(right, '*');
     }
 
     public Value div(Value right) {
-        return arithmeticEval(right, (l, r) -> l / r);
+        if (type == NUMBER && right.type == NUMBER && (number != Long.MIN_VALUE || right.number != -1)) {
+            return of(number / right.number);
+        }
+        return arithmetic(right, '/');
     }
 
     public Value mod(Value right) {
-        return arithmeticEval(right, (l, r) -> l % r);
+        if (type == NUMBER && right.type == NUMBER) {
+            return of(number % right.number);
+        }
+        return arithmetic(right, '%');
     }
 
     public Value add(Value right) {
-        if (isString() && right.isString()) {
-            return new Value(internalString() + right.internalString());
+        if (type == NUMBER && right.type == NUMBER) {
+            try {
+                return of(addExact(number, right.number));
+            } catch (Overflow e) {
+                // doesn't fit in a long
+            }
+        } else if (isString() && right.isString()) {
+            return concat(right.internalString());
         } else if (isString() && right.isNumber()) {
-            return new Value(internalString() + right.internalNumber());
+            return concat(right.text());
         } else if (isNumber() && right.isString()) {
-            return new Value(internalNumber() + right.internalString());
-        } else {
-            return arithmeticEval(right, (l, r) -> l + r);
+            return new Value(text()).concat(right.internalString());
         }
+        return arithmetic(right, '+');
     }
 
-    public Value sub(Value right) {
-        return arithmeticEval(right, (l, r) -> l - r);
+    /**
+     * This string followed by the given one. Appends to the buffer of this
+     * value if nothing was appended to it yet, otherwise starts a new one.
+     */
+    Value concat(String right) {
+        int total = length + right.length();
+        Object chars = this.chars;
+        if (chars instanceof StringBuilder) {
+            StringBuilder buffer = (StringBuilder) chars;
+            synchronized (buffer) {
+                if (buffer.length() == length) {
+                    buffer.append(right);
+                } else {
+                    buffer = new StringBuilder(total * 2).append(buffer, 0, length).append(right);
+                }
+            }
+            return new Value(buffer, total);
+        }
+        if (total < ROPE_LENGTH) {
+            return new Value(((String) chars).concat(right));
+        }
+        return new Value(new StringBuilder(total * 2).append((String) chars).append(right), total);
     }
 
-    private Value arithmeticEval(Value right, BiFunction<Long, Long, Long> oper) {
-        assertNumber();
-        right.assertNumber();
-        return new Value(oper.apply(internalNumber(), right.internalNumber()));
+    /**
+     * Whether both strings have the same characters, only copied out of
+     * ropes when the lengths are the same.
+     */
+    boolean stringEquals(Value right) {
+        return length == right.length && internalString().equals(right.internalString());
+    }
+
+    public Value sub(Value right) {
+        if (type == NUMBER && right.type == NUMBER) {
+            try {
+                return of(subtractExact(number, right.number));
+            } catch (Overflow e) {
+                // doesn't fit in a long
+            }
+        }
+        return arithmetic(right, '-');
     }
 
     public Value gt(Value right) {
-        return relEval(right, (l, r) -> l > r);
+        if (type == NUMBER && right.type == NUMBER) {
+            return number > right.number ? TRUE : FALSE;
+        }
+        assertNumbers(right);
+        return compareNumbers(right) > 0 ? TRUE : FALSE;
     }
 
     public Value gte(Value right) {
-        return relEval(right, (l, r) -> l >= r);
+        if (type == NUMBER && right.type == NUMBER) {
+            return number >= right.number ? TRUE : FALSE;
+        }
+        assertNumbers(right);
+        return compareNumbers(right) >= 0 ? TRUE : FALSE;
     }
 
     public Value lt(Value right) {
-        return relEval(right, (l, r) -> l < r);
+        if (type == NUMBER && right.type == NUMBER) {
+            return number < right.number ? TRUE : FALSE;
+        }
+        assertNumbers(right);
+        return compareNumbers(right) < 0 ? TRUE : FALSE;
     }
 
     public Value lte(Value right) {
-        return relEval(right, (l, r) -> l <= r);
+        if (type == NUMBER && right.type == NUMBER) {
+            return number <= right.number ? TRUE : FALSE;
+        }
+        assertNumbers(right);
+        return compareNumbers(right) <= 0 ? TRUE : FALSE;
     }
 
     public Value eq(Value right) {
-        if (isNumber() && right.isNumber()) {
-            return relEval(right, (l, r) -> l == r);
+        if (type == NUMBER && right.type == NUMBER) {
+            return number == right.number ? TRUE : FALSE;
         } else if (isString() && right.isString()) {
-            return internalString().equals(right.internalString()) ? TRUE : FALSE;
+            return stringEquals(right) ? TRUE : FALSE;
+        } else if (isNumber() && right.isNumber()) {
+            return compareNumbers(right) == 0 ? TRUE : FALSE;
         }
         return FALSE;
     }
 
     public Value neq(Value right) {
-        Value eq = eq(right);
-        return eq.equals(TRUE) ? FALSE : TRUE;
-    }
-
-    private Value relEval(Value right, BiFunction<Long, Long, Boolean> comparison) {
-        assertNumber();
-        right.assertNumber();
-        if (comparison.apply(internalNumber(), right.internalNumber())) {
-            return TRUE;
-        }
-        return FALSE;
+        return eq(right) == TRUE ? FALSE : TRUE;
     }
 
     public Value not() {
-        assertNumber();
-        if (internalNumber() == 0) {
-            return TRUE;
-        }
-        return FALSE;
+        return isTrue() ? FALSE : TRUE;
     }
 
     public Value and(Value right) {
@@ -154,11 +631,192 @@ public class Value {
     }
 
     public Value exp(Value right) {
-        assertNumber();
-        right.assertNumber();
-        return new Value(Math.round(Math.pow(internalNumber(), right.internalNumber())));
+        if (type == NUMBER && right.type == NUMBER) {
+            try {
+                return of(power(number, right.number));
+            } catch (Overflow e) {
+                // too large for a long
+            }
+        }
+        assertNumbers(right);
+        if (type == DOUBLE || right.type == DOUBLE) {
+            return of(Math.pow(doubleValue(), right.doubleValue()));
+        }
+        BigInteger exponent;
+        if (right.type == DECIMAL) {
+            BigDecimal fraction = (BigDecimal) right.chars;
+            if (fraction.signum() != 0 && fraction.stripTrailingZeros().scale() > 0) {
+                throw new TypeException("Couldn't evaluate " + text() + " ^ " + right.text()
+                        + ". Fractional exponents need doubles");
+            }
+            exponent = fraction.toBigInteger();
+        } else {
+            exponent = right.bigInteger();
+        }
+        if (exponent.signum() < 0 && signum() == 0) {
+            throw zeroToNegative(text(), right.text());
+        }
+        if (isInteger() && right.isInteger()) {
+            BigInteger base = bigInteger();
+            if (base.abs().compareTo(BigInteger.ONE) <= 0) {
+                // 0, 1 or -1, only the sign and the parity of the exponent matter
+                return of(power(base.longValue(), exponent.signum() * (exponent.testBit(0) ? 1L : 2L)));
+            }
+            if (exponent.signum() < 0) {
+                return of(0);
+            }
+            if (exponent.bitLength() > 31 || (long) base.bitLength() * exponent.intValue() > MAX_BITS) {
+                throw tooLarge(this, right);
+            }
+            return of(base.pow(exponent.intValue()));
+        }
+        // a fraction, or anything to an integral fraction
+        BigDecimal base = bigDecimal();
+        if (base.signum() == 0 || base.abs().compareTo(BigDecimal.ONE) == 0) {
+            long sign = exponent.signum() * (exponent.testBit(0) ? 1L : 2L);
+            return of(BigDecimal.valueOf(power(base.longValue(), sign)));
+        }
+        if (exponent.bitLength() > 31 || (long) base.precision() * Math.abs(exponent.intValue()) > MAX_DIGITS) {
+            throw tooLarge(this, right);
+        }
+        int n = exponent.intValue();
+        if (n >= 0) {
+            return of(base.pow(n));
+        }
+        return of(BigDecimal.ONE.divide(base.pow(-n), MathContext.DECIMAL128));
+    }
+
+    /** The largest number whose square is a long. */
+    private static final long MAX_SQUARE_ROOT = 3037000499L;
+
+    /**
+     * Base to the power of the exponent, exactly, by squaring. Negative
+     * exponents truncate towards zero, like a division.
+     *
+     * @throws Overflow if the result doesn't fit in a long
+     * @throws TypeException for zero to a negative power
+     */
+    static long power(long base, long exponent) {
+        if (exponent < 0) {
+            if (base == 0) {
+                throw zeroToNegative("0", Long.toString(exponent));
+            }
+            if (base == 1 || base == -1) {
+                return (exponent & 1) == 0 ? 1 : base;
+            }
+            return 0;
+        }
+        long result = 1;
+        long square = base;
+        long remaining = exponent;
+        while (true) {
+            if ((remaining & 1) != 0) {
+                result = multiplyExact(result, square);
+            }
+            remaining >>>= 1;
+            if (remaining == 0) {
+                return result;
+            }
+            // squaring overflows only if the result would
+            square = multiplyExact(square, square);
+        }
+    }
+
+    /**
+     * Base ^ 2, as a single multiplication.
+     *
+     * @throws Overflow if the result doesn't fit in a long
+     */
+    static long square(long base) {
+        if (base > MAX_SQUARE_ROOT || base < -MAX_SQUARE_ROOT) {
+            throw OVERFLOW;
+        }
+        return base * base;
+    }
+
+    /**
+     * 2 ^ (log2 * exponent), i.e. a power of a base that is itself a power of
+     * two, as a shift.
+     *
+     * @throws Overflow if the result doesn't fit in a long
+     */
+    static long shiftPower(int log2, long exponent) {
+        if (exponent < 0) {
+            return 0;
+        }
+        if (exponent > 62 / log2) {
+            throw OVERFLOW;
+        }
+        return 1L << (log2 * exponent);
+    }
+
+    private static TypeException tooLarge(Value base, Value exponent) {
+        return new TypeException("Couldn't evaluate " + base.text() + " ^ " + exponent.text()
+                + ". The result is too large");
+    }
+
+    // arithmetic on longs for the compiled modes, which evaluate again on values when it overflows
+
+    /**
+     * @throws Overflow if the sum doesn't fit in a long
+     */
+    static long addExact(long left, long right) {
+        try {
+            return Math.addExact(left, right);
+        } catch (ArithmeticException e) {
+            throw OVERFLOW;
+        }
     }
 
+    /**
+     * @throws Overflow if the difference doesn't fit in a long
+     */
+    static long subtractExact(long left, long right) {
+        try {
+            return Math.subtractExact(left, right);
+        } catch (ArithmeticException e) {
+            throw OVERFLOW;
+        }
+    }
+
+    /**
+     * @throws Overflow if the product doesn't fit in a long
+     */
+    static long multiplyExact(long left, long right) {
+        try {
+            return Math.multiplyExact(left, right);
+        } catch (ArithmeticException e) {
+            throw OVERFLOW;
+        }
+    }
+
+    /**
+     * @throws Overflow for the one quotient that doesn't fit in a long
+     */
+    static long divideExact(long left, long right) {
+        if (left == Long.MIN_VALUE && right == -1) {
+            throw OVERFLOW;
+        }
+        return left / right;
+    }
+
+    /**
+     * A bound or the step of a FOR loop: numbers are what they are, anything
+     * else counts as 0.
+     */
+    static Value forBound(Value value) {
+        return value.isNumber() ? value : of(value.internalNumber());
+    }
+
+    /**
+     * Whether a FOR loop up to the last value by the step, both longs, can
+     * count in a long: a counter that is at most the last value plus the step
+     * never overflows. Loops going down don't end in practice, and count
+     * with values.
+     */
+    static boolean countsInLongs(long last, long step) {
+        return step >= 0 && last <= Long.MAX_VALUE - step;
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -167,13 +825,25 @@ public class Value {
 
         Value value1 = (Value) o;
 
+        if (type != value1.type) return false;
         if (isNaN != value1.isNaN) return false;
-        return value != null ? value.equals(value1.value) : value1.value == null;
+        if (number != value1.number) return false;
+        if (type == BIG || type == DECIMAL) {
+            return compareNumbers(value1) == 0;
+        }
+        String string = internalString();
+        return string != null ? string.equals(value1.internalString()) : value1.internalString() == null;
     }
 
     @Override
     public int hashCode() {
-        int result = value != null ? value.hashCode() : 0;
+        int result = type;
+        result = 31 * result + (int) (number ^ (number >>> 32));
+        if (type == BIG || type == DECIMAL) {
+            return 31 * result + bigDecimal().stripTrailingZeros().hashCode();
+        }
+        String string = internalString();
+        result = 31 * result + (string != null ? string.hashCode() : 0);
         result = 31 * result + (isNaN ? 1 : 0);
         return result;
     }
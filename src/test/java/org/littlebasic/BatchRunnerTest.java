@@ -0,0 +1,109 @@
+package org.littlebasic;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path programs;
+    private Path output;
+
+    private void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(String file) throws IOException {
+        return new String(Files.readAllBytes(output.resolve(file)), StandardCharsets.UTF_8);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        programs = folder.newFolder("programs").toPath();
+        output = folder.getRoot().toPath().resolve("out");
+        write(programs.resolve("a.bas"), "PRINT 1 + 1\n");
+        write(programs.resolve("sub/b.bas"), "INPUT \"name?\" n\nPRINT \"hi \" + n\n");
+        write(programs.resolve("sub/b.in"), "bob\n");
+        write(programs.resolve("c.bas"), "PRINT +\n");
+        write(programs.resolve("d.bas"), "PRINT 1\nPRINT \"a\" * 2\n");
+        write(programs.resolve("notes.txt"), "not a program\n");
+    }
+
+    private List<BatchRunner.Result> run(Path batch) throws Exception {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        return new BatchRunner(interpreter, 2, output).run(BatchRunner.root(batch), BatchRunner.programs(batch));
+    }
+
+    @Test
+    public void testDirectory() throws Exception {
+        List<BatchRunner.Result> results = run(programs);
+        assertEquals(4, results.size());
+        assertEquals(Paths.get("a.bas"), results.get(0).program);
+        assertEquals(Paths.get("c.bas"), results.get(1).program);
+        assertEquals(Paths.get("d.bas"), results.get(2).program);
+        assertEquals(Paths.get("sub", "b.bas"), results.get(3).program);
+        assertFalse(results.get(0).failed);
+        assertTrue(results.get(1).failed);
+        assertTrue(results.get(2).failed);
+        assertFalse(results.get(3).failed);
+
+        assertEquals("2\n", read("a.out"));
+        assertEquals("", read("a.err"));
+        assertEquals("", read("c.out"));
+        assertTrue(read("c.err").contains("Error at [1, 6]: Syntax error"));
+        assertEquals("1\n", read("d.out"));
+        assertTrue(read("d.err").startsWith("Error at [2, 0]:"));
+        assertEquals("name? hi bob\n", read("sub/b.out"));
+    }
+
+    @Test
+    public void testList() throws Exception {
+        Path list = folder.getRoot().toPath().resolve("list.txt");
+        write(list, "programs/a.bas\n\nprograms/sub/b.bas\n");
+        List<BatchRunner.Result> results = run(list);
+        assertEquals(2, results.size());
+        assertEquals(Paths.get("programs", "a.bas"), results.get(0).program);
+        assertEquals("2\n", read("programs/a.out"));
+        assertEquals("name? hi bob\n", read("programs/sub/b.out"));
+    }
+
+    @Test
+    public void testMissingProgram() throws Exception {
+        Path list = folder.getRoot().toPath().resolve("list.txt");
+        write(list, "programs/missing.bas\n");
+        List<BatchRunner.Result> results = run(list);
+        assertTrue(results.get(0).failed);
+        assertTrue(read("programs/missing.err").startsWith("Error running program: java.nio.file.NoSuchFileException"));
+    }
+
+    @Test
+    public void testSummary() throws Exception {
+        String summary = BatchRunner.summary(run(programs), 2_000_000_000L, 2);
+        assertTrue(summary, summary.startsWith("Ran 4 programs in 2.000 s (2.0 programs/s) on 2 workers\n"
+                + "Failed: 2\n  c.bas\n  d.bas\nTime per program: min "));
+        assertTrue(summary, summary.contains("Slowest:\n"));
+        assertEquals(Arrays.asList("Ran 0 programs in 0.000 s (0.0 programs/s) on 1 workers", "Failed: 0"),
+                Arrays.asList(BatchRunner.summary(Collections.emptyList(), 0, 1).split("\n")));
+    }
+}
@@ -0,0 +1,100 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledProgramTest {
+
+    private static InputStream source(String program) {
+        return new ByteArrayInputStream(program.getBytes());
+    }
+
+    private static Interpreter interpreter(ProgramCache cache) {
+        return new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream(), cache);
+    }
+
+    @Test
+    public void testRunTwice() throws IOException {
+        CompiledProgram program = interpreter(new ProgramCache()).compile(source("x = 1\nPRINT x + 1"));
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        Memory firstMemory = program.run(new ByteArrayInputStream(new byte[0]), first);
+        firstMemory.assign("y", Value.of(5));
+        Memory secondMemory = program.run(new ByteArrayInputStream(new byte[0]), second);
+        assertEquals("2\n", first.toString());
+        assertEquals("2\n", second.toString());
+        assertEquals(1L, secondMemory.get("x").internalNumber());
+        assertNull(secondMemory.get("y"));
+    }
+
+    @Test
+    public void testCacheHit() throws IOException {
+        ProgramCache cache = new ProgramCache();
+        Interpreter interpreter = interpreter(cache);
+        CompiledProgram first = interpreter.compile(source("PRINT 1"));
+        CompiledProgram second = interpreter(cache).compile(source("PRINT 1"));
+        interpreter.compile(source("PRINT 2"));
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCachedPerOptimizations() throws IOException {
+        ProgramCache cache = new ProgramCache();
+        Interpreter interpreter = interpreter(cache);
+        CompiledProgram optimized = interpreter.compile(source("PRINT 1 + 2"));
+        interpreter.setOptimizations(EnumSet.noneOf(Interpreter.Optimization.class));
+        CompiledProgram plain = interpreter.compile(source("PRINT 1 + 2"));
+        assertNotSame(optimized, plain);
+        assertSame(plain, interpreter.compile(source("PRINT 1 + 2")));
+    }
+
+    @Test
+    public void testCacheEviction() throws IOException {
+        ProgramCache cache = new ProgramCache(2);
+        Interpreter interpreter = interpreter(cache);
+        CompiledProgram first = interpreter.compile(source("PRINT 1"));
+        interpreter.compile(source("PRINT 2"));
+        interpreter.compile(source("PRINT 1"));
+        interpreter.compile(source("PRINT 3"));
+        assertEquals(1, cache.getEvictions());
+        assertSame(first, interpreter.compile(source("PRINT 1")));
+        interpreter.compile(source("PRINT 2"));
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBytecode() throws IOException {
+        Interpreter interpreter = interpreter(new ProgramCache());
+        CompiledProgram nodes = interpreter.compile(source("x = 1\nPRINT x + 1"));
+        interpreter.setMode(Interpreter.Mode.BYTECODE);
+        CompiledProgram bytecode = interpreter.compile(source("x = 1\nPRINT x + 1"));
+        assertFalse(nodes.isBytecode());
+        assertTrue(bytecode.isBytecode());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Memory memory = bytecode.run(new ByteArrayInputStream(new byte[0]), out);
+        assertEquals("2\n", out.toString());
+        assertEquals(1L, memory.get("x").internalNumber());
+    }
+
+    @Test(expected = SyntaxException.class)
+    public void testSyntaxError() throws IOException {
+        interpreter(new ProgramCache()).compile(source("LET = 1"));
+    }
+}
@@ -0,0 +1,135 @@
+package org.littlebasic;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Many programs running at the same time on one interpreter mustn't see
+ * each other's variables or output.
+ */
+@RunWith(Parameterized.class)
+public class ConcurrentInterpreterTest {
+
+    private static final int THREADS = 16;
+    private static final int RUNS = 2000;
+
+    /**
+     * The same source for every run, so they all share one compiled program.
+     */
+    private static final String SHARED =
+            "INPUT \"\" n\n" +
+            "x = VAL(n)\n" +
+            "FOR i = 1 TO 100\n" +
+            "    x = x + 1\n" +
+            "NEXT\n" +
+            "PRINT \"run \" + n + \": \" + x\n";
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] {
+                {Interpreter.Mode.COMPILED},
+                {Interpreter.Mode.VISITOR},
+                {Interpreter.Mode.STREAMING},
+                {Interpreter.Mode.BYTECODE}
+        });
+    }
+
+    private final Interpreter.Mode mode;
+
+    public ConcurrentInterpreterTest(Interpreter.Mode mode) {
+        this.mode = mode;
+    }
+
+    private static String[] run(Interpreter interpreter, String program, String input) throws Exception {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Memory memory = interpreter.run(new ByteArrayInputStream(program.getBytes()),
+                new ByteArrayInputStream(input.getBytes()), stdout, stderr);
+        return new String[] {stdout.toString(), stderr.toString(),
+                memory != null ? String.valueOf(memory.get("x").internalNumber()) : null};
+    }
+
+    @Test
+    public void testNoCrossTalk() throws Exception {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        interpreter.setMode(mode);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String[]>> results = new ArrayList<>();
+            for (int i = 0; i < RUNS; i++) {
+                final int n = i;
+                results.add(pool.submit(new Callable<String[]>() {
+                    @Override
+                    public String[] call() throws Exception {
+                        if (n % 2 == 0) {
+                            return run(interpreter, SHARED, n + "\n");
+                        }
+                        // a source of its own, compiled and cached concurrently with the others
+                        return run(interpreter, "x = " + n + "\nPRINT x * 2\ny = x + \"a\" - 1\n", "");
+                    }
+                }));
+            }
+            for (int i = 0; i < RUNS; i++) {
+                String[] result = results.get(i).get();
+                if (i % 2 == 0) {
+                    assertEquals(" run " + i + ": " + (i + 100) + "\n", result[0]);
+                    assertEquals("", result[1]);
+                    assertEquals(String.valueOf(i + 100), result[2]);
+                } else {
+                    assertEquals((i * 2) + "\n", result[0]);
+                    assertEquals("Error at [3, 0]: Couldn't evaluate numeric expression. Value \"" + i
+                            + "a\" is not a number\n", result[1]);
+                    assertEquals(String.valueOf(i), result[2]);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs one after the other reuse the output, the parser and the memory,
+     * and must still start from scratch, without closing the streams.
+     */
+    @Test
+    public void testRunsInTurn() throws Exception {
+        boolean[] closed = new boolean[1];
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]), stdout,
+                new ByteArrayOutputStream());
+        interpreter.setMode(mode);
+        String program = "x = 41\nPRINT x + 1\n";
+        for (int i = 0; i < 3; i++) {
+            interpreter.run(new ByteArrayInputStream(program.getBytes()));
+            assertEquals(41L, interpreter.getMemory().get("x").internalNumber());
+            assertEquals(null, interpreter.getMemory().get("z"));
+            interpreter.getMemory().assign("z", Value.of(i));
+            interpreter.run(new ByteArrayInputStream(("y = " + i + "\nPRINT y\n").getBytes()));
+            assertEquals(null, interpreter.getMemory().get("x"));
+            assertEquals(null, interpreter.getMemory().get("z"));
+            interpreter.getMemory().assign("z", Value.of(i));
+        }
+        assertEquals("42\n0\n42\n1\n42\n2\n", stdout.toString());
+        assertEquals(false, closed[0]);
+    }
+}
@@ -0,0 +1,97 @@
+package org.littlebasic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class DaemonTest {
+
+    private Daemon daemon;
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() throws IOException {
+        daemon = new Daemon(new Interpreter(System.in, System.out, System.err), 0);
+        Thread server = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        daemon.close();
+    }
+
+    private int connect(String program, String stdin) throws IOException {
+        return Daemon.connect(daemon.getPort(), program != null ? program.getBytes() : null,
+                new ByteArrayInputStream(stdin.getBytes()), stdout, stderr);
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        assertEquals(0, connect("INPUT \"a?\" a\nPRINT VAL(a) * 2\n", "21\n"));
+        assertEquals("a? 42\n", stdout.toString());
+        assertEquals("", stderr.toString());
+    }
+
+    @Test
+    public void testRunFails() throws IOException {
+        assertEquals(1, connect("PRINT 1\nPRINT \"a\" * 2\n", ""));
+        assertEquals("1\n", stdout.toString());
+        assertEquals("Error at [2, 0]: Couldn't evaluate numeric expression. Value \"a\" is not a number\n", stderr.toString());
+    }
+
+    /**
+     * Sends the request line on its own and returns what the daemon answered on stderr.
+     */
+    private String request(String line) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+            socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+            socket.shutdownOutput();
+            DataInputStream frames = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            int channel;
+            while ((channel = frames.readByte()) != 0) {
+                byte[] data = new byte[frames.readInt()];
+                frames.readFully(data);
+                if (channel == 2) {
+                    errors.write(data);
+                }
+            }
+            assertEquals(1, frames.readInt());
+            return errors.toString("US-ASCII");
+        }
+    }
+
+    @Test
+    public void testBadLength() throws IOException {
+        assertEquals("Bad request: RUN -1\n", request("RUN -1"));
+        assertEquals("Bad request: RUN 2000000000\n", request("RUN 2000000000"));
+        assertEquals("Bad request: RUN x\n", request("RUN x"));
+        assertEquals(0, connect("PRINT 1\n", ""));
+    }
+
+    @Test
+    public void testRepl() throws IOException {
+        assertEquals(0, connect(null, "x = 5\nWHILE x > 3\n    x = x - 1\nEND\nPRINT x\n"));
+        assertEquals("> > ... ... > 3\n> ", stdout.toString());
+    }
+}
@@ -0,0 +1,154 @@
+package org.littlebasic;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs programs that never end against execution limits, in every mode.
+ */
+@RunWith(Parameterized.class)
+public class LimitsTest {
+
+    private static final String FOREVER = "i = 0\nWHILE 1\n    i = i + 1\nEND\n";
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> modes() {
+        List<Object[]> modes = new ArrayList<>();
+        for (Interpreter.Mode mode : Interpreter.Mode.values()) {
+            modes.add(new Object[] {mode});
+        }
+        return modes;
+    }
+
+    private final Interpreter.Mode mode;
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    private final Interpreter interpreter;
+
+    public LimitsTest(Interpreter.Mode mode) {
+        this.mode = mode;
+        this.interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]), stdout, stderr);
+        interpreter.setMode(mode);
+    }
+
+    private Memory run(String program) throws IOException {
+        return interpreter.run(new ByteArrayInputStream(program.getBytes()), new ByteArrayInputStream(new byte[0]),
+                stdout, stderr);
+    }
+
+    @Test
+    public void testStatements() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxStatements(100));
+        Memory memory = run(FOREVER);
+        assertEquals("Error at [3, 4]: More than 100 statements executed\n", stderr.toString());
+        assertEquals(98, memory.get("i").internalNumber());
+    }
+
+    @Test
+    public void testIterations() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxIterations(10));
+        Memory memory = run("PRINT 0\nFOR i = 1 TO 1000\n    x = i\nNEXT\n");
+        assertEquals("Error at [2, 0]: More than 10 loop iterations\n", stderr.toString());
+        assertEquals(10, memory.get("x").internalNumber());
+        assertEquals("0\n", stdout.toString());
+    }
+
+    @Test
+    public void testNestedIterations() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxIterations(25));
+        Memory memory = run("FOR i = 1 TO 10\n    j = 0\n    REPEAT\n        j = j + 1\n    UNTIL j = 10\nNEXT\n");
+        assertEquals("Error at [3, 4]: More than 25 loop iterations\n", stderr.toString());
+        assertEquals(3, memory.get("i").internalNumber());
+    }
+
+    @Test
+    public void testWithinLimits() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxStatements(4).withMaxIterations(3)
+                .withMaxWallTime(1, TimeUnit.MINUTES).withMaxMemoryBytes(1 << 20));
+        run("FOR i = 1 TO 3\n    PRINT i\nNEXT\n");
+        assertEquals("", stderr.toString());
+        assertEquals("1\n2\n3\n", stdout.toString());
+    }
+
+    @Test(timeout = 10000)
+    public void testWallTime() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxWallTime(50, TimeUnit.MILLISECONDS));
+        run(FOREVER);
+        assertTrue(stderr.toString(), stderr.toString().matches("Error at \\[[234], [04]\\]: Ran longer than 50 ms\n"));
+    }
+
+    @Test(timeout = 10000)
+    public void testMemory() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxMemoryBytes(1 << 20));
+        Memory memory = run("s = \"x\"\nWHILE 1\n    s = s + s\nEND\n");
+        assertEquals("Error at [2, 0]: Memory larger than 1048576 bytes\n", stderr.toString());
+        assertEquals(1 << 19, memory.get("s").internalString().length());
+    }
+
+    @Test
+    public void testArrayMemory() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxMemoryBytes(1 << 20));
+        Memory memory = run("DIM a(1000)\nPRINT 1\nDIM b(1000000)\nPRINT 2\n");
+        assertEquals("Error at [3, 0]: Memory larger than 1048576 bytes\n", stderr.toString());
+        assertEquals("1\n", stdout.toString());
+        assertEquals(1001, memory.array("a").length());
+        assertNull(memory.array("b"));
+    }
+
+    @Test(timeout = 10000)
+    public void testElementMemory() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxMemoryBytes(1 << 20));
+        Memory memory = run("DIM a$(1)\na(1) = \"x\"\nWHILE 1\n    a(1) = a(1) + a(1)\nEND\n");
+        assertEquals("Error at [3, 0]: Memory larger than 1048576 bytes\n", stderr.toString());
+        assertEquals(1 << 19, memory.array("a").get(1).internalString().length());
+    }
+
+    @Test(timeout = 10000)
+    public void testCancellation() throws Exception {
+        Cancellation cancellation = new Cancellation();
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cancellation.cancel();
+        });
+        canceller.start();
+        interpreter.run(null, new ByteArrayInputStream(FOREVER.getBytes()), new ByteArrayInputStream(new byte[0]),
+                stdout, stderr, cancellation);
+        canceller.join();
+        assertTrue(stderr.toString(), stderr.toString().matches("Error at \\[[234], [04]\\]: Run cancelled\n"));
+    }
+
+    @Test
+    public void testCancelledBeforehand() throws IOException {
+        Cancellation cancellation = new Cancellation();
+        cancellation.cancel();
+        interpreter.run(null, new ByteArrayInputStream("PRINT 1\n".getBytes()), new ByteArrayInputStream(new byte[0]),
+                stdout, stderr, cancellation);
+        // checked after the first CHECK_INTERVAL statements
+        assertEquals("1\n", stdout.toString());
+    }
+
+    @Test
+    public void testLocationOfNestedStatement() throws IOException {
+        interpreter.setLimits(Limits.none().withMaxStatements(3));
+        run("FOR i = 1 TO 3\n    IF i = 2 THEN\n        PRINT i\n    END\nNEXT\n");
+        assertEquals("Error at [3, 8]: More than 3 statements executed\n", stderr.toString());
+        assertEquals("", stdout.toString());
+    }
+}
@@ -1,19 +1,43 @@
 package org.littlebasic;
 
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
 import static org.junit.Assert.assertEquals;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
  * Created by matei on 2/23/17.
  */
+@RunWith(Parameterized.class)
 public class LittleBasicTest {
 
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] {
+                {Interpreter.Mode.COMPILED},
+                {Interpreter.Mode.VISITOR},
+                {Interpreter.Mode.STREAMING},
+                {Interpreter.Mode.BYTECODE}
+        });
+    }
+
+    private final Interpreter.Mode mode;
+
+    public LittleBasicTest(Interpreter.Mode mode) {
+        this.mode = mode;
+    }
+
     private static class Result {
 
         public Interpreter interpreter;
@@ -32,11 +56,18 @@ public class LittleBasicTest {
     }
 
     private void test(String resource, String input, Consumer<Result> assertions) {
+        test(resource, input, EnumSet.allOf(Interpreter.Optimization.class), assertions);
+    }
+
+    private void test(String resource, String input, Set<Interpreter.Optimization> optimizations,
+                      Consumer<Result> assertions) {
         try {
             ByteArrayOutputStream stdout = new ByteArrayOutputStream();
             ByteArrayOutputStream stderr = new ByteArrayOutputStream();
             ByteArrayInputStream stdin = new ByteArrayInputStream(input.getBytes());
             Interpreter interpreter = new Interpreter(stdin, stdout, stderr);
+            interpreter.setMode(mode);
+            interpreter.setOptimizations(optimizations);
             interpreter.run(resource(resource));
             String output = new String(stdout.toByteArray());
             String error = new String(stderr.toByteArray());
@@ -89,6 +120,20 @@ public class LittleBasicTest {
         });
     }
 
+    @Test
+    public void testWhileContinue() {
+        test("while_continue.bas", (result) -> {
+            assertEquals("1\n3\n5\n", result.output);
+        });
+    }
+
+    @Test
+    public void testRepeatContinue() {
+        test("repeat_continue.bas", (result) -> {
+            assertEquals("3\n4\ndone\n", result.output);
+        });
+    }
+
     @Test
     public void testIfSimpleTrue() {
         test("if_simple_true.bas", (result) -> {
@@ -124,6 +169,36 @@ public class LittleBasicTest {
         });
     }
 
+    @Test
+    public void testParens() {
+        test("parens.bas", (result) -> {
+            assertEquals("12\n" +
+                    "0\n" +
+                    "9\n" +
+                    "-4\n" +
+                    "3\n" +
+                    "n=10\n", result.output);
+            assertEquals("", result.error);
+        });
+    }
+
+    @Test
+    public void testInputFailure() throws IOException {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("closed");
+            }
+        };
+        Interpreter interpreter = new Interpreter(failing, stdout, stderr);
+        interpreter.setMode(mode);
+        interpreter.run(new ByteArrayInputStream("PRINT 1\nIF 1 THEN\n    INPUT \"a?\" a\nEND\nPRINT 2\n".getBytes()));
+        assertEquals("1\na? ", stdout.toString());
+        assertEquals("Error at [3, 4]: Couldn't read input: closed\n", stderr.toString());
+    }
+
     @Test
     public void testSynatxErr() {
         test("syntax_err.bas", (result) -> {
@@ -161,6 +236,32 @@ public class LittleBasicTest {
         });
     }
 
+    @Test
+    public void testShortCircuit() {
+        test("short_circuit.bas", (result) -> {
+            assertEquals("no division\n0\ndone\n", result.output);
+            assertEquals("", result.error);
+        });
+    }
+
+    @Test
+    public void testShortCircuitSkipsTypeError() {
+        test("short_circuit_types.bas", (result) -> {
+            assertEquals("done\n", result.output);
+            assertEquals("", result.error);
+        });
+    }
+
+    @Test
+    public void testWithoutShortCircuit() {
+        test("short_circuit_types.bas", "", EnumSet.complementOf(EnumSet.of(Interpreter.Optimization.SHORT_CIRCUIT)),
+                (result) -> {
+                    assertEquals("", result.output);
+                    assertEquals("Error at [1, 0]: Couldn't evaluate numeric expression. Value \"a\" is not a number",
+                            result.error.trim());
+                });
+    }
+
     @Test
     public void testInput() {
         test("input.bas", "Little Basic\n", (result) -> {
@@ -0,0 +1,173 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    private static final String PROGRAM = "s = 0\n"
+            + "FOR i = 1 TO 10\n"
+            + "    IF i MOD 2 = 0 THEN\n"
+            + "        s = s + i\n"
+            + "    END\n"
+            + "NEXT\n"
+            + "PRINT s\n";
+
+    private static void run(Interpreter.Mode mode, String name, String program) throws IOException {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        interpreter.setMode(mode);
+        interpreter.run(name, new ByteArrayInputStream(program.getBytes()));
+    }
+
+    private static long sum(long[] histogram) {
+        long sum = 0;
+        for (long count : histogram) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        for (Interpreter.Mode mode : new Interpreter.Mode[] {Interpreter.Mode.COMPILED, Interpreter.Mode.STREAMING,
+                Interpreter.Mode.VISITOR}) {
+            String name = "counts " + mode;
+            run(mode, name, PROGRAM);
+            run(mode, name, PROGRAM);
+            Metrics metrics = Metrics.program(name);
+            assertEquals(2, metrics.getProgramsRun());
+            assertEquals(2 * 18, metrics.getStatementsExecuted());
+            assertEquals(2 * 10, metrics.getLoopIterations());
+            assertEquals(2 * ("30" + System.lineSeparator()).length(), metrics.getPrintBytes());
+            assertEquals(0, metrics.getInterpreterExceptions());
+            assertEquals(2, sum(metrics.getExecutionTimeHistogram()));
+            assertTrue(metrics.getExecutionTimeTotalNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testParseOnlyOnCacheMiss() throws IOException {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        interpreter.run("cached", new ByteArrayInputStream(PROGRAM.getBytes()));
+        interpreter.run("cached", new ByteArrayInputStream(PROGRAM.getBytes()));
+        Metrics metrics = Metrics.program("cached");
+        assertEquals(2, metrics.getProgramsRun());
+        assertEquals(1, sum(metrics.getParseTimeHistogram()));
+    }
+
+    @Test
+    public void testExceptions() throws IOException {
+        run(Interpreter.Mode.COMPILED, "failing", "PRINT 1\nx = \"a\" * 2\n");
+        run(Interpreter.Mode.COMPILED, "failing", "PRINT 1 +\n");
+        Metrics metrics = Metrics.program("failing");
+        assertEquals(2, metrics.getProgramsRun());
+        assertEquals(2, metrics.getInterpreterExceptions());
+        assertEquals(1, metrics.getTypeExceptions());
+    }
+
+    @Test
+    public void testTotal() throws IOException {
+        long before = Metrics.total().getProgramsRun();
+        run(Interpreter.Mode.VISITOR, null, PROGRAM);
+        assertTrue(Metrics.total().getProgramsRun() > before);
+    }
+
+    @Test
+    public void testMBeans() throws IOException, JMException {
+        run(Interpreter.Mode.COMPILED, "jmx, \"quoted\"", PROGRAM);
+        assertSame(Metrics.program("jmx, \"quoted\""), Metrics.program("jmx, \"quoted\""));
+        ObjectName name = new ObjectName("org.littlebasic:type=Metrics,scope=program,name="
+                + ObjectName.quote("jmx, \"quoted\""));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ProgramsRun"));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(
+                new ObjectName("org.littlebasic:type=Metrics,scope=total")));
+    }
+
+    @Test
+    public void testUnregister() throws IOException, JMException {
+        run(Interpreter.Mode.COMPILED, "unregistered", PROGRAM);
+        Metrics metrics = Metrics.program("unregistered");
+        ObjectName name = new ObjectName("org.littlebasic:type=Metrics,scope=program,name="
+                + ObjectName.quote("unregistered"));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        Metrics.unregister("unregistered");
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        assertNotSame(metrics, Metrics.program("unregistered"));
+        assertEquals(0, Metrics.program("unregistered").getProgramsRun());
+        Metrics.unregister("unregistered");
+    }
+
+    @Test
+    public void testOnlyRecentProgramsKept() throws JMException {
+        Metrics first = Metrics.program("evicted 0");
+        for (int i = 1; i <= Metrics.MAX_PROGRAMS; i++) {
+            Metrics.program("evicted " + i);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(
+                "org.littlebasic:type=Metrics,scope=program,name=" + ObjectName.quote("evicted 0"))));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(
+                "org.littlebasic:type=Metrics,scope=program,name=" + ObjectName.quote("evicted 1"))));
+        assertNotSame(first, Metrics.program("evicted 0"));
+        for (int i = 0; i <= Metrics.MAX_PROGRAMS; i++) {
+            Metrics.unregister("evicted " + i);
+        }
+    }
+
+    @Test
+    public void testAllocationHistogram() throws IOException {
+        run(Interpreter.Mode.COMPILED, "allocation", PROGRAM);
+        run(Interpreter.Mode.COMPILED, "allocation", "s = \"\"\nFOR i = 1 TO 100000\n    s = \"x\" + i\nNEXT\n");
+        Metrics metrics = Metrics.program("allocation");
+        long[] histogram = metrics.getAllocationHistogram();
+        assertEquals(metrics.getAllocationBucketsBytes().length + 1, histogram.length);
+        assertEquals(2, sum(histogram));
+        assertTrue(metrics.getAllocatedBytes() > 1_000_000);
+        metrics.reset();
+        assertEquals(0, sum(metrics.getAllocationHistogram()));
+    }
+
+    @Test
+    public void testStringElementsDontAllocate() throws IOException {
+        // the same elements read a hundred and a hundred thousand times, from an already compiled program
+        long few = allocatedBytes(100);
+        long many = allocatedBytes(100_000);
+        assertTrue(few + " and " + many + " bytes", many - few < 100_000);
+    }
+
+    private static long allocatedBytes(int reads) throws IOException {
+        String name = "string elements " + reads;
+        String program = "DIM s$(9)\nFOR i = 0 TO 9\n    s(i) = \"x\" + i\nNEXT\nn = 0\n"
+                + "FOR i = 1 TO " + reads + "\n    word = s(i MOD 10)\n    n = n + LEN(word)\nNEXT\n";
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        interpreter.setMode(Interpreter.Mode.BYTECODE);
+        interpreter.run(name, new ByteArrayInputStream(program.getBytes()));
+        long before = Metrics.program(name).getAllocatedBytes();
+        interpreter.run(name, new ByteArrayInputStream(program.getBytes()));
+        return Metrics.program(name).getAllocatedBytes() - before;
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        run(Interpreter.Mode.COMPILED, "reset", PROGRAM);
+        Metrics metrics = Metrics.program("reset");
+        metrics.reset();
+        assertEquals(0, metrics.getProgramsRun());
+        assertEquals(0, metrics.getStatementsExecuted());
+        assertEquals(0, sum(metrics.getExecutionTimeHistogram()));
+    }
+}
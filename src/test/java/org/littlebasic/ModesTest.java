@@ -0,0 +1,170 @@
+package org.littlebasic;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs small programs, mostly about corner cases of types and loops, in
+ * every mode and checks they behave like {@link LittleBasicVisitor}.
+ */
+@RunWith(Parameterized.class)
+public class ModesTest {
+
+    static final String[][] PROGRAMS = {
+            {"numbers", "a = 7\nb = a * 3 - 4 / 2 + 10 MOD 4\nPRINT b\nPRINT 2 ^ 10\nPRINT a > 3\nPRINT a = 7\n"},
+            {"strings", "s = \"ab\"\nt = s + \"cd\"\nPRINT t\nPRINT LEN(t)\nPRINT t = \"abcd\"\nPRINT s <> t\n"},
+            {"concat", "n = 5\ns = \"n=\" + n\nPRINT s\nPRINT n + \"!\"\nPRINT 1 + 2 + \"x\"\n"},
+            {"mixed variable", "x = 1\nPRINT x\nx = \"one\"\nPRINT x\nx = x + 1\nPRINT x\n"},
+            {"mixed equality", "PRINT 1 = \"1\"\nPRINT \"a\" <> 2\nx = 1\nIF x = \"1\" THEN\nPRINT \"yes\"\nELSE\nPRINT \"no\"\nEND\n"},
+            {"val", "PRINT VAL(\"42\") + 1\nPRINT ISNAN(VAL(\"x\"))\nPRINT VAL(3)\nPRINT ISNAN(1)\nPRINT ISNAN(\"s\")\n"},
+            {"print nan", "PRINT VAL(\"x\")\n"},
+            {"logic", "a = 1\nb = 0\nPRINT a AND b\nPRINT a OR b\nPRINT NOT b\nPRINT b AND \"x\"\nPRINT a OR \"x\"\n"},
+            {"logic error", "a = 1\nPRINT a AND \"x\"\n"},
+            {"not error", "PRINT NOT \"x\"\n"},
+            {"condition error", "s = \"x\"\nIF s THEN\nPRINT 1\nEND\n"},
+            {"relational error", "PRINT 1\nIF \"a\" < 2 THEN\nPRINT 1\nEND\n"},
+            {"left checked first", "PRINT \"a\" - \"b\"\n"},
+            {"len error", "PRINT LEN(1)\n"},
+            {"nested error", "FOR i = 1 TO 3\n    IF i = 2 THEN\n        x = \"a\" * i\n    END\n    PRINT i\nNEXT\n"},
+            {"for", "FOR i = 1 TO 10 STEP 3\n    PRINT i\nNEXT\nPRINT i\nFOR j = 5 TO 1\n    PRINT j\nNEXT\n"},
+            {"for reassigned", "FOR i = 1 TO 3\n    PRINT i\n    i = 10\nNEXT\nPRINT i\n"},
+            {"for string bounds", "FOR i = \"a\" TO 2\n    PRINT i\nNEXT\n"},
+            {"nested loops", "FOR i = 1 TO 3\n    j = 0\n    WHILE j < 5\n        j = j + 1\n        IF j = 2 THEN\n            CONTINUE\n        END\n        IF j = 4 THEN\n            EXIT\n        END\n        PRINT i * 10 + j\n    END\nNEXT\n"},
+            {"repeat", "i = 0\nREPEAT\n    i = i + 1\n    IF i = 2 THEN\n        CONTINUE\n    END\n    PRINT i\nUNTIL i >= 4\n"},
+            {"exit reevaluates condition", "s = 1\nWHILE s\n    s = \"x\"\n    EXIT\nEND\nPRINT s\n"},
+            {"exit checks nothing", "s = 1\nWHILE s\n    s = 0\n    s = \"x\"\n    EXIT\nEND\nPRINT s\n"},
+            {"failing body reevaluates condition", "s = 1\nWHILE s - 1 < 5\n    s = \"x\"\n    y = s * 2\nEND\n"},
+            {"top level exit", "PRINT 1\nIF 1 THEN\n    EXIT\nEND\nPRINT 2\n"},
+            {"top level continue", "PRINT 1\nCONTINUE\nPRINT 2\n"},
+            {"input", "INPUT \"a?\" a\nINPUT \"b?\" b\nPRINT a + b\nPRINT VAL(a) + VAL(b)\nINPUT \"c?\" c\nPRINT c\n"},
+            {"empty bodies", "FOR i = 1 TO 3\nNEXT\nWHILE 0\nEND\nREPEAT\nUNTIL 1\nPRINT i\n"},
+            {"comments", "REM start\nx = 1\nREM middle\nPRINT x\n"},
+            {"typed", "s = \"a\"\nt = \"b\"\nPRINT s = t\nPRINT s <> t\nPRINT LEN(s + t)\nn = 3\nPRINT NOT n\nPRINT n AND 0\nPRINT n OR 0\nPRINT VAL(n) ^ 2\nPRINT s + n + 1\nPRINT n + 1 + s\n"},
+            {"division by zero", "n = 0\nPRINT 1 / n\n"},
+            {"unassigned number", "IF 0 THEN\n    x = 1\nEND\nPRINT x + 1\n"},
+            {"unassigned string", "IF 0 THEN\n    s = \"a\"\nEND\nPRINT LEN(s)\n"},
+            {"folding", "PRINT 2 ^ 10 * 3\nPRINT LEN(\"abc\") + 1\nPRINT \"a\" + 1 + 2\nPRINT ISNAN(VAL(\"x\"))\nPRINT 3 > 2 AND 1\nPRINT NOT 0\n"},
+            {"folding error", "PRINT 1\nx = \"a\" - 1\n"},
+            {"folding division by zero", "PRINT 1\nPRINT 2 / 0\n"},
+            {"pruning", "IF 0 THEN\n    PRINT 1\nELSE IF 1 THEN\n    PRINT 2\nELSE IF x THEN\n    PRINT 3\nELSE\n    PRINT 4\nEND\nIF 1 - 1 THEN\n    PRINT 5\nEND\nx = 1\nIF x THEN\n    PRINT 6\nELSE IF 1 THEN\n    PRINT 7\nEND\n"},
+            {"pruned variable", "IF 0 THEN\n    y = 5\nEND\nPRINT 1\nPRINT y\n"},
+            {"pruning string condition", "PRINT 1\nIF 0 THEN\n    PRINT 2\nELSE IF \"s\" THEN\n    PRINT 3\nEND\n"},
+            {"pruned loop control", "FOR i = 1 TO 5\n    IF 1 THEN\n        IF i = 3 THEN\n            EXIT\n        END\n        CONTINUE\n    END\n    PRINT 0\nNEXT\nPRINT i\n"},
+            {"hoisting", "n = 3\ns = \"ab\"\nFOR i = 1 TO 3\n    PRINT n * 2 + i\n    PRINT LEN(s + \"c\") * n\n    j = 0\n    WHILE j < n * 2\n        j = j + 1\n    END\n    PRINT j\n    k = 0\n    REPEAT\n        k = k + 1\n    UNTIL k >= n - 1\n    PRINT k\n    n = n + 1\nNEXT\n"},
+            {"hoisted error", "s = \"x\"\nFOR i = 1 TO 3\n    PRINT i\n    IF i = 2 THEN\n        PRINT s * 2\n    END\nNEXT\n"},
+            {"hoisted unassigned", "IF 0 THEN\n    k = 1\nEND\nFOR i = 1 TO 2\n    PRINT i\n    PRINT k * 2\nNEXT\n"},
+            {"ropes", "s = \"a\"\nFOR i = 1 TO 100\n    s = s + \"bc\"\nNEXT\nt = s + \"x\"\nu = s + \"y\"\nPRINT LEN(s)\nPRINT LEN(t)\nPRINT t = u\nPRINT s + \"x\" = t\nPRINT t <> s + 1\nPRINT u\nn = 5 + s + 6\nPRINT LEN(n)\nPRINT s + s = s + s\n"},
+            {"short circuit", "n = 0\nx = 1\nx = \"a\"\nPRINT 0 AND 1 / n\nPRINT 1 OR \"s\" * 2\nPRINT 1 AND 2 > 1\nPRINT 0 OR 0\nIF n = 0 OR 1 / n > 1 THEN\n    PRINT \"guarded\"\nEND\nIF 0 AND x THEN\n    PRINT 1\nELSE IF NOT 1 OR x THEN\n    PRINT 2\nEND\n"},
+            {"short circuit loops", "i = 3\nWHILE i > 0 AND 6 / i < 6\n    PRINT i\n    i = i - 1\nEND\nREPEAT\n    i = i - 1\nUNTIL i < 0 OR 1 / i > 5\nPRINT i\n"},
+            {"powers", "x = 3\nPRINT x ^ 2\nPRINT x ^ 39\nPRINT 2 ^ x\nPRINT 8 ^ x\nPRINT 2 ^ 62\nPRINT x ^ 0\nm = 0 - 1\nPRINT 2 ^ m\nPRINT m ^ 3\nPRINT m ^ m\nn = 5\nFOR i = 1 TO 3\n    PRINT n ^ i + 4 ^ i + i ^ 2\nNEXT\n"},
+            {"zero to a negative power", "PRINT 1\nm = 0 - 1\nPRINT 0 ^ m\n"},
+            {"folding zero to a negative power", "PRINT 1\nPRINT 0 ^ (0 - 1)\n"},
+            {"power overflow", "x = 3\nPRINT x ^ 39\nPRINT x ^ 40\n"},
+            {"square overflow", "x = 3037000500\nPRINT x ^ 2\n"},
+            {"shift overflow", "x = 31\nPRINT 4 ^ x\nx = x + 1\nPRINT 4 ^ x\n"},
+            {"big integers", "x = 9223372036854775807\nPRINT x + 1\ny = x * x\nPRINT y\nPRINT y / x\nPRINT y - y + 5\nIF y > x THEN\n    PRINT \"bigger\"\nEND\nPRINT 123456789012345678901234567890\nPRINT \"y=\" + y\nPRINT y + \"!\"\nPRINT y = y + 0\nPRINT y MOD 10\n"},
+            {"big logic", "x = 9223372036854775807 * 2\nPRINT x AND 1\nPRINT 0 OR x\nPRINT NOT x\nIF x THEN\n    PRINT 1\nEND\nPRINT x > 0 AND x < x * x\n"},
+            {"doubling", "n = 1\nFOR i = 1 TO 70\n    n = n * 2\nNEXT\nPRINT n\nWHILE n > 1000\n    n = n / 1000\n    PRINT n\nEND\nPRINT n + 0\n"},
+            {"wide loop variable", "x = 4611686018427387904\nWHILE x < 36893488147419103232\n    x = x * 2\n    PRINT x\nEND\nREPEAT\n    x = x - 9223372036854775807\nUNTIL x < 0\nPRINT x\n"},
+            {"sums at the limit", "s = 9223372036854775000\nFOR i = 1 TO 807\n    s = s + 1\nNEXT\nPRINT s\nFOR i = 1 TO 2\n    s = s + 1\nNEXT\nPRINT s\nn = 9223372036854775806\nWHILE n < 9223372036854775807\n    n = n + 1\nEND\nPRINT n + 0\nPRINT n + 1\nm = 10\nWHILE m > 0\n    m = m - 3\n    PRINT m * 2\nEND\n"},
+            {"for wide", "FOR i = 9223372036854775805 TO 9223372036854775809\n    PRINT i\nNEXT\nPRINT i\nFOR j = 99999999999999999998 TO 99999999999999999999\n    PRINT j * 2\nNEXT\n"},
+            {"decimals", "a = 0.1\nb = a + 0.2\nPRINT b\nPRINT b = 0.3\nPRINT 10 / 4\nPRINT 10.0 / 4\nPRINT 1.5 * 2\nPRINT 1.1 ^ 2\nPRINT 7.5 MOD 2\nPRINT 2.50 - 1\nPRINT \"a=\" + a\nIF a < 1 AND a > 0 THEN\n    PRINT \"between\"\nEND\nPRINT 0.0 OR 0\n"},
+            {"for decimal step", "FOR j = 0 TO 1 STEP 0.25\n    PRINT j\nNEXT\nPRINT j\nFOR k = 1 TO 2.5\n    PRINT k\nNEXT\n"},
+            {"val numbers", "PRINT VAL(\"2.50\") * 2\nPRINT VAL(\"99999999999999999999\") + 1\nPRINT ISNAN(VAL(\"1.2.3\"))\nPRINT VAL(\"-3\") + 1\n"},
+            {"fractional exponent", "PRINT 1\nPRINT 4 ^ 0.5\n"},
+            {"too large", "PRINT 1\nx = 10\nPRINT x ^ 100000\n"},
+            {"hoisted input", "FOR i = 1 TO 2\n    INPUT \"?\" a\n    PRINT VAL(a) * 2\n    PRINT i + 0\nNEXT\n"},
+            {"parentheses", "PRINT (12)\nPRINT 1 > (12)\nx = 3\nPRINT (x + 1) * (x - 1)\nPRINT ((x))\nPRINT (x) + \"y\"\nIF (x > 2) AND (x < 4) THEN\n    PRINT \"in\"\nEND\nPRINT (\"a\" + x) * 2\n"},
+            {"arrays", "DIM a(10)\nFOR i = 0 TO 10\n    a(i) = i * i\nNEXT\nsum = 0\nFOR i = 0 TO 10\n    sum = sum + a(i)\nNEXT\nPRINT sum\nPRINT a(3) + a(10 - 7)\nLET a(0) = 5\nPRINT a(0)\nIF a(1) THEN\n    PRINT \"one\"\nEND\nDIM a(2)\nPRINT a(1)\nx = 7\nDIM x(x)\nx(x) = x\nPRINT x(7) + x\n"},
+            {"string arrays", "DIM s$(3)\ns$(1) = \"ab\"\ns(2) = s(1) + \"cd\"\nPRINT s(2)\nPRINT LEN(s(0))\nPRINT s(0) = \"\"\nFOR i = 1 TO 3\n    s(i) = s(i - 1) + i\nNEXT\nPRINT s(3)\nPRINT \"[\" + s(1) + \"]\"\n"},
+            {"wide elements", "DIM a(3)\na(1) = 9223372036854775807\na(2) = a(1) + 1\nPRINT a(2)\nPRINT a(2) - a(1)\na(2) = 5\nPRINT a(2) + 1\na(3) = 1.5\nPRINT a(3) * 2\na(0) = VAL(\"x\")\nPRINT ISNAN(a(0))\nPRINT a(9223372036854775807 - 9223372036854775806)\n"},
+            {"hoisted elements", "DIM a(3)\nb = 0\nFOR i = 1 TO 3\n    PRINT a(1) + i\n    a(1) = a(1) + 10\n    b = b + a(2)\nNEXT\nPRINT b\n"},
+            {"element out of bounds", "DIM a(3)\nPRINT 1\na(4) = 1\n"},
+            {"negative index", "DIM a(3)\nPRINT a(0 - 1)\n"},
+            {"wide index", "DIM a(3)\nPRINT a(9223372036854775807 + 1)\n"},
+            {"fractional index", "DIM a(3)\ni = 1.5\nPRINT a(i)\n"},
+            {"string index", "DIM a(3)\na(\"x\") = 1\n"},
+            {"index before value", "DIM a(3)\na(5) = \"x\" * 2\n"},
+            {"not dimensioned", "PRINT 1\nFOR i = 1 TO 3\n    PRINT a(i)\nNEXT\n"},
+            {"not dimensioned store", "a = 1\na(1) = a\n"},
+            {"string into numbers", "DIM a(3)\na(1) = \"x\"\n"},
+            {"number into strings", "DIM s$(3)\ns(1) = 1\n"},
+            {"negative dim", "n = 0 - 1\nDIM a(n)\n"},
+            {"huge dim", "DIM a(100000000)\n"},
+            {"string dim", "DIM a(\"x\")\n"},
+    };
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> programs() {
+        List<Object[]> programs = new ArrayList<>();
+        for (Interpreter.Mode mode : Interpreter.Mode.values()) {
+            if (mode == Interpreter.Mode.VISITOR) {
+                continue;
+            }
+            for (String[] program : PROGRAMS) {
+                programs.add(new Object[] {mode + " " + program[0], mode, program[1]});
+            }
+        }
+        return programs;
+    }
+
+    private final Interpreter.Mode mode;
+    private final String program;
+
+    public ModesTest(String name, Interpreter.Mode mode, String program) {
+        this.mode = mode;
+        this.program = program;
+    }
+
+    private String run(Interpreter.Mode mode, Set<Interpreter.Optimization> optimizations) {
+        return run(mode, optimizations, Interpreter.Fractions.DECIMAL);
+    }
+
+    private String run(Interpreter.Mode mode, Set<Interpreter.Optimization> optimizations,
+                       Interpreter.Fractions fractions) {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream("12\n30\n".getBytes()), stdout, stderr);
+        interpreter.setMode(mode);
+        interpreter.setOptimizations(optimizations);
+        interpreter.setFractions(fractions);
+        String failure = "";
+        try {
+            interpreter.run(new ByteArrayInputStream(program.getBytes()));
+        } catch (IOException | RuntimeException e) {
+            failure = e.getClass().getName();
+        }
+        return "out:\n" + stdout + "err:\n" + stderr + "failure: " + failure;
+    }
+
+    @Test
+    public void testSameAsVisitor() {
+        Set<Interpreter.Optimization> all = EnumSet.allOf(Interpreter.Optimization.class);
+        assertEquals(run(Interpreter.Mode.VISITOR, all), run(mode, all));
+    }
+
+    @Test
+    public void testSameAsVisitorWithoutShortCircuit() {
+        Set<Interpreter.Optimization> strict = EnumSet.complementOf(EnumSet.of(Interpreter.Optimization.SHORT_CIRCUIT));
+        assertEquals(run(Interpreter.Mode.VISITOR, strict), run(mode, strict));
+    }
+
+    @Test
+    public void testSameAsVisitorWithDoubles() {
+        Set<Interpreter.Optimization> all = EnumSet.allOf(Interpreter.Optimization.class);
+        assertEquals(run(Interpreter.Mode.VISITOR, all, Interpreter.Fractions.DOUBLE),
+                run(mode, all, Interpreter.Fractions.DOUBLE));
+    }
+}
@@ -0,0 +1,70 @@
+package org.littlebasic;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the programs of {@link ModesTest} with every optimization on its own
+ * and checks the output is the same as without any. Short-circuiting changes
+ * what fails, so it's on in all of them, {@link ModesTest} covers it.
+ */
+@RunWith(Parameterized.class)
+public class OptimizationsTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> programs() {
+        List<Object[]> programs = new ArrayList<>();
+        for (Interpreter.Optimization optimization : Interpreter.Optimization.values()) {
+            if (optimization == Interpreter.Optimization.SHORT_CIRCUIT) {
+                continue;
+            }
+            for (String[] program : ModesTest.PROGRAMS) {
+                programs.add(new Object[] {optimization + " " + program[0],
+                        EnumSet.of(optimization, Interpreter.Optimization.SHORT_CIRCUIT), program[1]});
+            }
+        }
+        for (String[] program : ModesTest.PROGRAMS) {
+            programs.add(new Object[] {"ALL " + program[0], EnumSet.allOf(Interpreter.Optimization.class), program[1]});
+        }
+        return programs;
+    }
+
+    private final Set<Interpreter.Optimization> optimizations;
+    private final String program;
+
+    public OptimizationsTest(String name, Set<Interpreter.Optimization> optimizations, String program) {
+        this.optimizations = optimizations;
+        this.program = program;
+    }
+
+    private String run(Set<Interpreter.Optimization> optimizations) {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream("12\n30\n".getBytes()), stdout, stderr);
+        interpreter.setOptimizations(optimizations);
+        String failure = "";
+        try {
+            interpreter.run(new ByteArrayInputStream(program.getBytes()));
+        } catch (IOException | RuntimeException e) {
+            failure = e.getClass().getName();
+        }
+        return "out:\n" + stdout + "err:\n" + stderr + "failure: " + failure;
+    }
+
+    @Test
+    public void testSameAsUnoptimized() {
+        assertEquals(run(EnumSet.of(Interpreter.Optimization.SHORT_CIRCUIT)), run(optimizations));
+    }
+}
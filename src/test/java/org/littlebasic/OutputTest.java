@@ -0,0 +1,82 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class OutputTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void testNumbers() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output out = new Output(bytes, false);
+        for (long n : new long[] {0, 7, -7, 10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            out.println(n);
+        }
+        out.flush();
+        assertEquals("0" + NL + "7" + NL + "-7" + NL + "10" + NL + "1234567890123" + NL
+                + Long.MAX_VALUE + NL + Long.MIN_VALUE + NL, bytes.toString());
+    }
+
+    @Test
+    public void testText() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output out = new Output(bytes, false);
+        StringBuilder large = new StringBuilder();
+        while (large.length() <= Output.BUFFER_SIZE) {
+            large.append("abcdefgh");
+        }
+        out.println((String) null);
+        out.print("ascii ");
+        out.println("été €");
+        out.println(large.toString());
+        out.flush();
+        assertArrayEquals(("null" + NL + "ascii été €" + NL + large + NL).getBytes(), bytes.toByteArray());
+    }
+
+    @Test
+    public void testBuffered() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output out = new Output(bytes, false);
+        out.println("line");
+        for (int i = 4 + NL.length(); i < Output.BUFFER_SIZE; i++) {
+            out.print("x");
+        }
+        assertEquals(0, bytes.size());
+        out.print("x");
+        assertEquals(Output.BUFFER_SIZE, bytes.size());
+        out.flush();
+        assertEquals(Output.BUFFER_SIZE + 1, bytes.size());
+    }
+
+    @Test
+    public void testLineFlush() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Output out = new Output(bytes, true);
+        out.print("a");
+        assertEquals("", bytes.toString());
+        out.println(42);
+        assertEquals("a42" + NL, bytes.toString());
+    }
+
+    @Test
+    public void testReset() {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        Output out = new Output(first, false);
+        out.println("first");
+        out.flush();
+        out.print("dropped");
+        out.reset(second, true);
+        assertEquals(0, out.written());
+        out.println(2);
+        assertEquals("first" + NL, first.toString());
+        assertEquals("2" + NL, second.toString());
+        assertEquals(1 + NL.length(), out.written());
+    }
+}
@@ -0,0 +1,148 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks exponentiation against BigInteger, for every base and exponent where
+ * the result is close to the limits of a long. Past them the longs overflow
+ * and values go on exactly.
+ */
+public class PowerTest {
+
+    private static final BigInteger MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static void check(long base, long exponent) {
+        BigInteger exact = BigInteger.valueOf(base).pow((int) exponent);
+        if (exact.compareTo(MIN) < 0 || exact.compareTo(MAX) > 0) {
+            try {
+                Value.power(base, exponent);
+                fail(base + " ^ " + exponent + " should overflow");
+            } catch (Value.Overflow e) {
+                // expected
+            }
+        } else {
+            assertEquals(base + " ^ " + exponent, exact.longValue(), Value.power(base, exponent));
+        }
+        assertEquals(base + " ^ " + exponent, exact.toString(), Value.of(base).exp(Value.of(exponent)).text());
+    }
+
+    @Test
+    public void testSmallBases() {
+        for (long base = -100; base <= 100; base++) {
+            for (long exponent = 0; exponent <= 70; exponent++) {
+                check(base, exponent);
+            }
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        check(2, 62);
+        check(2, 63);
+        check(-2, 63);
+        check(-2, 64);
+        check(3037000499L, 2);
+        check(3037000500L, 2);
+        check(-3037000500L, 2);
+        check(2097151, 3);
+        check(2097152, 3);
+        check(Long.MAX_VALUE, 1);
+        check(Long.MIN_VALUE, 1);
+        check(Long.MIN_VALUE, 2);
+        check(1, Integer.MAX_VALUE);
+        check(-1, Integer.MAX_VALUE);
+        check(0, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testPrecisionAboveDoubles() {
+        // Math.pow returns 3 ^ 39 rounded to a double, off by 11
+        assertEquals(4052555153018976267L, Value.power(3, 39));
+        assertEquals(4052555153018976267L, Value.of(3).exp(Value.of(39)).internalNumber());
+    }
+
+    @Test
+    public void testNegativeExponents() {
+        assertEquals(0, Value.power(2, -1));
+        assertEquals(0, Value.power(-7, -3));
+        assertEquals(1, Value.power(1, -5));
+        assertEquals(-1, Value.power(-1, -5));
+        assertEquals(1, Value.power(-1, -6));
+        assertEquals(1, Value.power(0, 0));
+    }
+
+    @Test
+    public void testPromotion() {
+        assertEquals("12157665459056928801", Value.of(3).exp(Value.of(40)).text());
+        assertEquals("-9223372036854775808", Value.of(-2).exp(Value.of(63)).text());
+        assertEquals(true, Value.of(-2).exp(Value.of(63)).isLong());
+        assertEquals(false, Value.of(2).exp(Value.of(63)).isLong());
+    }
+
+    @Test
+    public void testZeroToNegative() {
+        for (Value exponent : new Value[] {Value.of(-1), Value.of(-2), Value.of(Long.MIN_VALUE),
+                Value.of(Long.MIN_VALUE).sub(Value.of(1))}) {
+            try {
+                Value.of(0).exp(exponent);
+                fail("0 ^ " + exponent.text() + " should fail");
+            } catch (TypeException e) {
+                assertEquals("Error at [0, 0]: Couldn't evaluate 0 ^ " + exponent.text()
+                        + ". Zero has no negative powers", e.getMessage());
+            }
+        }
+        try {
+            Value.power(0, -3);
+            fail("0 ^ -3 should fail");
+        } catch (TypeException e) {
+            assertEquals("Error at [0, 0]: Couldn't evaluate 0 ^ -3. Zero has no negative powers", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSquare() {
+        for (long base : new long[] {0, 1, -1, 7, -7, 3037000499L, -3037000499L, 3037000500L, -3037000500L,
+                Long.MAX_VALUE, Long.MIN_VALUE}) {
+            long expected;
+            try {
+                expected = Value.power(base, 2);
+            } catch (Value.Overflow e) {
+                try {
+                    Value.square(base);
+                    fail(base + " ^ 2 should overflow");
+                } catch (Value.Overflow square) {
+                    // expected
+                }
+                continue;
+            }
+            assertEquals(expected, Value.square(base));
+        }
+    }
+
+    @Test
+    public void testShiftPower() {
+        for (int log2 = 1; log2 <= 6; log2++) {
+            for (long exponent = -3; exponent <= 64; exponent++) {
+                long expected;
+                try {
+                    expected = Value.power(1L << log2, exponent);
+                } catch (Value.Overflow e) {
+                    try {
+                        Value.shiftPower(log2, exponent);
+                        fail((1L << log2) + " ^ " + exponent + " should overflow");
+                    } catch (Value.Overflow shift) {
+                        // expected
+                    }
+                    continue;
+                }
+                assertEquals((1L << log2) + " ^ " + exponent, expected, Value.shiftPower(log2, exponent));
+            }
+        }
+    }
+}
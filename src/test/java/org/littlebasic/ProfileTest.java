@@ -0,0 +1,121 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProfileTest {
+
+    private static final String PROGRAM = "s = 0\n"
+            + "FOR i = 1 TO 10\n"
+            + "    IF i MOD 2 = 0 THEN\n"
+            + "        s = s + i\n"
+            + "    END\n"
+            + "NEXT\n"
+            + "PRINT s\n";
+
+    private static Interpreter interpreter(Interpreter.Mode mode) {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new ByteArrayOutputStream());
+        interpreter.setMode(mode);
+        return interpreter;
+    }
+
+    private static Map<Integer, Profile.Line> byLine(Profile profile) {
+        Map<Integer, Profile.Line> lines = new HashMap<>();
+        for (Profile.Line line : profile.getLines()) {
+            lines.put(line.getLine(), line);
+        }
+        return lines;
+    }
+
+    private static void assertCounts(Profile profile) {
+        Map<Integer, Profile.Line> lines = byLine(profile);
+        assertEquals(5, lines.size());
+        assertEquals(1, lines.get(1).getCount());
+        assertEquals(1, lines.get(2).getCount());
+        assertEquals(10, lines.get(3).getCount());
+        assertEquals(5, lines.get(4).getCount());
+        assertEquals(1, lines.get(7).getCount());
+        assertEquals("LET", lines.get(1).getStatement());
+        assertEquals("FOR", lines.get(2).getStatement());
+        assertEquals("IF", lines.get(3).getStatement());
+        assertEquals("PRINT", lines.get(7).getStatement());
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        for (Interpreter.Mode mode : new Interpreter.Mode[] {
+                Interpreter.Mode.COMPILED, Interpreter.Mode.STREAMING, Interpreter.Mode.BYTECODE}) {
+            Interpreter interpreter = interpreter(mode);
+            interpreter.setProfiling(true);
+            interpreter.run(new ByteArrayInputStream(PROGRAM.getBytes()));
+            assertCounts(interpreter.getProfile());
+            assertEquals(30L, interpreter.getMemory().get("s").internalNumber());
+        }
+    }
+
+    @Test
+    public void testSelfTime() throws IOException {
+        Interpreter interpreter = interpreter(Interpreter.Mode.COMPILED);
+        interpreter.setProfiling(true);
+        interpreter.run(new ByteArrayInputStream(PROGRAM.getBytes()));
+        Map<Integer, Profile.Line> lines = byLine(interpreter.getProfile());
+        Profile.Line loop = lines.get(2);
+        Profile.Line body = lines.get(3);
+        assertTrue(loop.getSelfNanos() >= 0);
+        assertEquals(loop.getTotalNanos(), loop.getSelfNanos() + body.getTotalNanos());
+        assertEquals(body.getTotalNanos(), body.getSelfNanos() + lines.get(4).getTotalNanos());
+    }
+
+    @Test
+    public void testFailingStatement() throws IOException {
+        Interpreter interpreter = interpreter(Interpreter.Mode.COMPILED);
+        Profile profile = new Profile();
+        interpreter.run(new ByteArrayInputStream("PRINT 1\nx = \"a\" * 2\nPRINT 2\n".getBytes()),
+                new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new ByteArrayOutputStream(),
+                profile);
+        Map<Integer, Profile.Line> lines = byLine(profile);
+        assertEquals(2, lines.size());
+        assertEquals(1, lines.get(2).getCount());
+    }
+
+    @Test
+    public void testNotProfiling() throws IOException {
+        Interpreter interpreter = interpreter(Interpreter.Mode.COMPILED);
+        interpreter.run(new ByteArrayInputStream(PROGRAM.getBytes()));
+        assertNull(interpreter.getProfile());
+        assertFalse(interpreter.compile(new ByteArrayInputStream(PROGRAM.getBytes())).isProfiled());
+        interpreter.setProfiling(true);
+        assertTrue(interpreter.compile(new ByteArrayInputStream(PROGRAM.getBytes())).isProfiled());
+    }
+
+    @Test
+    public void testReports() throws IOException {
+        Interpreter interpreter = interpreter(Interpreter.Mode.COMPILED);
+        interpreter.setProfiling(true);
+        interpreter.run(new ByteArrayInputStream(PROGRAM.getBytes()));
+        Profile profile = interpreter.getProfile();
+        assertNotNull(profile);
+        String[] text = profile.toText().split("\n");
+        assertEquals(6, text.length);
+        assertTrue(text[0].contains("self ms"));
+        String json = profile.toJson();
+        assertTrue(json.startsWith("{\"lines\":[{\"line\":"));
+        assertTrue(json.contains("\"statement\":\"IF\",\"count\":10,"));
+        assertTrue(json.endsWith("}]}"));
+        for (int i = 1; i < profile.getLines().size(); i++) {
+            assertTrue(profile.getLines().get(i - 1).getSelfNanos() >= profile.getLines().get(i).getSelfNanos());
+        }
+    }
+}
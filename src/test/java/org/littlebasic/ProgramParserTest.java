@@ -0,0 +1,56 @@
+package org.littlebasic;
+
+import basic.LittleBasicLexer;
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ProgramParserTest {
+
+    private static final String[] PROGRAMS = {
+            "for_continue.bas", "for_exit.bas", "for_simple.bas", "functions.bas", "gcd_euclid.bas",
+            "if_else.bas", "if_simple_false.bas", "if_simple_true.bas", "input.bas", "let.bas",
+            "operations.bas", "print.bas", "repeat.bas", "repeat_continue.bas", "type_err.bas",
+            "while.bas", "while_continue.bas"
+    };
+
+    private ANTLRInputStream resource(String filename) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/" + filename)) {
+            return new ANTLRInputStream(in);
+        }
+    }
+
+    @Test
+    public void testSameTreeAsFullLL() throws IOException {
+        for (String program : PROGRAMS) {
+            LittleBasicParser reference = new LittleBasicParser(
+                    new CommonTokenStream(new LittleBasicLexer(resource(program))));
+            String expected = reference.prog().toStringTree(reference);
+            LittleBasicParser.ProgContext tree = ProgramParser.parse(resource(program), new BaseErrorListener());
+            assertEquals(program, expected, tree.toStringTree(reference));
+        }
+    }
+
+    @Test
+    public void testSyntaxErrorLocation() throws IOException {
+        try {
+            ProgramParser.parse(resource("syntax_err.bas"), new BaseErrorListener());
+            fail();
+        } catch (SyntaxException e) {
+            assertEquals("Error at [1, 4]: Syntax error", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testWarmUp() {
+        Interpreter.warmUp();
+    }
+}
@@ -0,0 +1,119 @@
+package org.littlebasic;
+
+import basic.LittleBasicLexer;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.Token;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProgramSourceTest {
+
+    private static final String PROGRAM = "REM sums\ns = 0\nFOR i = 1 TO 10\n    s = s + i\nNEXT\n"
+            + "PRINT \"sum: \" + s\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    private Path write(String program) throws IOException {
+        Path file = folder.newFile("program.bas").toPath();
+        Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private Interpreter interpreter(Interpreter.Mode mode) {
+        Interpreter interpreter = new Interpreter(new ByteArrayInputStream(new byte[0]), stdout, stderr);
+        interpreter.setMode(mode);
+        return interpreter;
+    }
+
+    private static List<String> tokens(CharStream chars) {
+        List<String> tokens = new ArrayList<>();
+        LittleBasicLexer lexer = new LittleBasicLexer(chars);
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            tokens.add(token.getType() + ":" + token.getText() + "@" + token.getLine() + ","
+                    + token.getCharPositionInLine());
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testMappedTokens() throws IOException {
+        try (ProgramSource source = ProgramSource.of(write(PROGRAM))) {
+            CharStream chars = source.chars();
+            assertTrue(chars instanceof MappedCharStream);
+            assertEquals(tokens(new ANTLRInputStream(PROGRAM)), tokens(chars));
+        }
+    }
+
+    @Test
+    public void testSameKey() throws IOException {
+        try (ProgramSource source = ProgramSource.of(write(PROGRAM))) {
+            assertEquals(ProgramCache.key(PROGRAM.getBytes(StandardCharsets.UTF_8)), source.key());
+        }
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        for (Interpreter.Mode mode : Interpreter.Mode.values()) {
+            stdout.reset();
+            Path file = write(PROGRAM);
+            interpreter(mode).run(file);
+            assertEquals(mode.toString(), "sum: 55\n", stdout.toString());
+            assertEquals("", stderr.toString());
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCachedLikeStream() throws IOException {
+        Interpreter interpreter = interpreter(Interpreter.Mode.COMPILED);
+        CompiledProgram program = interpreter.compile(write(PROGRAM));
+        assertSame(program, interpreter.compile(new ByteArrayInputStream(PROGRAM.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testNotAscii() throws IOException {
+        String program = "PRINT \"h\u00e9llo\"\nPRINT LEN(\"\u00e9\")\n";
+        Path file = write(program);
+        try (ProgramSource source = ProgramSource.of(file)) {
+            assertTrue(!(source.chars() instanceof MappedCharStream));
+        }
+        // decoded with the default charset, same as streams
+        interpreter(Interpreter.Mode.COMPILED).run(new ByteArrayInputStream(program.getBytes(StandardCharsets.UTF_8)));
+        String streamed = stdout.toString();
+        stdout.reset();
+        interpreter(Interpreter.Mode.COMPILED).run(file);
+        assertEquals(streamed, stdout.toString());
+    }
+
+    @Test
+    public void testSyntaxError() throws IOException {
+        interpreter(Interpreter.Mode.COMPILED).run(write("PRINT 1\nPRINT +\n"));
+        assertTrue(stderr.toString(), stderr.toString().endsWith("Error at [2, 6]: Syntax error\n"));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        interpreter(Interpreter.Mode.COMPILED).run(write(""));
+        assertEquals("", stdout.toString());
+        assertEquals("", stderr.toString());
+    }
+}
@@ -0,0 +1,91 @@
+package org.littlebasic;
+
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RangesTest {
+
+    private static LittleBasicParser.ProgContext parse(String program) {
+        return ProgramParser.parse(new ANTLRInputStream(program), new BaseErrorListener());
+    }
+
+    private static LittleBasicParser.ExpressionContext let(LittleBasicParser.BlockContext block, int statement) {
+        return block.statement(statement).letstmt().expression();
+    }
+
+    /**
+     * The body of the loop in the body of the loop that is the given statement.
+     */
+    private static LittleBasicParser.BlockContext inner(LittleBasicParser.ProgContext tree, int statement) {
+        return tree.block().statement(statement).forstmt().block().statement(0).forstmt().block();
+    }
+
+    @Test
+    public void testForLoop() {
+        LittleBasicParser.ProgContext tree = parse("sum = 0\nFOR i = 1 TO 100000\n    sum = sum + i * 2 - 1\nNEXT\n"
+                + "f = 1\nFOR i = 1 TO 30\n    f = f * i\nNEXT\n");
+        TypeInference types = new TypeInference(tree);
+        LittleBasicParser.AddSubExprContext sum =
+                (LittleBasicParser.AddSubExprContext) let(tree.block().statement(1).forstmt().block(), 0);
+        assertTrue(types.fitsInLong(sum));
+        assertTrue(types.fitsInLong(sum.expression(0)));
+        assertFalse(types.fitsInLong(let(tree.block().statement(3).forstmt().block(), 0)));
+    }
+
+    @Test
+    public void testNestedLoops() {
+        LittleBasicParser.ProgContext tree = parse("n = 0\nFOR j = 1 TO 10\n    FOR k = 1 TO 1000000000000\n"
+                + "        n = n + 1\n    NEXT\nNEXT\nm = 0\nFOR j = 1 TO 10000000000\n    FOR k = 1 TO 10000000000\n"
+                + "        m = m + 1\n    NEXT\nNEXT\n");
+        TypeInference types = new TypeInference(tree);
+        assertTrue(types.fitsInLong(let(inner(tree, 1), 0)));
+        assertFalse(types.fitsInLong(let(inner(tree, 3), 0)));
+    }
+
+    @Test
+    public void testWhileGuard() {
+        LittleBasicParser.ProgContext tree = parse("i = 0\nodd = 0\nWHILE i < 100000\n    IF i MOD 2 = 1 THEN\n"
+                + "        odd = odd + 1\n    END\n    i = i + 1\nEND\n");
+        TypeInference types = new TypeInference(tree);
+        LittleBasicParser.BlockContext body = tree.block().statement(2).whilestmt().block();
+        assertTrue(types.fitsInLong(let(body, 1)));
+        assertTrue(types.fitsInLong(let(body.statement(0).ifstmt().block(), 0)));
+    }
+
+    @Test
+    public void testUnboundedLoops() {
+        // CONTINUE can skip the increment, REPEAT has no guard, and x starts over before every increment
+        LittleBasicParser.ProgContext tree = parse("i = 0\nn = 0\nWHILE i < 10\n    n = n + 1\n    IF n > 5 THEN\n"
+                + "        CONTINUE\n    END\n    i = i + 1\nEND\nREPEAT\n    n = n + 1\nUNTIL n > 100\n"
+                + "x = 0\nWHILE x < 10\n    x = 0\n    x = x + 1\nEND\n");
+        TypeInference types = new TypeInference(tree);
+        assertTrue(types.fitsInLong(let(tree.block().statement(2).whilestmt().block(), 2)));
+        assertFalse(types.fitsInLong(let(tree.block().statement(2).whilestmt().block(), 0)));
+        assertFalse(types.fitsInLong(let(tree.block().statement(3).repeatstmt().block(), 0)));
+        assertFalse(types.fitsInLong(let(tree.block().statement(5).whilestmt().block(), 1)));
+    }
+
+    @Test
+    public void testCycles() {
+        LittleBasicParser.ProgContext tree = parse("a = 1\nb = 1\nFOR i = 1 TO 10\n    a = a + b\n    b = a\nNEXT\n");
+        TypeInference types = new TypeInference(tree);
+        assertFalse(types.fitsInLong(let(tree.block().statement(2).forstmt().block(), 0)));
+    }
+
+    @Test
+    public void testOperators() {
+        LittleBasicParser.ProgContext tree = parse("y = 2 ^ 100\nr = y MOD 100 + 1\nq = y / 2 + 1\n"
+                + "l = LEN(\"abc\") + 1\nb = (1 < 2) + (NOT 0) + 1\n");
+        TypeInference types = new TypeInference(tree);
+        assertFalse(types.fitsInLong(let(tree.block(), 0)));
+        assertTrue(types.fitsInLong(let(tree.block(), 1)));
+        assertFalse(types.fitsInLong(let(tree.block(), 2)));
+        assertTrue(types.fitsInLong(let(tree.block(), 3)));
+        assertTrue(types.fitsInLong(let(tree.block(), 4)));
+    }
+}
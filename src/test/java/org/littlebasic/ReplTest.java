@@ -0,0 +1,59 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReplTest {
+
+    private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    private Repl run(String session, boolean prompt) throws IOException {
+        Interpreter interpreter = new Interpreter(System.in, stdout, stderr);
+        Repl repl = new Repl(interpreter, new BufferedReader(new StringReader(session)), stdout, stderr, prompt);
+        repl.run();
+        return repl;
+    }
+
+    @Test
+    public void testMemoryPersists() throws IOException {
+        Repl repl = run("x = 2\ns = \"a\"\nPRINT x\nx = x * 3\ns = s + x\nPRINT s\n", false);
+        assertEquals("2\na6\n", stdout.toString());
+        assertEquals("", stderr.toString());
+        assertEquals(6, repl.getMemory().get("x").internalNumber());
+    }
+
+    @Test
+    public void testBlocksWaitForTheirEnd() throws IOException {
+        run("n = 1\nFOR i = 1 TO 3\n    n = n * 2\n    PRINT i\nNEXT\nPRINT n\n", true);
+        assertEquals("> > ... ... ... 1\n2\n3\n> 8\n> ", stdout.toString());
+    }
+
+    @Test
+    public void testErrorsDontEndTheSession() throws IOException {
+        run("x = 1\ny = \"a\" * x\nPRINT +\nPRINT x + 1\n", false);
+        assertEquals("2\n", stdout.toString());
+        assertEquals("Error at [1, 0]: Couldn't evaluate numeric expression. Value \"a\" is not a number\n"
+                + "no viable alternative at input '+'\nError at [1, 6]: Syntax error\n",
+                stderr.toString());
+    }
+
+    @Test
+    public void testInputReadsTheNextLine() throws IOException {
+        run("INPUT \"name?\" n\nbob\nPRINT \"hi \" + n\n", false);
+        assertEquals("name? hi bob\n", stdout.toString());
+    }
+
+    @Test
+    public void testUnfinishedBlockAtTheEnd() throws IOException {
+        run("PRINT 1\nWHILE 1\n", false);
+        assertEquals("1\n", stdout.toString());
+        assertEquals("Error at [2, 0]: Syntax error\n", stderr.toString().replaceAll("(?s).*\n(?=Error)", ""));
+    }
+}
@@ -0,0 +1,70 @@
+package org.littlebasic;
+
+import basic.LittleBasicParser;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.littlebasic.TypeInference.Type;
+
+public class TypeInferenceTest {
+
+    private static TypeInference infer(String program) {
+        LittleBasicParser.ProgContext tree = ProgramParser.parse(new ANTLRInputStream(program), new BaseErrorListener());
+        return new TypeInference(tree);
+    }
+
+    @Test
+    public void testVariables() {
+        TypeInference types = infer("a = 1\nb = a * 2\ns = \"x\"\nt = s + a\nFOR i = 1 TO 3\nNEXT\n");
+        assertEquals(Type.NUMBER, types.typeOf("a"));
+        assertEquals(Type.NUMBER, types.typeOf("b"));
+        assertEquals(Type.STRING, types.typeOf("s"));
+        assertEquals(Type.STRING, types.typeOf("t"));
+        assertEquals(Type.NUMBER, types.typeOf("i"));
+    }
+
+    @Test
+    public void testMixedAndUnknown() {
+        TypeInference types = infer("x = 1\nx = \"one\"\nINPUT \"n?\" n\nm = n + 1\nPRINT never\n");
+        assertEquals(Type.DYNAMIC, types.typeOf("x"));
+        assertEquals(Type.DYNAMIC, types.typeOf("n"));
+        assertEquals(Type.DYNAMIC, types.typeOf("m"));
+        assertEquals(Type.DYNAMIC, types.typeOf("never"));
+    }
+
+    @Test
+    public void testCycles() {
+        TypeInference types = infer("a = 0\nb = 0\nWHILE a < 10\n    a = b + 1\n    b = a\nEND\nc = c\n");
+        assertEquals(Type.NUMBER, types.typeOf("a"));
+        assertEquals(Type.NUMBER, types.typeOf("b"));
+        assertEquals(Type.DYNAMIC, types.typeOf("c"));
+    }
+
+    @Test
+    public void testExpressions() {
+        LittleBasicParser.ProgContext tree = ProgramParser.parse(
+                new ANTLRInputStream("PRINT 1 + 2\nPRINT \"a\" + 2\nPRINT VAL(\"3\")\nPRINT LEN(\"ab\")\n"),
+                new BaseErrorListener());
+        TypeInference types = new TypeInference(tree);
+        assertEquals(Type.NUMBER, types.typeOf(tree.block().statement(0).printstmt().expression()));
+        assertEquals(Type.STRING, types.typeOf(tree.block().statement(1).printstmt().expression()));
+        assertEquals(Type.DYNAMIC, types.typeOf(tree.block().statement(2).printstmt().expression()));
+        assertEquals(Type.NUMBER, types.typeOf(tree.block().statement(3).printstmt().expression()));
+    }
+
+    @Test
+    public void testArrays() {
+        TypeInference types = infer("DIM a(3)\na(1) = 2\nDIM s$(3)\ns(1) = \"x\"\nDIM d(3)\nd(1) = 0.5\nDIM e$(3)\ne(1) = 1\n"
+                + "b = a(1)\nt = s(1)\nc = d(1)\n");
+        assertEquals(Type.NUMBER, types.typeOf(Symbols.array("a")));
+        assertEquals(Type.STRING, types.typeOf(Symbols.array("s")));
+        assertEquals(Type.DYNAMIC, types.typeOf(Symbols.array("d")));
+        assertEquals(Type.DYNAMIC, types.typeOf(Symbols.array("e")));
+        assertEquals(Type.NUMBER, types.typeOf("b"));
+        assertEquals(Type.STRING, types.typeOf("t"));
+        assertEquals(Type.DYNAMIC, types.typeOf("c"));
+        assertEquals(Type.DYNAMIC, types.typeOf("a"));
+    }
+}
@@ -0,0 +1,147 @@
+package org.littlebasic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ValueTest {
+
+    private static String repeat(String s, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(s);
+        }
+        return repeated.toString();
+    }
+
+    @Test
+    public void testConcatenation() {
+        Value s = new Value("a");
+        for (int i = 0; i < 1000; i++) {
+            s = s.add(new Value("bc"));
+        }
+        assertEquals(2001, s.stringLength());
+        assertEquals("a" + repeat("bc", 1000), s.internalString());
+        assertSame(s.internalString(), s.internalString());
+    }
+
+    @Test
+    public void testPrefixesStayTheSame() {
+        Value s = new Value(repeat("x", 100));
+        Value t = s.add(new Value("t"));
+        Value u = s.add(new Value("u"));
+        Value tt = t.add(new Value("t"));
+        Value tu = t.add(Value.of(1));
+        assertEquals(repeat("x", 100), s.internalString());
+        assertEquals(repeat("x", 100) + "t", t.internalString());
+        assertEquals(repeat("x", 100) + "u", u.internalString());
+        assertEquals(repeat("x", 100) + "tt", tt.internalString());
+        assertEquals(repeat("x", 100) + "t1", tu.internalString());
+        assertEquals(Value.of(1).add(s).internalString(), "1" + repeat("x", 100));
+    }
+
+    @Test
+    public void testEquality() {
+        Value rope = new Value(repeat("x", 100)).add(new Value("y"));
+        Value plain = new Value(repeat("x", 100) + "y");
+        assertSame(Value.TRUE, rope.eq(plain));
+        assertSame(Value.FALSE, rope.eq(new Value(repeat("x", 101))));
+        assertSame(Value.TRUE, rope.neq(new Value("y")));
+        assertEquals(plain, rope);
+        assertEquals(plain.hashCode(), rope.hashCode());
+        assertNotEquals(plain, new Value(repeat("x", 100) + "z"));
+    }
+
+    @Test
+    public void testSharedRope() throws Exception {
+        Value shared = new Value(repeat("x", 100)).add(new Value("y"));
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                String suffix = Integer.toString(thread);
+                Callable<String> append = () -> {
+                    Value s = shared;
+                    for (int i = 0; i < 1000; i++) {
+                        s = s.add(new Value(suffix));
+                    }
+                    return s.internalString();
+                };
+                results.add(pool.submit(append));
+            }
+            for (int thread = 0; thread < 4; thread++) {
+                assertEquals(repeat("x", 100) + "y" + repeat(Integer.toString(thread), 1000),
+                        results.get(thread).get());
+            }
+            assertEquals(repeat("x", 100) + "y", shared.internalString());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPromotionAndDemotion() {
+        Value max = Value.of(Long.MAX_VALUE);
+        Value big = max.add(Value.of(1));
+        assertFalse(big.isLong());
+        assertEquals("9223372036854775808", big.text());
+        Value back = big.sub(Value.of(1));
+        assertTrue(back.isLong());
+        assertEquals(Long.MAX_VALUE, back.internalNumber());
+        assertEquals("85070591730234615847396907784232501249", max.mul(max).text());
+        assertEquals("9223372036854775808", Value.of(Long.MIN_VALUE).div(Value.of(-1)).text());
+        assertSame(Value.TRUE, big.gt(max));
+        assertSame(Value.TRUE, big.eq(Value.parse("9223372036854775808", false)));
+        assertEquals(big, Value.parse("9223372036854775808", false));
+        assertEquals("x9223372036854775808", new Value("x").add(big).internalString());
+    }
+
+    @Test
+    public void testDecimals() {
+        Value tenth = Value.parse("0.1", false);
+        assertEquals("0.3", tenth.add(tenth).add(tenth).text());
+        assertSame(Value.TRUE, tenth.mul(Value.of(3)).eq(Value.parse("0.3", false)));
+        assertEquals("0.3333333333333333333333333333333333", Value.of(1).div(Value.parse("3.0", false)).text());
+        assertEquals("1.21", Value.parse("1.1", false).exp(Value.of(2)).text());
+        assertEquals("1.5", Value.parse("3.5", false).mod(Value.of(2)).text());
+        // integers still divide like integers
+        assertEquals(3, Value.of(7).div(Value.of(2)).internalNumber());
+        assertTrue(Value.parse("0.0", false).isFalse());
+    }
+
+    @Test
+    public void testDoubles() {
+        Value tenth = Value.parse("0.1", true);
+        assertEquals("0.30000000000000004", tenth.add(tenth).add(tenth).text());
+        assertEquals("1.4142135623730951", Value.of(2).exp(Value.parse("0.5", true)).text());
+        assertSame(Value.TRUE, Value.parse("2.5", true).gt(Value.parse("2.4", false)));
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(42, Value.parse("42", false).internalNumber());
+        assertEquals(-42, Value.parse("-42", false).internalNumber());
+        assertEquals("123456789012345678901234567890", Value.parse("123456789012345678901234567890", false).text());
+        assertEquals("-1.50", Value.parse("-1.50", false).text());
+        assertNull(Value.parse("x", false));
+        assertNull(Value.parse("1.", false));
+        assertNull(Value.parse("", false));
+    }
+
+    @Test(expected = TypeException.class)
+    public void testTooLarge() {
+        Value.of(10).exp(Value.of(100000));
+    }
+}
@@ -0,0 +1,7 @@
+PRINT (12)
+PRINT 1 > (12)
+PRINT (1 + 2) * 3
+PRINT 2 * (3 - (4 + 1))
+x = 5
+PRINT (x + 1) / 2
+PRINT "n=" + (x * 2)
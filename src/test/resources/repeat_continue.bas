@@ -0,0 +1,12 @@
+LET i = 0
+REPEAT
+    i = i + 1
+    IF i < 3 THEN
+        CONTINUE
+    END
+    PRINT i
+    IF i = 4 THEN
+        EXIT
+    END
+UNTIL i = 10
+PRINT "done"
\ No newline at end of file
@@ -0,0 +1,6 @@
+n = 0
+IF n = 0 OR 10 / n > 1 THEN
+    PRINT "no division"
+END
+PRINT n > 0 AND 10 / n
+PRINT "done"
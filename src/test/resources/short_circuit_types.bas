@@ -0,0 +1,4 @@
+IF 1 = 0 AND "a" > 1 THEN
+    PRINT "compared"
+END
+PRINT "done"
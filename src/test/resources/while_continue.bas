@@ -0,0 +1,12 @@
+LET i = 0
+WHILE i < 6
+    i = i + 1
+    IF i MOD 2 = 0 THEN
+        CONTINUE
+    END
+    IF i = 5 THEN
+        EXIT
+    END
+    PRINT i
+END
+PRINT i
\ No newline at end of file